@@ -3,21 +3,25 @@
 package com.amazon.aws.cqlreplicator;
 
 import com.amazon.aws.cqlreplicator.config.ConfigReader;
+import com.amazon.aws.cqlreplicator.config.ReplicationSettings;
 import com.amazon.aws.cqlreplicator.models.StatsAggrQuery;
 import com.amazon.aws.cqlreplicator.storage.CacheStorage;
 import com.amazon.aws.cqlreplicator.storage.MemcachedCacheStorage;
 import com.amazon.aws.cqlreplicator.task.AbstractTask;
 import com.amazon.aws.cqlreplicator.task.replication.CassandraReplicationTask;
 import com.amazon.aws.cqlreplicator.task.replication.PartitionDiscoveryTask;
+import com.amazon.aws.cqlreplicator.util.Utils;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -34,8 +38,12 @@ public class Starter implements Callable<Integer> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Starter.class);
   protected static Timer timer = new Timer("Timer");
+  // Reloads run beside a long replication cycle, not after it
+  protected static Timer settingsTimer = new Timer("SettingsReloader", true);
   protected static TimerTask task;
   protected static Properties config;
+  // Threads of the tasks in continuous mode
+  protected static final List<Thread> pipelines = new CopyOnWriteArrayList<>();
 
   @CommandLine.Option(
       names = {"--pathToConfig"},
@@ -44,6 +52,8 @@ public class Starter implements Callable<Integer> {
 
   private static long replicationDelay;
   private static long statsDelay;
+  private static boolean continuous;
+  private static Duration minPassInterval;
   private static CacheStorage pkCacheForClusteringKeys;
   private static CacheStorage pkCacheForPartitionKeys;
 
@@ -125,6 +135,33 @@ public class Starter implements Callable<Integer> {
 
     Runtime.getRuntime().addShutdownHook(new Thread(new Stopper()));
 
+    var reloadPeriod =
+        TimeUnit.SECONDS.toMillis(
+            Long.parseLong(config.getProperty("SETTINGS_RELOAD_PERIOD", "0")));
+    if (reloadPeriod > 0) {
+      settingsTimer.scheduleAtFixedRate(
+          new TimerTask() {
+            @Override
+            public void run() {
+              reloadSettings(configReader);
+            }
+          },
+          reloadPeriod,
+          reloadPeriod);
+    }
+
+    continuous =
+        !isStats && Boolean.parseBoolean(config.getProperty("REPLICATE_CONTINUOUSLY", "false"));
+    if (continuous) {
+      // The tasks run their passes back to back until the process is stopped
+      minPassInterval =
+          Duration.ofMillis(
+              Long.parseLong(
+                  config.getProperty("REPLICATE_CONTINUOUSLY_MIN_PASS_INTERVAL_MS", "1000")));
+      new CommandLine(new Starter()).execute(args);
+      return;
+    }
+
     task =
         new TimerTask() {
           @Override
@@ -135,6 +172,49 @@ public class Starter implements Callable<Integer> {
     timer.scheduleAtFixedRate(task, 0, delay);
   }
 
+  /** Applies the tunables of config.properties to the running tasks */
+  private static void reloadSettings(ConfigReader configReader) {
+    if (ReplicationSettings.get() == null) {
+      return;
+    }
+    try {
+      ReplicationSettings.reload(configReader.getConfig());
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.warn("Unable to reload config.properties, keeping the current settings", e);
+    }
+  }
+
+  /** Releases the resources of the tasks once the process is stopped */
+  protected static void tearDownTasks() {
+    for (var abstractTask : Arrays.asList(abstractTaskPartitionKeys, abstractTaskClusteringKeys)) {
+      if (abstractTask != null) {
+        abstractTask.tearDown();
+      }
+    }
+  }
+
+  /** Runs a cycle of the task, or starts its pipeline in continuous mode */
+  private static void perform(
+      AbstractTask abstractTask, CacheStorage pkCache, Utils.CassandraTaskTypes taskName)
+      throws Exception {
+    if (!continuous) {
+      abstractTask.performTask(pkCache, taskName);
+      return;
+    }
+    var pipeline =
+        new Thread(
+            () -> {
+              try {
+                abstractTask.performContinuously(pkCache, taskName, minPassInterval);
+              } catch (InterruptedException e) {
+                LOGGER.info("Task {} is interrupted", taskName);
+              }
+            },
+            taskName.name());
+    pipelines.add(pipeline);
+    pipeline.start();
+  }
+
   /**
    * Creates CQLReplicator's tasks
    *
@@ -152,6 +232,9 @@ public class Starter implements Callable<Integer> {
     config.setProperty("TILES", String.valueOf(tiles));
     config.setProperty("PATH_TO_CONFIG", pathToConfig);
 
+    if ((syncPartitionKeys || syncClusteringColumns) && ReplicationSettings.get() == null) {
+      ReplicationSettings.set(new ReplicationSettings(config));
+    }
 
     if (syncPartitionKeys) {
 
@@ -169,7 +252,7 @@ public class Starter implements Callable<Integer> {
           "Partition keys synchronization process with refreshPeriodSec {} started at {}",
           replicationDelay,
           Instant.now());
-      abstractTaskPartitionKeys.performTask(pkCacheForPartitionKeys, SYNC_DELETED_PARTITION_KEYS);
+      perform(abstractTaskPartitionKeys, pkCacheForPartitionKeys, SYNC_DELETED_PARTITION_KEYS);
     }
     if (syncClusteringColumns) {
       if (abstractTaskClusteringKeys == null) {
@@ -185,7 +268,10 @@ public class Starter implements Callable<Integer> {
           "Cassandra rows synchronization process with refreshPeriodSec {} started at {}",
           replicationDelay,
           Instant.now());
-      abstractTaskClusteringKeys.performTask(pkCacheForClusteringKeys, SYNC_CASSANDRA_ROWS);
+      perform(abstractTaskClusteringKeys, pkCacheForClusteringKeys, SYNC_CASSANDRA_ROWS);
+    }
+    for (var pipeline : pipelines) {
+      pipeline.join();
     }
 
     if (stats) {
@@ -17,6 +17,13 @@ public class Stopper implements Runnable {
   public void run() {
     LOGGER.info("Stopping process is activated");
     Starter.timer.cancel();
-    LOGGER.info("Replication task is stopped: {}", Starter.task.cancel());
+    if (Starter.task != null) {
+      LOGGER.info("Replication task is stopped: {}", Starter.task.cancel());
+    }
+    for (var pipeline : Starter.pipelines) {
+      pipeline.interrupt();
+      LOGGER.info("Replication pipeline {} is stopped", pipeline.getName());
+    }
+    Starter.tearDownTasks();
   }
 }
@@ -18,7 +18,10 @@ public class ConfigReader {
   public Properties getConfig() throws IOException {
 
     var properties = new Properties();
-    properties.load(new FileInputStream(String.format("%s/%s", pathToConfig, configName)));
+    try (var inputStream =
+        new FileInputStream(String.format("%s/%s", pathToConfig, configName))) {
+      properties.load(inputStream);
+    }
 
     return properties;
   }
@@ -0,0 +1,284 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.amazon.aws.cqlreplicator.config;
+
+import com.amazon.aws.cqlreplicator.util.WriteCapacityLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Typed and validated snapshot of config.properties. Tasks take the current snapshot once per
+ * cycle or partition instead of parsing properties per row. A reload swaps in a new snapshot with
+ * the tunables of the config file, other keys keep their values until a restart.
+ */
+public final class ReplicationSettings {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationSettings.class);
+  private static final AtomicReference<ReplicationSettings> CURRENT = new AtomicReference<>();
+  // Keys applied by reload, they are read per cycle or per partition
+  private static final Set<String> RELOADABLE_KEYS =
+      Set.of(
+          "REPLICATE_WITH_CORE_POOL_SIZE",
+          "REPLICATE_WITH_MAX_CORE_POOL_SIZE",
+          "REPLICATE_WITH_CORE_POOL_TIMEOUT",
+          "REPLICATE_WITH_VIRTUAL_THREADS_MAX_CONCURRENCY",
+          "REPLICATE_BATCH_MAX_ROWS",
+          "REPLICATE_BATCH_MAX_BYTES",
+          "REPLICATE_WIDE_PARTITION_MIN_ROWS",
+          "REPLICATE_WIDE_PARTITION_SLICE_ROWS",
+          "REPLICATE_PROBE_FETCH_CONCURRENCY",
+          "TARGET_WCU_PER_SECOND");
+  // Write capacities of single tiles, TARGET_WCU_PER_SECOND_TILE_<tile>
+  private static final String RELOADABLE_TILE_CAPACITY_PREFIX = "TARGET_WCU_PER_SECOND_TILE_";
+
+  private final Properties properties;
+  private final int tile;
+  private final int tiles;
+  private final String targetKeyspace;
+  private final String targetTable;
+  private final String writetimeColumns;
+  private final boolean replicateDeletes;
+  private final boolean enableReplicationPoint;
+  private final long startingReplicationTimestamp;
+  private final boolean transformInboundRequest;
+  private final String transformSql;
+  private final boolean enableCloudWatch;
+  private final int corePoolSize;
+  private final int maxCorePoolSize;
+  private final int corePoolTimeout;
+  private final int virtualThreadsMaxConcurrency;
+  private final int batchMaxRows;
+  private final long batchMaxBytes;
+  private final int widePartitionMinRows;
+  private final int widePartitionSliceRows;
+  private final int probeFetchConcurrency;
+  private final int writeCapacity;
+
+  /** @throws IllegalArgumentException if a value is missing or invalid */
+  public ReplicationSettings(final Properties cfg) {
+    this.properties = new Properties();
+    this.properties.putAll(cfg);
+    tile = getInt("TILE", "0");
+    tiles = getInt("TILES", "1");
+    targetKeyspace = getString("TARGET_KEYSPACE");
+    targetTable = getString("TARGET_TABLE");
+    writetimeColumns = getString("WRITETIME_COLUMNS");
+    replicateDeletes = getBoolean("REPLICATE_DELETES", "false");
+    enableReplicationPoint = getBoolean("ENABLE_REPLICATION_POINT", "false");
+    startingReplicationTimestamp = getLong("STARTING_REPLICATION_TIMESTAMP", "0");
+    transformInboundRequest = getBoolean("TRANSFORM_INBOUND_REQUEST", "false");
+    transformSql = properties.getProperty("TRANSFORM_SQL", "");
+    enableCloudWatch = getBoolean("ENABLE_CLOUD_WATCH", "false");
+    corePoolSize = getPositiveInt("REPLICATE_WITH_CORE_POOL_SIZE", null);
+    maxCorePoolSize = getPositiveInt("REPLICATE_WITH_MAX_CORE_POOL_SIZE", null);
+    corePoolTimeout = getPositiveInt("REPLICATE_WITH_CORE_POOL_TIMEOUT", null);
+    virtualThreadsMaxConcurrency =
+        getPositiveInt("REPLICATE_WITH_VIRTUAL_THREADS_MAX_CONCURRENCY", "10000");
+    if (getBoolean("REPLICATE_WITH_BATCH", "false")) {
+      batchMaxRows = getPositiveInt("REPLICATE_BATCH_MAX_ROWS", "30");
+      batchMaxBytes = getLong("REPLICATE_BATCH_MAX_BYTES", "1048576");
+    } else {
+      batchMaxRows = 0;
+      batchMaxBytes = 0;
+    }
+    widePartitionMinRows = getPositiveInt("REPLICATE_WIDE_PARTITION_MIN_ROWS", "100000");
+    widePartitionSliceRows = getPositiveInt("REPLICATE_WIDE_PARTITION_SLICE_ROWS", "25000");
+    probeFetchConcurrency = getPositiveInt("REPLICATE_PROBE_FETCH_CONCURRENCY", "32");
+    try {
+      writeCapacity = WriteCapacityLimiter.getTileCapacity(properties);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("The write capacity is not an integer", e);
+    }
+
+    if (tile < 0 || (tiles > 0 && tile >= tiles)) {
+      throw new IllegalArgumentException(
+          String.format("TILE must be in [0, %s), was %s", tiles, tile));
+    }
+    if (corePoolSize > maxCorePoolSize) {
+      throw new IllegalArgumentException(
+          "REPLICATE_WITH_CORE_POOL_SIZE must not exceed REPLICATE_WITH_MAX_CORE_POOL_SIZE");
+    }
+    // The local ledger of a host only holds the partitions that its own discovery process found
+    if (getBoolean("WORK_LEASES", "false")
+        && getBoolean("ENABLE_INTERNAL_PARTITION_KEY_STORAGE", "false")) {
+      throw new IllegalArgumentException(
+          "WORK_LEASES requires ENABLE_INTERNAL_PARTITION_KEY_STORAGE=false");
+    }
+    // A replayed write without the source write time may overwrite a newer version of the row
+    if (getBoolean("REPLICATE_DEAD_LETTER_QUEUE", "false")
+        && !getBoolean("REPLICATE_WITH_TIMESTAMP", "false")) {
+      throw new IllegalArgumentException(
+          "REPLICATE_DEAD_LETTER_QUEUE requires REPLICATE_WITH_TIMESTAMP=true");
+    }
+  }
+
+  /** Returns the current settings, or null before they are set */
+  public static ReplicationSettings get() {
+    return CURRENT.get();
+  }
+
+  public static void set(ReplicationSettings settings) {
+    CURRENT.set(settings);
+  }
+
+  /**
+   * Applies the reloadable keys of the properties to the current settings. Changes of other keys
+   * are logged and ignored.
+   *
+   * @throws IllegalArgumentException if the new settings are invalid, the current ones are kept
+   */
+  public static synchronized ReplicationSettings reload(final Properties cfg) {
+    var current = CURRENT.get();
+    var merged = new Properties();
+    merged.putAll(current.properties);
+    Set<String> reloadedKeys = new TreeSet<>();
+    for (var key : cfg.stringPropertyNames()) {
+      var value = cfg.getProperty(key);
+      if (Objects.equals(value, current.properties.getProperty(key))) {
+        continue;
+      }
+      if (RELOADABLE_KEYS.contains(key) || key.startsWith(RELOADABLE_TILE_CAPACITY_PREFIX)) {
+        merged.setProperty(key, value);
+        reloadedKeys.add(key);
+      } else if (current.properties.containsKey(key)) {
+        LOGGER.warn("{} changed, the new value is applied after a restart", key);
+      }
+    }
+    var settings = new ReplicationSettings(merged);
+    CURRENT.set(settings);
+    if (!reloadedKeys.isEmpty()) {
+      LOGGER.info("Reloaded {}", reloadedKeys);
+    }
+    return settings;
+  }
+
+  private String getString(String key) {
+    var value = properties.getProperty(key);
+    if (value == null) {
+      throw new IllegalArgumentException(String.format("%s is missing", key));
+    }
+    return value;
+  }
+
+  private boolean getBoolean(String key, String defaultValue) {
+    return Boolean.parseBoolean(properties.getProperty(key, defaultValue).trim());
+  }
+
+  private int getInt(String key, String defaultValue) {
+    var value = defaultValue == null ? getString(key) : properties.getProperty(key, defaultValue);
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("%s is not an integer: %s", key, value), e);
+    }
+  }
+
+  private int getPositiveInt(String key, String defaultValue) {
+    var value = getInt(key, defaultValue);
+    if (value <= 0) {
+      throw new IllegalArgumentException(String.format("%s must be positive, was %s", key, value));
+    }
+    return value;
+  }
+
+  private long getLong(String key, String defaultValue) {
+    var value = properties.getProperty(key, defaultValue);
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("%s is not a number: %s", key, value), e);
+    }
+  }
+
+  public int getTile() {
+    return tile;
+  }
+
+  public int getTiles() {
+    return tiles;
+  }
+
+  public String getTargetKeyspace() {
+    return targetKeyspace;
+  }
+
+  public String getTargetTable() {
+    return targetTable;
+  }
+
+  public String getWritetimeColumns() {
+    return writetimeColumns;
+  }
+
+  public boolean isReplicateDeletes() {
+    return replicateDeletes;
+  }
+
+  public boolean isEnableReplicationPoint() {
+    return enableReplicationPoint;
+  }
+
+  public long getStartingReplicationTimestamp() {
+    return startingReplicationTimestamp;
+  }
+
+  public boolean isTransformInboundRequest() {
+    return transformInboundRequest;
+  }
+
+  public String getTransformSql() {
+    return transformSql;
+  }
+
+  public boolean isEnableCloudWatch() {
+    return enableCloudWatch;
+  }
+
+  public int getCorePoolSize() {
+    return corePoolSize;
+  }
+
+  public int getMaxCorePoolSize() {
+    return maxCorePoolSize;
+  }
+
+  public int getCorePoolTimeout() {
+    return corePoolTimeout;
+  }
+
+  public int getVirtualThreadsMaxConcurrency() {
+    return virtualThreadsMaxConcurrency;
+  }
+
+  /** Returns the maximum number of rows per batch, or 0 if batching is disabled */
+  public int getBatchMaxRows() {
+    return batchMaxRows;
+  }
+
+  public long getBatchMaxBytes() {
+    return batchMaxBytes;
+  }
+
+  public int getWidePartitionMinRows() {
+    return widePartitionMinRows;
+  }
+
+  public int getWidePartitionSliceRows() {
+    return widePartitionSliceRows;
+  }
+
+  public int getProbeFetchConcurrency() {
+    return probeFetchConcurrency;
+  }
+
+  /** Returns the write capacity units per second of the tile, or 0 if writes are not limited */
+  public int getWriteCapacity() {
+    return writeCapacity;
+  }
+}
@@ -7,6 +7,7 @@ package com.amazon.aws.cqlreplicator.connector;
 
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.metadata.schema.SchemaChangeListener;
 import com.datastax.oss.driver.api.core.type.codec.TypeCodecs;
 import net.spy.memcached.MemcachedClient;
 import org.jetbrains.annotations.NotNull;
@@ -25,12 +26,19 @@ public class ConnectionFactory {
   }
 
   public CqlSession buildCqlSession(final @NotNull String applicationConfName) {
+    return buildCqlSession(applicationConfName, null);
+  }
+
+  /** Builds a session that reports schema changes to the listener */
+  public CqlSession buildCqlSession(
+      final @NotNull String applicationConfName, final SchemaChangeListener schemaChangeListener) {
     final var configFile =
         new File(String.format("%s/%s", config.getProperty("PATH_TO_CONFIG"), applicationConfName));
 
     return CqlSession.builder()
         .withConfigLoader(DriverConfigLoader.fromFile(configFile))
         .addTypeCodecs(TypeCodecs.ZONED_TIMESTAMP_UTC)
+        .withSchemaChangeListener(schemaChangeListener)
         .build();
   }
 
@@ -0,0 +1,182 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.connector;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.metadata.schema.SchemaChangeListenerBase;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Prepares each statement of a session once, keyed by its shape: the operation, the table and the
+ * columns it binds. The statements of a table are prepared again after a schema change of the
+ * table, which the session reports to the registry.
+ */
+public class PreparedStatementRegistry extends SchemaChangeListenerBase {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PreparedStatementRegistry.class);
+  private final String name;
+  private final Function<String, PreparedStatement> preparer;
+  private final Map<Shape, PreparedStatement> statements = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+  private CqlSession session;
+
+  private PreparedStatementRegistry(String name) {
+    this.name = name;
+    this.preparer = query -> session.prepare(query);
+  }
+
+  /** Creates a registry that prepares statements with the preparer instead of a session */
+  PreparedStatementRegistry(String name, Function<String, PreparedStatement> preparer) {
+    this.name = name;
+    this.preparer = preparer;
+  }
+
+  /** Connects a session with the driver config file and returns the registry of the session */
+  public static PreparedStatementRegistry connect(
+      final @NotNull ConnectionFactory connectionFactory,
+      final @NotNull String applicationConfName) {
+    var registry = new PreparedStatementRegistry(applicationConfName);
+    registry.session = connectionFactory.buildCqlSession(applicationConfName, registry);
+    return registry;
+  }
+
+  public CqlSession getSession() {
+    return session;
+  }
+
+  /**
+   * Returns the statement of the shape, the query is only built and prepared if the shape is not
+   * prepared yet
+   */
+  public PreparedStatement prepare(Shape shape, Supplier<String> query) {
+    var statement = statements.get(shape);
+    if (statement != null) {
+      hits.increment();
+      return statement;
+    }
+    return statements.computeIfAbsent(
+        shape,
+        s -> {
+          misses.increment();
+          return preparer.apply(query.get());
+        });
+  }
+
+  @Override
+  public void onTableCreated(@NotNull TableMetadata table) {
+    invalidate(table);
+  }
+
+  @Override
+  public void onTableDropped(@NotNull TableMetadata table) {
+    invalidate(table);
+  }
+
+  @Override
+  public void onTableUpdated(@NotNull TableMetadata current, @NotNull TableMetadata previous) {
+    invalidate(current);
+  }
+
+  private void invalidate(TableMetadata table) {
+    var keyspace = table.getKeyspace().asInternal();
+    var tableName = table.getName().asInternal();
+    statements
+        .keySet()
+        .removeIf(
+            shape -> {
+              if (shape.keyspace.equalsIgnoreCase(keyspace)
+                  && shape.table.equalsIgnoreCase(tableName)) {
+                invalidations.increment();
+                return true;
+              }
+              return false;
+            });
+    LOGGER.info("Schema of {}.{} changed, its statements are prepared again", keyspace, tableName);
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getInvalidations() {
+    return invalidations.sum();
+  }
+
+  /** Returns the share of lookups that found a prepared statement */
+  public double getHitRate() {
+    var hitCount = hits.sum();
+    var total = hitCount + misses.sum();
+    return total == 0 ? 1.0 : (double) hitCount / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: %s statements, hit rate %.4f, %s prepares, %s invalidations",
+        name, statements.size(), getHitRate(), getMisses(), getInvalidations());
+  }
+
+  /** Identifies a statement by its operation, table and bound columns */
+  public static final class Shape {
+    private final String operation;
+    private final String keyspace;
+    private final String table;
+    private final Object[] columns;
+    private final int hash;
+
+    private Shape(String operation, String keyspace, String table, Object[] columns) {
+      this.operation = operation;
+      this.keyspace = keyspace;
+      this.table = table;
+      this.columns = columns;
+      this.hash = 31 * Objects.hash(operation, keyspace, table) + Arrays.deepHashCode(columns);
+    }
+
+    /** @param columns column names or arrays of column names that the statement depends on */
+    public static Shape of(String operation, String keyspace, String table, Object... columns) {
+      return new Shape(operation, keyspace, table, columns);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Shape)) {
+        return false;
+      }
+      var shape = (Shape) o;
+      return hash == shape.hash
+          && operation.equals(shape.operation)
+          && keyspace.equals(shape.keyspace)
+          && table.equals(shape.table)
+          && Arrays.deepEquals(columns, shape.columns);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
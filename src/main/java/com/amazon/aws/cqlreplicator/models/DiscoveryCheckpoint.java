@@ -0,0 +1,66 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.models;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Progress of a discovery pass over token ranges. A range is either completed or resumed from the
+ * paging state after its last consumed page, ranges without progress are scanned from the start.
+ */
+public class DiscoveryCheckpoint implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final Set<String> completed = new HashSet<>();
+  private final Map<String, byte[]> pagingStates = new HashMap<>();
+
+  public synchronized boolean isCompleted(String range) {
+    return completed.contains(range);
+  }
+
+  /** Returns the paging state to resume the range, or null */
+  public synchronized byte[] getPagingState(String range) {
+    return pagingStates.get(range);
+  }
+
+  public synchronized void advance(String range, byte[] pagingState) {
+    pagingStates.put(range, pagingState);
+  }
+
+  public synchronized void complete(String range) {
+    pagingStates.remove(range);
+    completed.add(range);
+  }
+
+  /** Forgets the progress of the ranges once their pass is over */
+  public synchronized void removeAll(Collection<String> ranges) {
+    completed.removeAll(ranges);
+    pagingStates.keySet().removeAll(ranges);
+  }
+
+  public synchronized int getCompleted() {
+    return completed.size();
+  }
+
+  public synchronized int getStarted() {
+    return pagingStates.size();
+  }
+
+  public synchronized boolean isEmpty() {
+    return completed.isEmpty() && pagingStates.isEmpty();
+  }
+
+  // Ranges advance on the scanning thread, the checkpoint is serialized as a consistent snapshot
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.models;
+
+import java.io.Serializable;
+
+/** Ledger key that marks a token range of a tile as fully held by the partition token index */
+public class IndexedRangeKey implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final int tile;
+  private final String range;
+
+  public IndexedRangeKey(int tile, String range) {
+    this.tile = tile;
+    this.range = range;
+  }
+
+  public int getTile() {
+    return tile;
+  }
+
+  public String getRange() {
+    return range;
+  }
+}
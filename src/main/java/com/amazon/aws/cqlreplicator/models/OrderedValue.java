@@ -0,0 +1,21 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.models;
+
+/** Row metadata of the ledger with its clustering key encoded in clustering order */
+public class OrderedValue extends Value {
+  private static final long serialVersionUID = 1L;
+  private final byte[] orderedKey;
+
+  public OrderedValue(long lastRun, long writeTime, String ck, byte[] orderedKey) {
+    super(lastRun, writeTime, ck);
+    this.orderedKey = orderedKey;
+  }
+
+  public byte[] getOrderedKey() {
+    return orderedKey;
+  }
+}
@@ -0,0 +1,25 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.models;
+
+/** Partition key of the partition token index of discovery with the Murmur3 token of the key */
+public class PartitionToken {
+  private final long token;
+  private final String partitionKey;
+
+  public PartitionToken(long token, String partitionKey) {
+    this.token = token;
+    this.partitionKey = partitionKey;
+  }
+
+  public long getToken() {
+    return token;
+  }
+
+  public String getPartitionKey() {
+    return partitionKey;
+  }
+}
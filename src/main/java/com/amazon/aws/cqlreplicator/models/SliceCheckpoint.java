@@ -0,0 +1,86 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.models;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Progress of a wide partition that is extracted as clustering-key slices. Each slice is a range
+ * of the first clustering column, a null bound is open. The lower bound is inclusive, the upper
+ * bound is exclusive unless the slice was resumed from its upper end.
+ */
+public class SliceCheckpoint implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final String[] lowerBounds;
+  private final String[] upperBounds;
+  private final boolean[] upperInclusive;
+  private final boolean[] completed;
+
+  /** Creates slices split at the given ascending boundaries */
+  public SliceCheckpoint(List<String> boundaries) {
+    var slices = boundaries.size() + 1;
+    this.lowerBounds = new String[slices];
+    this.upperBounds = new String[slices];
+    this.upperInclusive = new boolean[slices];
+    this.completed = new boolean[slices];
+    for (int i = 0; i < boundaries.size(); i++) {
+      upperBounds[i] = boundaries.get(i);
+      lowerBounds[i + 1] = boundaries.get(i);
+    }
+  }
+
+  public int getSlices() {
+    return completed.length;
+  }
+
+  public synchronized String getLowerBound(int slice) {
+    return lowerBounds[slice];
+  }
+
+  public synchronized String getUpperBound(int slice) {
+    return upperBounds[slice];
+  }
+
+  public synchronized boolean isUpperInclusive(int slice) {
+    return upperInclusive[slice];
+  }
+
+  public synchronized boolean isCompleted(int slice) {
+    return completed[slice];
+  }
+
+  /** Moves the start of an ascending slice to the last replicated clustering value */
+  public synchronized void advanceLowerBound(int slice, String position) {
+    lowerBounds[slice] = position;
+  }
+
+  /** Moves the start of a descending slice to the last replicated clustering value */
+  public synchronized void advanceUpperBound(int slice, String position) {
+    upperBounds[slice] = position;
+    upperInclusive[slice] = true;
+  }
+
+  public synchronized void complete(int slice) {
+    completed[slice] = true;
+  }
+
+  public synchronized boolean isCompleted() {
+    for (var c : completed) {
+      if (!c) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Slices advance concurrently, the checkpoint is serialized as a consistent snapshot
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+  }
+}
@@ -0,0 +1,22 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.models;
+
+import java.io.Serializable;
+
+/** Ledger key of the slice checkpoint of a wide partition */
+public class SliceCheckpointKey implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final String partitionKey;
+
+  public SliceCheckpointKey(String partitionKey) {
+    this.partitionKey = partitionKey;
+  }
+
+  public String getPartitionKey() {
+    return partitionKey;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.models;
+
+import java.util.Objects;
+
+/**
+ * Lease of a work unit. The owner holds the unit until the lease expires, a lease without an owner
+ * marks a unit that was completed and is due again when it expires.
+ */
+public class WorkLease {
+  private static final String NO_OWNER = "";
+  private final String owner;
+  private final long expiresAt;
+
+  public WorkLease(String owner, long expiresAt) {
+    this.owner = owner == null ? NO_OWNER : owner;
+    this.expiresAt = expiresAt;
+  }
+
+  /** Parses a lease written by {@link #toString()} */
+  public static WorkLease parse(String value) {
+    var separator = value.lastIndexOf('|');
+    return new WorkLease(
+        value.substring(0, separator), Long.parseLong(value.substring(separator + 1).trim()));
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  public boolean isOwnedBy(String owner) {
+    return this.owner.equals(owner);
+  }
+
+  public boolean isExpired(long now) {
+    return now >= expiresAt;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    var that = (WorkLease) o;
+    return expiresAt == that.expiresAt && owner.equals(that.owner);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(owner, expiresAt);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s|%s", owner, expiresAt);
+  }
+}
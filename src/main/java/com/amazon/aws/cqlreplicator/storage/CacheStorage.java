@@ -6,6 +6,7 @@
 package com.amazon.aws.cqlreplicator.storage;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -41,4 +42,12 @@ public abstract class CacheStorage<K, V> {
       throws InterruptedException, ExecutionException, TimeoutException;
 
   public abstract Set<K> keySet();
+
+  /** Removes several keys of the operation type */
+  public void removeAll(int tile, String operationType, Collection<K> keys)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    for (var key : keys) {
+      remove(tile, operationType, key);
+    }
+  }
 }
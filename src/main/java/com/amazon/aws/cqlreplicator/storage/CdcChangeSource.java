@@ -0,0 +1,243 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Tails the cdc_raw directory of a local Cassandra node and reports the partitions of the source
+ * table changed by the mutations of its commitlog segments. A segment is read up to the offset of
+ * its _cdc.idx file and the position reached is kept, so a poll only decodes new mutations.
+ * Completed segments are deleted once they are released, which lets the node keep writing CDC
+ * data.
+ */
+public class CdcChangeSource {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CdcChangeSource.class);
+  private static final String INDEX_SUFFIX = "_cdc.idx";
+  private static final String COMPLETED = "COMPLETED";
+  // Commitlog segments are named CommitLog-<version>-<id>.log
+  private static final String SEGMENT_PREFIX = "CommitLog-";
+  private static final String SEGMENT_READER =
+      "com.amazon.aws.cqlreplicator.storage.CommitLogSegmentReader";
+  private final Path cdcRawDirectory;
+  private final List<ImmutablePair<Long, Long>> tokenRanges;
+  private final SegmentReader reader;
+  private final Map<String, SegmentState> segments = new HashMap<>();
+
+  /**
+   * @param tokenRanges token ranges of the tile, partitions out of them are ignored
+   * @param reader decodes the changes of the source table in a segment
+   */
+  public CdcChangeSource(
+      final Path cdcRawDirectory,
+      final List<ImmutablePair<String, String>> tokenRanges,
+      final SegmentReader reader) {
+    this.cdcRawDirectory = cdcRawDirectory;
+    this.tokenRanges =
+        tokenRanges.stream()
+            .map(
+                range ->
+                    new ImmutablePair<>(Long.parseLong(range.left), Long.parseLong(range.right)))
+            .collect(Collectors.toList());
+    this.reader = reader;
+  }
+
+  /**
+   * Creates the change source on the commitlog reader of Cassandra, which is only built with the
+   * cdc profile
+   *
+   * @param sourceTable the source table, its schema is loaded to decode the mutations
+   * @throws IllegalStateException if the build doesn't include the commitlog reader
+   */
+  public static CdcChangeSource create(
+      final Properties config,
+      final TableMetadata sourceTable,
+      final List<ImmutablePair<String, String>> tokenRanges) {
+    SegmentReader reader;
+    try {
+      reader =
+          (SegmentReader)
+              Class.forName(SEGMENT_READER)
+                  .getConstructor(Path.class, TableMetadata.class)
+                  .newInstance(Paths.get(config.getProperty("CDC_CASSANDRA_YAML")), sourceTable);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(
+          "REPLICATE_FROM_CDC requires a build with the cdc profile", e);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to create the commitlog reader", e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to create the commitlog reader", e);
+    }
+    return new CdcChangeSource(
+        Paths.get(config.getProperty("CDC_RAW_DIRECTORY")), tokenRanges, reader);
+  }
+
+  /**
+   * Decodes the mutations written since the last poll and reports the segment and the partition key
+   * of every change of the tile, a partition can be reported more than once
+   *
+   * @return segments that are read to the end, to be released once their partitions are replicated
+   */
+  public List<String> poll(BiConsumer<String, String> partitionKeys) throws IOException {
+    List<Path> indexes;
+    try (var files = Files.list(cdcRawDirectory)) {
+      indexes =
+          files
+              .filter(file -> file.getFileName().toString().endsWith(INDEX_SUFFIX))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+
+    List<String> completedSegments = new ArrayList<>();
+    for (var index : indexes) {
+      var segmentName = getSegmentName(index.getFileName().toString());
+      var segment = index.resolveSibling(segmentName);
+      var cdcIndex = readIndex(index);
+      if (cdcIndex == null || !Files.exists(segment)) {
+        continue;
+      }
+
+      var state =
+          segments.computeIfAbsent(segmentName, name -> new SegmentState(getSegmentId(name)));
+      if (state.completed || (cdcIndex.offset <= state.indexOffset && !cdcIndex.completed)) {
+        continue;
+      }
+
+      var changes = new int[1];
+      var position = new int[] {state.position};
+      reader.read(
+          segment,
+          state.segmentId,
+          state.position,
+          (entryLocation, token, partitionKey) -> {
+            // Mutations past the offset of the index aren't durable yet, they are read later
+            if (entryLocation > cdcIndex.offset) {
+              return;
+            }
+            position[0] = Math.max(position[0], entryLocation);
+            if (isInTile(token)) {
+              partitionKeys.accept(segmentName, partitionKey);
+              changes[0]++;
+            }
+          });
+      state.indexOffset = cdcIndex.offset;
+      state.position = position[0];
+      LOGGER.debug(
+          "Read {} changes of segment {} up to {}", changes[0], segmentName, state.position);
+      if (cdcIndex.completed) {
+        state.completed = true;
+        completedSegments.add(segmentName);
+      }
+    }
+    return completedSegments;
+  }
+
+  /** Deletes completed segments from cdc_raw */
+  public void release(List<String> completedSegments) throws IOException {
+    for (var segmentName : completedSegments) {
+      var segment = cdcRawDirectory.resolve(segmentName);
+      Files.deleteIfExists(segment);
+      Files.deleteIfExists(
+          cdcRawDirectory.resolve(
+              segmentName.substring(0, segmentName.length() - ".log".length()) + INDEX_SUFFIX));
+      segments.remove(segmentName);
+      LOGGER.debug("Released segment {}", segmentName);
+    }
+  }
+
+  boolean isInTile(long token) {
+    for (var range : tokenRanges) {
+      // Token ranges are (left, right], the last one wraps around
+      var inRange =
+          range.left < range.right
+              ? token > range.left && token <= range.right
+              : token > range.left || token <= range.right;
+      if (inRange) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static String getSegmentName(String indexName) {
+    return indexName.substring(0, indexName.length() - INDEX_SUFFIX.length()) + ".log";
+  }
+
+  static long getSegmentId(String segmentName) {
+    if (!segmentName.startsWith(SEGMENT_PREFIX) || !segmentName.endsWith(".log")) {
+      throw new IllegalArgumentException(
+          String.format("%s is not a commitlog segment", segmentName));
+    }
+    var name = segmentName.substring(0, segmentName.length() - ".log".length());
+    return Long.parseLong(name.substring(name.lastIndexOf('-') + 1));
+  }
+
+  /** Reads the offset of the index and whether the segment is complete, or null if it's empty */
+  static CdcIndex readIndex(Path index) throws IOException {
+    var lines = Files.readAllLines(index);
+    if (lines.isEmpty() || lines.get(0).isBlank()) {
+      return null;
+    }
+    return new CdcIndex(
+        Integer.parseInt(lines.get(0).trim()),
+        lines.size() > 1 && COMPLETED.equals(lines.get(1).trim()));
+  }
+
+  /** Decodes the changes of the source table in a commitlog segment */
+  public interface SegmentReader {
+    /**
+     * Reads the mutations of the segment from the position on, the changes past the offset of the
+     * index are reported as well
+     */
+    void read(Path segment, long segmentId, int position, ChangeConsumer changes)
+        throws IOException;
+  }
+
+  public interface ChangeConsumer {
+    /**
+     * @param entryLocation position of the mutation in the segment
+     * @param partitionKey the values of the partition key joined by "|", as in the ledger
+     */
+    void accept(int entryLocation, long token, String partitionKey);
+  }
+
+  static class CdcIndex {
+    final int offset;
+    final boolean completed;
+
+    CdcIndex(int offset, boolean completed) {
+      this.offset = offset;
+      this.completed = completed;
+    }
+  }
+
+  private static class SegmentState {
+    private final long segmentId;
+    private int indexOffset;
+    private int position;
+    private boolean completed;
+
+    SegmentState(long segmentId) {
+      this.segmentId = segmentId;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.statements.schema.CreateTableStatement;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
+import org.apache.cassandra.db.commitlog.CommitLogPosition;
+import org.apache.cassandra.db.commitlog.CommitLogReadHandler;
+import org.apache.cassandra.db.commitlog.CommitLogReader;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.schema.KeyspaceMetadata;
+import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.schema.Schema;
+import org.apache.cassandra.schema.TableId;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.schema.Tables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Decodes the changes of the source table in commitlog segments with the commitlog reader of
+ * Cassandra 4.0. It's built with the cdc profile only, so the server classes stay out of the
+ * default build.
+ */
+public class CommitLogSegmentReader implements CdcChangeSource.SegmentReader {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CommitLogSegmentReader.class);
+  private final TableId tableId;
+  private final List<TypeCodec<Object>> partitionKeyCodecs = new ArrayList<>();
+  private final CommitLogReader reader = new CommitLogReader();
+
+  /**
+   * @param cassandraYaml cassandra.yaml of the node, the commitlog settings and the partitioner
+   *     are taken from it
+   * @param sourceTable the source table, its schema is loaded to decode the mutations
+   */
+  public CommitLogSegmentReader(
+      final Path cassandraYaml,
+      final com.datastax.oss.driver.api.core.metadata.schema.TableMetadata sourceTable) {
+    System.setProperty("cassandra.config", cassandraYaml.toUri().toString());
+    DatabaseDescriptor.toolInitialization();
+    if (!(DatabaseDescriptor.getPartitioner() instanceof Murmur3Partitioner)) {
+      throw new IllegalArgumentException("CDC replication requires the Murmur3Partitioner");
+    }
+
+    var keyspace = sourceTable.getKeyspace().asInternal();
+    var tableMetadata = toTableMetadata(keyspace, sourceTable);
+    this.tableId = tableMetadata.id;
+    // Mutations of other tables fail to deserialize and are skipped by the reader
+    Schema.instance.load(
+        KeyspaceMetadata.create(keyspace, KeyspaceParams.simple(1), Tables.of(tableMetadata)));
+
+    for (var column : sourceTable.getPartitionKey()) {
+      partitionKeyCodecs.add(CodecRegistry.DEFAULT.codecFor(column.getType()));
+    }
+  }
+
+  /** Builds the server-side metadata of the table, with the id of the source table */
+  private static TableMetadata toTableMetadata(
+      String keyspace, com.datastax.oss.driver.api.core.metadata.schema.TableMetadata table) {
+    List<String> columns = new ArrayList<>();
+    for (var column : table.getColumns().values()) {
+      columns.add(
+          String.format(
+              "%s %s%s",
+              column.getName().asCql(true),
+              column.getType().asCql(true, true),
+              column.isStatic() ? " static" : ""));
+    }
+    var partitionKey =
+        table.getPartitionKey().stream()
+            .map(column -> column.getName().asCql(true))
+            .collect(Collectors.joining(","));
+    List<String> clusteringKey = new ArrayList<>();
+    List<String> clusteringOrder = new ArrayList<>();
+    for (Map.Entry<ColumnMetadata, ClusteringOrder> column :
+        table.getClusteringColumns().entrySet()) {
+      var name = column.getKey().getName().asCql(true);
+      clusteringKey.add(name);
+      clusteringOrder.add(String.format("%s %s", name, column.getValue().name()));
+    }
+
+    var cql =
+        String.format(
+            "CREATE TABLE %s (%s, PRIMARY KEY ((%s)%s))%s",
+            table.getName().asCql(true),
+            String.join(",", columns),
+            partitionKey,
+            clusteringKey.isEmpty() ? "" : "," + String.join(",", clusteringKey),
+            clusteringOrder.isEmpty()
+                ? ""
+                : String.format(
+                    " WITH CLUSTERING ORDER BY (%s)", String.join(",", clusteringOrder)));
+    return CreateTableStatement.parse(cql, keyspace)
+        .id(
+            TableId.fromUUID(
+                table
+                    .getId()
+                    .orElseThrow(() -> new IllegalStateException("The table id is unknown"))))
+        .build();
+  }
+
+  @Override
+  public void read(
+      Path segment, long segmentId, int position, CdcChangeSource.ChangeConsumer changes)
+      throws IOException {
+    reader.readCommitLogSegment(
+        new MutationHandler(changes),
+        segment.toFile(),
+        new CommitLogPosition(segmentId, position),
+        true);
+  }
+
+  /** Decodes the partition key as the values joined by "|", as they are stored in the ledger */
+  static String decode(
+      List<? extends TypeCodec<?>> partitionKeyCodecs, AbstractType<?> keyType, ByteBuffer key) {
+    var components =
+        keyType instanceof CompositeType
+            ? ((CompositeType) keyType).split(key)
+            : new ByteBuffer[] {key};
+    List<String> values = new ArrayList<>(components.length);
+    for (int i = 0; i < components.length; i++) {
+      values.add(
+          String.valueOf(
+              partitionKeyCodecs.get(i).decode(components[i], ProtocolVersion.DEFAULT)));
+    }
+    return String.join("|", values);
+  }
+
+  private class MutationHandler implements CommitLogReadHandler {
+
+    private final CdcChangeSource.ChangeConsumer changes;
+
+    MutationHandler(CdcChangeSource.ChangeConsumer changes) {
+      this.changes = changes;
+    }
+
+    @Override
+    public boolean shouldSkipSegmentOnError(CommitLogReadException exception) {
+      LOGGER.warn("Unable to read a commitlog segment", exception);
+      return exception.permissible;
+    }
+
+    @Override
+    public void handleUnrecoverableError(CommitLogReadException exception) throws IOException {
+      throw exception;
+    }
+
+    @Override
+    public void handleMutation(
+        Mutation mutation, int size, int entryLocation, CommitLogDescriptor descriptor) {
+      for (var update : mutation.getPartitionUpdates()) {
+        if (!update.metadata().id.equals(tableId)) {
+          continue;
+        }
+        var key = update.partitionKey();
+        changes.accept(
+            entryLocation,
+            (Long) key.getToken().getTokenValue(),
+            decode(partitionKeyCodecs, update.metadata().partitionKeyType, key.getKey()));
+      }
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of writes that failed after their retries. Entries are appended to the active
+ * segment and synced to disk before the append returns. The replayer rolls the active segment,
+ * reads the closed segments in order and deletes them once they are drained. A torn record at the
+ * end of a segment, left by a crash during an append, is skipped.
+ */
+public class DeadLetterLog implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterLog.class);
+  /** Marks a bound value that is left unset */
+  public static final ByteBuffer UNSET = ByteBuffer.allocate(0);
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final int NULL_LENGTH = -1;
+  private static final int UNSET_LENGTH = -2;
+  private final Path directory;
+  private final long segmentBytes;
+  private long nextSegment;
+  private FileChannel activeSegment;
+  private long appended;
+
+  /** @param segmentBytes size after which the active segment is closed */
+  public DeadLetterLog(final Path directory, final long segmentBytes) throws IOException {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    Files.createDirectories(directory);
+    var segments = listSegments();
+    // Segments left by a previous run are closed, appends go to a new segment
+    nextSegment =
+        segments.isEmpty() ? 0 : getSequence(segments.get(segments.size() - 1)) + 1;
+    if (!segments.isEmpty()) {
+      LOGGER.info("{} segments of failed writes to replay in {}", segments.size(), directory);
+    }
+  }
+
+  private static long getSequence(Path segment) {
+    var name = segment.getFileName().toString();
+    return Long.parseLong(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private List<Path> listSegments() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files
+          .filter(
+              file -> {
+                var name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+              })
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static byte[] encode(Entry entry) throws IOException {
+    var out = new ByteArrayOutputStream();
+    var data = new DataOutputStream(out);
+    data.writeInt(entry.queries.size());
+    for (int i = 0; i < entry.queries.size(); i++) {
+      data.writeUTF(entry.queries.get(i));
+      var values = entry.values.get(i);
+      data.writeInt(values.size());
+      for (var value : values) {
+        if (value == UNSET) {
+          data.writeInt(UNSET_LENGTH);
+        } else if (value == null) {
+          data.writeInt(NULL_LENGTH);
+        } else {
+          var bytes = new byte[value.remaining()];
+          value.duplicate().get(bytes);
+          data.writeInt(bytes.length);
+          data.write(bytes);
+        }
+      }
+    }
+    data.flush();
+    return out.toByteArray();
+  }
+
+  private static Entry decode(byte[] record) throws IOException {
+    var data = new DataInputStream(new ByteArrayInputStream(record));
+    var statements = data.readInt();
+    var entry = new Entry();
+    for (int i = 0; i < statements; i++) {
+      var query = data.readUTF();
+      var size = data.readInt();
+      List<ByteBuffer> values = new ArrayList<>(size);
+      for (int v = 0; v < size; v++) {
+        var length = data.readInt();
+        if (length == UNSET_LENGTH) {
+          values.add(UNSET);
+        } else if (length == NULL_LENGTH) {
+          values.add(null);
+        } else {
+          var bytes = new byte[length];
+          data.readFully(bytes);
+          values.add(ByteBuffer.wrap(bytes));
+        }
+      }
+      entry.add(query, values);
+    }
+    return entry;
+  }
+
+  /** Appends the entry and syncs it to disk */
+  public synchronized void append(Entry entry) throws IOException {
+    var record = encode(entry);
+    var crc = new CRC32();
+    crc.update(record);
+    var buffer =
+        ByteBuffer.allocate(12 + record.length)
+            .putInt(record.length)
+            .putLong(crc.getValue())
+            .put(record)
+            .flip();
+    if (activeSegment == null) {
+      activeSegment =
+          FileChannel.open(
+              directory.resolve(
+                  String.format("%s%020d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX)),
+              StandardOpenOption.CREATE_NEW,
+              StandardOpenOption.WRITE);
+    }
+    while (buffer.hasRemaining()) {
+      activeSegment.write(buffer);
+    }
+    activeSegment.force(false);
+    appended++;
+    if (activeSegment.size() >= segmentBytes) {
+      roll();
+    }
+  }
+
+  /** Closes the active segment, later appends go to a new segment */
+  public synchronized void roll() throws IOException {
+    if (activeSegment != null) {
+      activeSegment.close();
+      activeSegment = null;
+    }
+  }
+
+  /** Returns the closed segments in the order they were written */
+  public synchronized List<Path> getClosedSegments() throws IOException {
+    var segments = listSegments();
+    if (activeSegment != null && !segments.isEmpty()) {
+      segments.remove(segments.size() - 1);
+    }
+    return Collections.unmodifiableList(segments);
+  }
+
+  /** Reads the entries of a closed segment in order */
+  public void read(Path segment, Consumer<Entry> entries) throws IOException {
+    var remaining = Files.size(segment);
+    try (var in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+      while (remaining > 0) {
+        if (remaining < 12) {
+          LOGGER.warn("Skipping a torn record at the end of {}", segment);
+          return;
+        }
+        var length = in.readInt();
+        var checksum = in.readLong();
+        remaining -= 12;
+        if (length < 0 || length > remaining) {
+          LOGGER.warn("Skipping a torn record at the end of {}", segment);
+          return;
+        }
+        var record = new byte[length];
+        in.readFully(record);
+        remaining -= length;
+        var crc = new CRC32();
+        crc.update(record);
+        if (crc.getValue() != checksum) {
+          LOGGER.warn("Skipping a torn record at the end of {}", segment);
+          return;
+        }
+        entries.accept(decode(record));
+      }
+    }
+  }
+
+  public void delete(Path segment) throws IOException {
+    Files.deleteIfExists(segment);
+  }
+
+  /** Returns the number of entries appended since the log was opened */
+  public synchronized long getAppended() {
+    return appended;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    roll();
+  }
+
+  /** A failed write: one statement, or the statements of a batch, with their bound values */
+  public static class Entry {
+    private final List<String> queries = new ArrayList<>();
+    private final List<List<ByteBuffer>> values = new ArrayList<>();
+
+    public Entry add(String query, List<ByteBuffer> boundValues) {
+      queries.add(query);
+      values.add(boundValues);
+      return this;
+    }
+
+    public int size() {
+      return queries.size();
+    }
+
+    public String getQuery(int i) {
+      return queries.get(i);
+    }
+
+    public List<ByteBuffer> getValues(int i) {
+      return values.get(i);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Drains the dead-letter log in the background at the rate of its own rate limiter. A pass rolls
+ * the active segment and replays the closed segments in order. After the first write that fails
+ * again, the rest of the segment is appended back to the log without writing it and the pass ends,
+ * so a target that is still overloaded isn't hit with the whole log every period.
+ */
+public class DeadLetterReplayer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterReplayer.class);
+  private final DeadLetterLog deadLetterLog;
+  private final RateLimiter rateLimiter;
+  private final Predicate<DeadLetterLog.Entry> writer;
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            var thread = new Thread(runnable, "DeadLetterReplayer");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final LongAdder replayed = new LongAdder();
+
+  /** @param writer writes an entry to the target and returns false if it failed */
+  public DeadLetterReplayer(
+      final DeadLetterLog deadLetterLog,
+      final RateLimiter rateLimiter,
+      final Predicate<DeadLetterLog.Entry> writer) {
+    this.deadLetterLog = deadLetterLog;
+    this.rateLimiter = rateLimiter;
+    this.writer = writer;
+  }
+
+  public void start(long periodMillis) {
+    executor.scheduleWithFixedDelay(
+        () -> {
+          try {
+            replay();
+          } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to replay the failed writes", e);
+          }
+        },
+        periodMillis,
+        periodMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Replays the closed segments, returns false if a write failed again */
+  public boolean replay() throws IOException {
+    deadLetterLog.roll();
+    for (var segment : deadLetterLog.getClosedSegments()) {
+      var failed = new boolean[1];
+      deadLetterLog.read(
+          segment,
+          entry -> {
+            try {
+              if (!failed[0]) {
+                RateLimiter.waitForPermission(rateLimiter, entry.size());
+                if (writer.test(entry)) {
+                  replayed.increment();
+                  return;
+                }
+                failed[0] = true;
+              }
+              deadLetterLog.append(entry);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+      deadLetterLog.delete(segment);
+      if (failed[0]) {
+        LOGGER.warn(
+            "Replay of the failed writes stopped at {}, it resumes in the next pass", segment);
+        return false;
+      }
+      LOGGER.debug("Replayed {}", segment);
+    }
+    return true;
+  }
+
+  public long getReplayed() {
+    return replayed.sum();
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.amazon.aws.cqlreplicator.models.WorkLease;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Keeps a lease per file in a directory, a compare-and-set holds an exclusive lock of the
+ * directory. Serves processes on one host or on a file system with working locks, and tests.
+ */
+public class FileLeaseStore extends LeaseStore {
+
+  // A file lock is held by the JVM, threads of the JVM are serialized by this monitor
+  private static final Object MONITOR = new Object();
+  private final Path directory;
+
+  public FileLeaseStore(Path directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public void connect() throws IOException {
+    Files.createDirectories(directory);
+  }
+
+  @Override
+  public void tearDown() {}
+
+  private Path getPath(String unit) {
+    return directory.resolve(unit.replaceAll("[^A-Za-z0-9_.-]", "_") + ".lease");
+  }
+
+  private WorkLease read(String unit) throws IOException {
+    var path = getPath(unit);
+    if (!Files.exists(path)) {
+      return null;
+    }
+    return WorkLease.parse(Files.readString(path, StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public WorkLease get(String unit) throws IOException {
+    synchronized (MONITOR) {
+      try (var channel = lock()) {
+        return read(unit);
+      }
+    }
+  }
+
+  @Override
+  public boolean compareAndSet(String unit, WorkLease expected, WorkLease update)
+      throws IOException {
+    synchronized (MONITOR) {
+      try (var channel = lock()) {
+        if (!Objects.equals(read(unit), expected)) {
+          return false;
+        }
+        var path = getPath(unit);
+        var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(tmp, update.toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+      }
+    }
+  }
+
+  /** Opens the lock file of the directory with an exclusive lock that is released on close */
+  private FileChannel lock() throws IOException {
+    var channel =
+        FileChannel.open(
+            directory.resolve("leases.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      channel.lock();
+      return channel;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+}
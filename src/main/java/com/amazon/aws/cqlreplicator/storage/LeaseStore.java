@@ -0,0 +1,30 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.amazon.aws.cqlreplicator.models.WorkLease;
+
+import java.io.IOException;
+
+/** Shared store of the leases of work units, changed only by compare-and-set */
+public abstract class LeaseStore {
+
+  public abstract void connect() throws IOException;
+
+  public abstract void tearDown();
+
+  /** Returns the lease of the unit, or null if the unit was never leased */
+  public abstract WorkLease get(String unit) throws IOException;
+
+  /**
+   * Replaces the lease of the unit if it is still the expected one
+   *
+   * @param expected the lease that was read, null if the unit was never leased
+   * @return false if another process changed the lease in the meantime
+   */
+  public abstract boolean compareAndSet(String unit, WorkLease expected, WorkLease update)
+      throws IOException;
+}
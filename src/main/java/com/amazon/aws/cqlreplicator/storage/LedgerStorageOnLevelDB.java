@@ -6,6 +6,7 @@
 package com.amazon.aws.cqlreplicator.storage;
 
 import com.amazon.aws.cqlreplicator.models.*;
+import com.amazon.aws.cqlreplicator.util.ClusteringKeyCodec;
 import com.amazon.aws.cqlreplicator.util.Utils;
 import com.datastax.oss.driver.shaded.guava.common.collect.AbstractIterator;
 import org.apache.commons.io.FileUtils;
@@ -14,15 +15,22 @@ import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.WriteBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
@@ -31,8 +39,20 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
   private static final Logger LOGGER = LoggerFactory.getLogger(LedgerStorageOnLevelDB.class);
   private static final org.iq80.leveldb.Logger logger = LOGGER::info;
   private static int PAGE_SIZE;
+  private static final int PARTITION_LOCK_STRIPES = 64;
+  // Keys of the ordered index are raw bytes sorted after all Java-serialized keys (0xAC 0xED)
+  private static final byte ORDERED_INDEX_PREFIX = (byte) 0xff;
+  // Keys of the partition token index of discovery are raw bytes sorted by tile and token
+  private static final byte PARTITION_TOKEN_INDEX_PREFIX = (byte) 0xfe;
+  // Keys of the discovery checkpoints are raw bytes, readers of partitions never deserialize them
+  private static final byte DISCOVERY_CHECKPOINT_PREFIX = (byte) 0xfd;
+  private static final byte[] ORDERED_INDEX_SIGNATURE =
+      SerializationUtils.serialize("orderedIndexSignature");
   private final Properties properties;
   private final DB levelDBStore;
+  // Row metadata of a partition is a read-modify-write of its set of clustering keys
+  private final Lock[] partitionLocks = new Lock[PARTITION_LOCK_STRIPES];
+  private volatile ClusteringKeyCodec clusteringKeyCodec;
 
   public LedgerStorageOnLevelDB(final Properties properties) throws IOException {
     Options options = new Options();
@@ -47,6 +67,143 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
                     properties.getProperty("TILE"),
                     properties.getProperty("PROCESS_NAME"))),
             options.logger(logger).verifyChecksums(true).createIfMissing(true));
+    for (int i = 0; i < PARTITION_LOCK_STRIPES; i++) {
+      partitionLocks[i] = new ReentrantLock();
+    }
+  }
+
+  private Lock getPartitionLock(String partitionKey) {
+    return partitionLocks[Math.floorMod(partitionKey.hashCode(), PARTITION_LOCK_STRIPES)];
+  }
+
+  private static boolean isSerializedKey(byte[] key) {
+    return key.length > 1 && key[0] == (byte) 0xac && key[1] == (byte) 0xed;
+  }
+
+  private static byte[] getOrderedIndexPrefix(String partitionKey) {
+    var out = new ByteArrayOutputStream();
+    out.write(ORDERED_INDEX_PREFIX);
+    ClusteringKeyCodec.writeString(partitionKey, out);
+    return out.toByteArray();
+  }
+
+  private static boolean startsWith(byte[] key, byte[] prefix) {
+    return key.length >= prefix.length
+        && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+  }
+
+  /**
+   * Maintains an index of row metadata in clustering order next to the set of clustering keys of
+   * each partition. The index is built from the existing ledger when its encoding changes.
+   */
+  public void setClusteringKeyCodec(ClusteringKeyCodec codec) throws IOException {
+    var signature = levelDBStore.get(ORDERED_INDEX_SIGNATURE);
+    if (signature == null
+        || !codec.getSignature().equals(SerializationUtils.deserialize(signature))) {
+      LOGGER.info("Building the ordered index of the ledger");
+      rebuildOrderedIndex(codec);
+      levelDBStore.put(ORDERED_INDEX_SIGNATURE, SerializationUtils.serialize(codec.getSignature()));
+    }
+    this.clusteringKeyCodec = codec;
+  }
+
+  private void rebuildOrderedIndex(ClusteringKeyCodec codec) throws IOException {
+    try (var iterator = levelDBStore.iterator()) {
+      iterator.seek(new byte[] {ORDERED_INDEX_PREFIX});
+      while (iterator.hasNext()) {
+        levelDBStore.delete(iterator.next().getKey());
+      }
+    }
+    try (var iterator = levelDBStore.iterator()) {
+      iterator.seekToFirst();
+      while (iterator.hasNext()) {
+        var entry = iterator.next();
+        if (!isSerializedKey(entry.getKey())) {
+          break;
+        }
+        var key = SerializationUtils.deserialize(entry.getKey());
+        if (key instanceof PartitionKey) {
+          var partitionKey = ((PartitionKey) key).getPartitionKey();
+          var batch = levelDBStore.createWriteBatch();
+          Set<String> clusteringKeys = Utils.cborDecoderSet(entry.getValue());
+          for (var ck : clusteringKeys) {
+            var value =
+                levelDBStore.get(
+                    SerializationUtils.serialize(String.format("%s|%s", partitionKey, ck)));
+            if (value != null) {
+              putOrderedIndex(
+                  codec, batch, partitionKey, ck, SerializationUtils.deserialize(value));
+            }
+          }
+          levelDBStore.write(batch);
+        }
+      }
+    }
+  }
+
+  private static void putOrderedIndex(
+      ClusteringKeyCodec codec,
+      WriteBatch batch,
+      String partitionKey,
+      String clusteringKey,
+      TimestampMetrics value) {
+    if (codec == null) {
+      return;
+    }
+    var orderedKey = codec.encode(clusteringKey);
+    if (orderedKey == null) {
+      return;
+    }
+    var ck = clusteringKey.getBytes(StandardCharsets.UTF_8);
+    var prefix = getOrderedIndexPrefix(partitionKey);
+    batch.put(
+        ByteBuffer.allocate(prefix.length + orderedKey.length)
+            .put(prefix)
+            .put(orderedKey)
+            .array(),
+        ByteBuffer.allocate(16 + ck.length)
+            .putLong(value.getLastRun())
+            .putLong(value.getWriteTime())
+            .put(ck)
+            .array());
+  }
+
+  private static void deleteOrderedIndex(
+      ClusteringKeyCodec codec, WriteBatch batch, String partitionKey, String clusteringKey) {
+    if (codec == null) {
+      return;
+    }
+    var orderedKey = codec.encode(clusteringKey);
+    if (orderedKey == null) {
+      return;
+    }
+    var prefix = getOrderedIndexPrefix(partitionKey);
+    batch.delete(
+        ByteBuffer.allocate(prefix.length + orderedKey.length)
+            .put(prefix)
+            .put(orderedKey)
+            .array());
+  }
+
+  /**
+   * Iterates the row metadata of a partition in clustering order, see setClusteringKeyCodec. The
+   * iterator reads a snapshot of the ledger and must be closed.
+   */
+  public OrderedRowIterator readOrderedRowMetaData(String partitionKey) {
+    var prefix = getOrderedIndexPrefix(partitionKey);
+    return new OrderedRowIterator(levelDBStore.iterator(), prefix, prefix);
+  }
+
+  /** Iterates the row metadata of a partition in clustering order from an encoded key on */
+  public OrderedRowIterator readOrderedRowMetaData(String partitionKey, byte[] fromOrderedKey) {
+    var prefix = getOrderedIndexPrefix(partitionKey);
+    return new OrderedRowIterator(
+        levelDBStore.iterator(),
+        prefix,
+        ByteBuffer.allocate(prefix.length + fromOrderedKey.length)
+            .put(prefix)
+            .put(fromOrderedKey)
+            .array());
   }
 
   private static <T> byte[] addToCbor(byte[] cbor, T object) throws IOException {
@@ -105,6 +262,17 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
     // Write clusteringKey with a value ( lastRun and writeTime)
     var clusteringKey = rowMetadata.getClusteringColumns();
     var value = new TimestampMetrics(rowMetadata.getLastRun(), rowMetadata.getLastWriteTime());
+    var lock = getPartitionLock(partitionKey.getPartitionKey());
+    lock.lock();
+    try {
+      writeRowMetadata(partitionKey, clusteringKey, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void writeRowMetadata(
+      PartitionKey partitionKey, String clusteringKey, TimestampMetrics value) throws IOException {
     // Upsert related partitionKey with a set of clustering keys
     var readBeforeWriteValue = levelDBStore.get(SerializationUtils.serialize(partitionKey));
     if (readBeforeWriteValue != null) {
@@ -113,15 +281,17 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
               .createWriteBatch()
               .put(
                   SerializationUtils.serialize(partitionKey),
-                  addToCbor(readBeforeWriteValue, rowMetadata.getClusteringColumns()))
+                  addToCbor(readBeforeWriteValue, clusteringKey))
               .put(
                   SerializationUtils.serialize(
                       String.format("%s|%s", partitionKey.getPartitionKey(), clusteringKey)),
                   SerializationUtils.serialize(value));
+      putOrderedIndex(
+          clusteringKeyCodec, batch, partitionKey.getPartitionKey(), clusteringKey, value);
       levelDBStore.write(batch);
     } else {
       Set<String> firstValueList = new HashSet<>();
-      firstValueList.add(rowMetadata.getClusteringColumns());
+      firstValueList.add(clusteringKey);
       var batch =
           levelDBStore
               .createWriteBatch()
@@ -131,9 +301,50 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
                   SerializationUtils.serialize(value))
               .put(
                   SerializationUtils.serialize(partitionKey), Utils.cborEncoderSet(firstValueList));
+      putOrderedIndex(
+          clusteringKeyCodec, batch, partitionKey.getPartitionKey(), clusteringKey, value);
       levelDBStore.write(batch);
     }
+  }
 
+  /** Commits the metadata of several rows with one write per partition */
+  public void writeRowMetadata(List<LedgerMetaData> rows) throws IOException {
+    Map<String, List<LedgerMetaData>> rowsByPartition = new LinkedHashMap<>();
+    for (var row : rows) {
+      rowsByPartition.computeIfAbsent(row.getPartitionKeys(), k -> new ArrayList<>()).add(row);
+    }
+    for (var entry : rowsByPartition.entrySet()) {
+      var partitionKey = new PartitionKey(entry.getKey());
+      var lock = getPartitionLock(partitionKey.getPartitionKey());
+      lock.lock();
+      try {
+        var readBeforeWriteValue = levelDBStore.get(SerializationUtils.serialize(partitionKey));
+        Set<String> clusteringKeys =
+            readBeforeWriteValue != null
+                ? Utils.cborDecoderSet(readBeforeWriteValue)
+                : new HashSet<>();
+        var batch = levelDBStore.createWriteBatch();
+        for (var row : entry.getValue()) {
+          clusteringKeys.add(row.getClusteringColumns());
+          var value = new TimestampMetrics(row.getLastRun(), row.getLastWriteTime());
+          batch.put(
+              SerializationUtils.serialize(
+                  String.format(
+                      "%s|%s", partitionKey.getPartitionKey(), row.getClusteringColumns())),
+              SerializationUtils.serialize(value));
+          putOrderedIndex(
+              clusteringKeyCodec,
+              batch,
+              partitionKey.getPartitionKey(),
+              row.getClusteringColumns(),
+              value);
+        }
+        batch.put(SerializationUtils.serialize(partitionKey), Utils.cborEncoderSet(clusteringKeys));
+        levelDBStore.write(batch);
+      } finally {
+        lock.unlock();
+      }
+    }
   }
 
   @Override
@@ -160,6 +371,117 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
     return finalList;
   }
 
+  /** Returns the metadata of a single row, or null if the row is not in the ledger */
+  public TimestampMetrics readRowMetaData(String partitionKey, String clusteringKey) {
+    var value =
+        levelDBStore.get(
+            SerializationUtils.serialize(String.format("%s|%s", partitionKey, clusteringKey)));
+    if (value == null) {
+      return null;
+    }
+    return SerializationUtils.deserialize(value);
+  }
+
+  /**
+   * Returns the clustering keys of a partition replicated in the last cycles, or an empty list if
+   * the partition has less than minRows rows
+   */
+  public List<String> readClusteringKeys(String partitionKey, int minRows) throws IOException {
+    var serializedPK = levelDBStore.get(SerializationUtils.serialize(new PartitionKey(partitionKey)));
+    // Every encoded clustering key takes at least two bytes, skip decoding of small partitions
+    if (serializedPK == null || serializedPK.length < 2L * minRows) {
+      return Collections.emptyList();
+    }
+    Set<String> clusteringKeys = Utils.cborDecoderSet(serializedPK);
+    if (clusteringKeys.size() < minRows) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(clusteringKeys);
+  }
+
+  /** Returns the slice checkpoint of an interrupted wide partition, or null */
+  public SliceCheckpoint readSliceCheckpoint(String partitionKey) {
+    var value =
+        levelDBStore.get(SerializationUtils.serialize(new SliceCheckpointKey(partitionKey)));
+    if (value == null) {
+      return null;
+    }
+    return SerializationUtils.deserialize(value);
+  }
+
+  public void writeSliceCheckpoint(String partitionKey, SliceCheckpoint checkpoint) {
+    levelDBStore.put(
+        SerializationUtils.serialize(new SliceCheckpointKey(partitionKey)),
+        SerializationUtils.serialize(checkpoint));
+  }
+
+  public void deleteSliceCheckpoint(String partitionKey) {
+    levelDBStore.delete(SerializationUtils.serialize(new SliceCheckpointKey(partitionKey)));
+  }
+
+  private static byte[] getPartitionTokenKey(int tile, long token, String partitionKey) {
+    var pk = partitionKey.getBytes(StandardCharsets.UTF_8);
+    return ByteBuffer.allocate(13 + pk.length)
+        .put(PARTITION_TOKEN_INDEX_PREFIX)
+        .putInt(tile)
+        // Flipping the sign bit sorts the signed tokens as unsigned bytes
+        .putLong(token ^ Long.MIN_VALUE)
+        .put(pk)
+        .array();
+  }
+
+  public void writePartitionToken(int tile, long token, String partitionKey) {
+    levelDBStore.put(getPartitionTokenKey(tile, token, partitionKey), new byte[0]);
+  }
+
+  public boolean containsPartitionToken(int tile, long token, String partitionKey) {
+    return levelDBStore.get(getPartitionTokenKey(tile, token, partitionKey)) != null;
+  }
+
+  public void deletePartitionToken(int tile, long token, String partitionKey) {
+    levelDBStore.delete(getPartitionTokenKey(tile, token, partitionKey));
+  }
+
+  /**
+   * Iterates the partition keys of the tile with tokens in [startToken, endToken] in token order.
+   * The iterator reads a snapshot of the ledger and must be closed.
+   */
+  public PartitionTokenIterator readPartitionTokens(int tile, long startToken, long endToken) {
+    return new PartitionTokenIterator(levelDBStore.iterator(), tile, startToken, endToken);
+  }
+
+  /** Returns true if a discovery pass over the range of the tile completed with the index */
+  public boolean isRangeIndexed(int tile, String range) {
+    return levelDBStore.get(SerializationUtils.serialize(new IndexedRangeKey(tile, range))) != null;
+  }
+
+  public void writeRangeIndexed(int tile, String range) {
+    levelDBStore.put(
+        SerializationUtils.serialize(new IndexedRangeKey(tile, range)),
+        SerializationUtils.serialize(Instant.now().toEpochMilli()));
+  }
+
+  private static byte[] getDiscoveryCheckpointKey(int tile) {
+    return ByteBuffer.allocate(5).put(DISCOVERY_CHECKPOINT_PREFIX).putInt(tile).array();
+  }
+
+  /** Returns the checkpoint of an interrupted discovery pass of the tile, or null */
+  public DiscoveryCheckpoint readDiscoveryCheckpoint(int tile) {
+    var value = levelDBStore.get(getDiscoveryCheckpointKey(tile));
+    if (value == null) {
+      return null;
+    }
+    return SerializationUtils.deserialize(value);
+  }
+
+  public void writeDiscoveryCheckpoint(int tile, DiscoveryCheckpoint checkpoint) {
+    levelDBStore.put(getDiscoveryCheckpointKey(tile), SerializationUtils.serialize(checkpoint));
+  }
+
+  public void deleteDiscoveryCheckpoint(int tile) {
+    levelDBStore.delete(getDiscoveryCheckpointKey(tile));
+  }
+
   @Override
   public void deletePartitionMetadata(Object o) {
     var partitionMetaData = (PartitionMetaData) o;
@@ -172,8 +494,18 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
   public void deleteRowMetadata(Object o) throws IOException {
     var rowMetadata = (LedgerMetaData) o;
     var partitionKey = new PartitionKey(rowMetadata.getPartitionKeys());
+    var lock = getPartitionLock(partitionKey.getPartitionKey());
+    lock.lock();
+    try {
+      deleteRowMetadata(partitionKey, rowMetadata.getClusteringColumns());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void deleteRowMetadata(PartitionKey partitionKey, String clusteringKey)
+      throws IOException {
     var readBeforeWriteValue = levelDBStore.get(SerializationUtils.serialize(partitionKey));
-    var clusteringKey = rowMetadata.getClusteringColumns();
     if (readBeforeWriteValue != null) {
       if (!Utils.cborDecoderSet(readBeforeWriteValue).isEmpty()) {
         var preparedSet = removeToCbor(readBeforeWriteValue, clusteringKey);
@@ -185,6 +517,8 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
                 .delete(
                     SerializationUtils.serialize(
                         String.format("%s|%s", partitionKey.getPartitionKey(), clusteringKey)));
+        deleteOrderedIndex(
+            clusteringKeyCodec, batch, partitionKey.getPartitionKey(), clusteringKey);
         levelDBStore.write(batch);
         if (Utils.cborDecoderSet(preparedSet).isEmpty()) {
           // Remove a partitionKey from the ledger if the set is empty
@@ -196,6 +530,43 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
     }
   }
 
+  /**
+   * Removes a partition with the metadata of all its rows in one batch
+   *
+   * @return the clustering keys of the removed rows
+   */
+  public Set<String> deletePartitionRows(String partitionKey) throws IOException {
+    var lock = getPartitionLock(partitionKey);
+    lock.lock();
+    try {
+      var serializedPartitionKey = SerializationUtils.serialize(new PartitionKey(partitionKey));
+      var serializedPK = levelDBStore.get(serializedPartitionKey);
+      if (serializedPK == null) {
+        return Collections.emptySet();
+      }
+      Set<String> clusteringKeys = Utils.cborDecoderSet(serializedPK);
+      var batch = levelDBStore.createWriteBatch().delete(serializedPartitionKey);
+      for (var ck : clusteringKeys) {
+        batch.delete(SerializationUtils.serialize(String.format("%s|%s", partitionKey, ck)));
+      }
+      var prefix = getOrderedIndexPrefix(partitionKey);
+      try (var iterator = levelDBStore.iterator()) {
+        iterator.seek(prefix);
+        while (iterator.hasNext()) {
+          var key = iterator.next().getKey();
+          if (!startsWith(key, prefix)) {
+            break;
+          }
+          batch.delete(key);
+        }
+      }
+      levelDBStore.write(batch);
+      return clusteringKeys;
+    } finally {
+      lock.unlock();
+    }
+  }
+
   @Override
   public List<Object> execute(Object o) {
     return null;
@@ -244,7 +615,9 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
     var finalResult = new ArrayList<>();
     iterator.seekToFirst();
     while (iterator.hasNext()) {
-      var key = SerializationUtils.deserialize(iterator.peekNext().getKey());
+      var rawKey = iterator.peekNext().getKey();
+      // The partition token index of discovery isn't Java-serialized
+      var key = isSerializedKey(rawKey) ? SerializationUtils.deserialize(rawKey) : null;
       if (key instanceof PrimaryKey) {
         finalResult.add(key);
       }
@@ -295,7 +668,8 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
               iterator.seekToFirst();
               if (iterator.hasNext()) {
                 var nextMap = iterator.peekNext();
-                if (SerializationUtils.deserialize(nextMap.getKey()) instanceof PartitionKey) {
+                if (isSerializedKey(nextMap.getKey())
+                    && SerializationUtils.deserialize(nextMap.getKey()) instanceof PartitionKey) {
                   var key = (PartitionKey) SerializationUtils.deserialize(nextMap.getKey());
                   Set<String> clusteringKeys =
                       Utils.cborDecoderSet(levelDBStore.get(nextMap.getKey()));
@@ -310,7 +684,8 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
             for (int i = 0; i < PAGE_SIZE / 2; i++) {
               if (iterator.hasNext()) {
                 var nextMap = iterator.peekNext();
-                if (SerializationUtils.deserialize(nextMap.getKey()) instanceof PartitionKey) {
+                if (isSerializedKey(nextMap.getKey())
+                    && SerializationUtils.deserialize(nextMap.getKey()) instanceof PartitionKey) {
                   var key = (PartitionKey) SerializationUtils.deserialize(nextMap.getKey());
                   Set<String> clusteringKeys =
                       Utils.cborDecoderSet(levelDBStore.get(nextMap.getKey()));
@@ -345,7 +720,7 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
 
     Iterator<List<Object>> pagingIterator =
         new AbstractIterator<>() {
-          private Object resumeKey;
+          private PrimaryKey resumeKey;
           private boolean endOfData;
 
           @Override
@@ -354,38 +729,44 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
               return endOfData();
             }
             List<Object> rows = getData(resumeKey, PAGE_SIZE);
-            if (rows.isEmpty()) {
-              return endOfData();
-            } else if (rows.size() < PAGE_SIZE) {
+            if (rows.size() < PAGE_SIZE) {
               endOfData = true;
               try {
                 levelDBStore1.close();
                 deleteSnapshot();
               } catch (IOException e) {
-                throw new RuntimeException();
+                throw new RuntimeException(e);
+              }
+              if (rows.isEmpty()) {
+                return endOfData();
               }
-
             } else {
-              resumeKey = rows.get(rows.size() - 1);
+              resumeKey = (PrimaryKey) rows.get(rows.size() - 1);
             }
             return rows;
           }
 
-          private List<Object> getData(Object startKey, int PAGE_SIZE) {
+          private List<Object> getData(PrimaryKey startKey, int PAGE_SIZE) {
             List<Object> result = new ArrayList<>();
+            byte[] serializedStartKey = null;
             if (startKey != null) {
-              iterator.seek(SerializationUtils.serialize((PrimaryKey) startKey));
+              serializedStartKey = SerializationUtils.serialize(startKey);
+              iterator.seek(serializedStartKey);
             } else {
               iterator.seekToFirst();
-              if (iterator.hasNext())
-                result.add(SerializationUtils.deserialize(iterator.peekNext().getKey()));
             }
 
-            for (int i = 0; i < PAGE_SIZE; i++) {
-              if (iterator.hasNext()) {
-                result.add(SerializationUtils.deserialize(iterator.peekNext().getKey()));
-                iterator.next();
-              } else break;
+            while (result.size() < PAGE_SIZE && iterator.hasNext()) {
+              var rawKey = iterator.next().getKey();
+              // The partition token index of discovery isn't Java-serialized, the checkpoints and
+              // the indexed range markers of discovery aren't partitions
+              if (!isSerializedKey(rawKey) || Arrays.equals(rawKey, serializedStartKey)) {
+                continue;
+              }
+              var key = SerializationUtils.deserialize(rawKey);
+              if (key instanceof PrimaryKey) {
+                result.add(key);
+              }
             }
             return result;
           }
@@ -393,4 +774,84 @@ public class LedgerStorageOnLevelDB extends LedgerStorage<Object, List<Object>,
 
     return pagingIterator;
   }
+
+  /**
+   * Iterates the partition token index of one tile, from startToken up to endToken in token order
+   */
+  public static class PartitionTokenIterator extends AbstractIterator<PartitionToken>
+      implements Closeable {
+    private final DBIterator iterator;
+    private final byte[] prefix;
+    private final long endToken;
+
+    private PartitionTokenIterator(DBIterator iterator, int tile, long startToken, long endToken) {
+      this.iterator = iterator;
+      this.prefix = ByteBuffer.allocate(5).put(PARTITION_TOKEN_INDEX_PREFIX).putInt(tile).array();
+      this.endToken = endToken;
+      iterator.seek(getPartitionTokenKey(tile, startToken, ""));
+    }
+
+    @Override
+    protected PartitionToken computeNext() {
+      if (!iterator.hasNext()) {
+        return endOfData();
+      }
+      var key = iterator.next().getKey();
+      if (!startsWith(key, prefix)) {
+        return endOfData();
+      }
+      var token = ByteBuffer.wrap(key, prefix.length, 8).getLong() ^ Long.MIN_VALUE;
+      if (token > endToken) {
+        return endOfData();
+      }
+      return new PartitionToken(
+          token,
+          new String(
+              key, prefix.length + 8, key.length - prefix.length - 8, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+      iterator.close();
+    }
+  }
+
+  public static class OrderedRowIterator extends AbstractIterator<OrderedValue>
+      implements Closeable {
+    private final DBIterator iterator;
+    private final byte[] prefix;
+
+    private OrderedRowIterator(DBIterator iterator, byte[] prefix, byte[] from) {
+      this.iterator = iterator;
+      this.prefix = prefix;
+      iterator.seek(from);
+    }
+
+    @Override
+    protected OrderedValue computeNext() {
+      if (!iterator.hasNext()) {
+        return endOfData();
+      }
+      var entry = iterator.next();
+      if (!startsWith(entry.getKey(), prefix)) {
+        return endOfData();
+      }
+      var value = ByteBuffer.wrap(entry.getValue());
+      var lastRun = value.getLong();
+      var writeTime = value.getLong();
+      var ck =
+          new String(
+              entry.getValue(), value.position(), value.remaining(), StandardCharsets.UTF_8);
+      return new OrderedValue(
+          lastRun,
+          writeTime,
+          ck,
+          Arrays.copyOfRange(entry.getKey(), prefix.length, entry.getKey().length));
+    }
+
+    @Override
+    public void close() throws IOException {
+      iterator.close();
+    }
+  }
 }
@@ -7,13 +7,16 @@ package com.amazon.aws.cqlreplicator.storage;
 
 import com.amazon.aws.cqlreplicator.connector.ConnectionFactory;
 import com.amazon.aws.cqlreplicator.util.Utils;
+import net.spy.memcached.CASResponse;
 import net.spy.memcached.MemcachedClient;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import static com.amazon.aws.cqlreplicator.util.Utils.hashIt;
 
@@ -63,6 +66,10 @@ public class MemcachedCacheStorage extends CacheStorage<Object, Object> {
   }
 
   private void counterDecrement(int tile, String operationType) {
+    counterDecrement(tile, operationType, 1);
+  }
+
+  private void counterDecrement(int tile, String operationType, long delta) {
     var cntKey =
         hashIt(
                 String.format(
@@ -71,7 +78,7 @@ public class MemcachedCacheStorage extends CacheStorage<Object, Object> {
                     .getBytes(), hashingType);
     var contains = memCachedClient.get(cntKey) != null;
     if (contains) {
-      memCachedClient.asyncDecr(cntKey, 1);
+      memCachedClient.asyncDecr(cntKey, delta);
     }
   }
 
@@ -101,6 +108,47 @@ public class MemcachedCacheStorage extends CacheStorage<Object, Object> {
     return result;
   }
 
+  /**
+   * Stores a chunk of partition keys of the tile after the last chunk and returns its number.
+   * Processes that write to the same tile take different numbers, a chunk is stored before the
+   * total is raised to cover it.
+   */
+  public int appendChunk(int tile, byte[] compressedPayload)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    var totalChunksKey =
+        hashIt(
+            String.format("%s|%s|%s|%s|%s", "pd", targetKeyspace, targetTable, tile, "totalChunks")
+                .getBytes(),
+            hashingType);
+    var chunk = getTotalChunks(tile);
+    while (!memCachedClient
+        .add(
+            hashIt(
+                String.format(
+                        "%s|%s|%s|%s|%s|%s",
+                        "pd", targetKeyspace, targetTable, "pksChunk", tile, chunk)
+                    .getBytes(),
+                hashingType),
+            0,
+            compressedPayload)
+        .get(TIMEOUT_IN_SEC, TimeUnit.SECONDS)) {
+      chunk++;
+    }
+    var total = String.valueOf(chunk + 1);
+    while (true) {
+      var current = memCachedClient.gets(totalChunksKey);
+      if (current == null) {
+        if (memCachedClient.add(totalChunksKey, 0, total).get(TIMEOUT_IN_SEC, TimeUnit.SECONDS)) {
+          break;
+        }
+      } else if (Integer.parseInt(((String) current.getValue()).trim()) > chunk
+          || memCachedClient.cas(totalChunksKey, current.getCas(), total) == CASResponse.OK) {
+        break;
+      }
+    }
+    return chunk;
+  }
+
   public List<Object> getListOfPartitionKeysByChunk(int chunk, int tile) throws IOException {
     var keyOfChunk =
         String.format(
@@ -177,15 +225,47 @@ public class MemcachedCacheStorage extends CacheStorage<Object, Object> {
   @Override
   public void remove(int tile, String operationType, Object key)
       throws InterruptedException, ExecutionException, TimeoutException {
-    var ksAndTable = String.format("%s|%s", targetKeyspace, targetTable);
-    memCachedClient
-        .delete(
-            hashIt(
-                    String.format("%s|%s|%s", operationType, ksAndTable, key).getBytes(), hashingType))
-        .get(TIMEOUT_IN_SEC, TimeUnit.SECONDS);
+    memCachedClient.delete(getKey(operationType, key)).get(TIMEOUT_IN_SEC, TimeUnit.SECONDS);
     counterDecrement(tile, operationType);
   }
 
+  /** Returns the hashed key of a key of the operation */
+  String getKey(String operationType, Object key) {
+    return hashIt(
+        String.format("%s|%s|%s|%s", operationType, targetKeyspace, targetTable, key).getBytes(),
+        hashingType);
+  }
+
+  /** Pipelines the deletes of the keys and waits for all of them */
+  @Override
+  public void removeAll(int tile, String operationType, Collection<Object> keys)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    List<String> hashedKeys = new ArrayList<>(keys.size());
+    for (var key : keys) {
+      hashedKeys.add(getKey(operationType, key));
+    }
+    var removed = deleteAll(hashedKeys, memCachedClient::delete);
+    if (removed > 0) {
+      counterDecrement(tile, operationType, removed);
+    }
+  }
+
+  /** Sends all the deletes before waiting for any of them, returns the number of removed keys */
+  static int deleteAll(List<String> keys, Function<String, ? extends Future<Boolean>> delete)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    List<Future<Boolean>> deletes = new ArrayList<>(keys.size());
+    for (var key : keys) {
+      deletes.add(delete.apply(key));
+    }
+    var removed = 0;
+    for (var pending : deletes) {
+      if (pending.get(TIMEOUT_IN_SEC, TimeUnit.SECONDS)) {
+        removed++;
+      }
+    }
+    return removed;
+  }
+
   @Override
   public Set keySet() {
     return null;
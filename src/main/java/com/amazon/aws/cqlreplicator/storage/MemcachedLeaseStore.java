@@ -0,0 +1,81 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.amazon.aws.cqlreplicator.connector.ConnectionFactory;
+import com.amazon.aws.cqlreplicator.models.WorkLease;
+import com.amazon.aws.cqlreplicator.util.Utils;
+import net.spy.memcached.CASResponse;
+import net.spy.memcached.MemcachedClient;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.amazon.aws.cqlreplicator.util.Utils.hashIt;
+
+/** Keeps the leases in memcached, a lease is replaced with gets and cas */
+public class MemcachedLeaseStore extends LeaseStore {
+
+  private static final int TIMEOUT_IN_SEC = 5;
+  private static final Utils.HashingFunctions hashingType = Utils.HashingFunctions.SHA_256;
+  private final Properties config;
+  private final String prefix;
+  private MemcachedClient memCachedClient;
+
+  public MemcachedLeaseStore(Properties config) {
+    this.config = config;
+    this.prefix =
+        String.format(
+            "%s|%s|%s",
+            "lease", config.getProperty("TARGET_KEYSPACE"), config.getProperty("TARGET_TABLE"));
+  }
+
+  @Override
+  public void connect() throws IOException {
+    memCachedClient = new ConnectionFactory(config).buildMemcachedSession();
+  }
+
+  @Override
+  public void tearDown() {
+    memCachedClient.shutdown();
+  }
+
+  private String getKey(String unit) {
+    return hashIt(String.format("%s|%s", prefix, unit).getBytes(), hashingType);
+  }
+
+  @Override
+  public WorkLease get(String unit) {
+    var value = memCachedClient.get(getKey(unit));
+    return value == null ? null : WorkLease.parse((String) value);
+  }
+
+  @Override
+  public boolean compareAndSet(String unit, WorkLease expected, WorkLease update)
+      throws IOException {
+    var key = getKey(unit);
+    try {
+      if (expected == null) {
+        return memCachedClient
+            .add(key, 0, update.toString())
+            .get(TIMEOUT_IN_SEC, TimeUnit.SECONDS);
+      }
+      var current = memCachedClient.gets(key);
+      if (current == null || !expected.equals(WorkLease.parse((String) current.getValue()))) {
+        return false;
+      }
+      return memCachedClient.cas(key, current.getCas(), update.toString()) == CASResponse.OK;
+    } catch (ExecutionException | TimeoutException e) {
+      throw new IOException(String.format("Unable to lease %s", unit), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(String.format("Unable to lease %s", unit), e);
+    }
+  }
+}
@@ -3,74 +3,99 @@
 package com.amazon.aws.cqlreplicator.storage;
 
 import com.amazon.aws.cqlreplicator.connector.ConnectionFactory;
+import com.amazon.aws.cqlreplicator.connector.PreparedStatementRegistry;
 import com.amazon.aws.cqlreplicator.models.PrimaryKey;
+import com.amazon.aws.cqlreplicator.util.ConcurrentRangeScanner;
+import com.amazon.aws.cqlreplicator.util.TokenRangePlanner;
 import com.amazon.aws.cqlreplicator.util.Utils;
 import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.*;
 import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
 import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
 import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
 import com.datastax.oss.driver.internal.core.metadata.token.Murmur3Token;
 import com.datastax.oss.driver.internal.core.metadata.token.RandomToken;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import static com.amazon.aws.cqlreplicator.util.Utils.doubleQuoteResolver;
 
 /** Responsible for providing extracting logic from source cluster */
 public class SourceStorageOnCassandra {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SourceStorageOnCassandra.class);
   private static final SimpleStatement statement =
       SimpleStatement.newInstance(
-          "select column_name, type, position, kind from system_schema.\"columns\" "
+          "select column_name, type, position, kind, clustering_order from system_schema.\"columns\" "
               + "where keyspace_name=:keyspace_name and table_name=:table_name");
   private static final Pattern REGEX_PIPE = Pattern.compile("\\|");
+  private static final Pattern REGEX_COM = Pattern.compile(",");
+  private static final Pattern REGEX_SPACE = Pattern.compile(" ");
+  private static final Pattern REGEX_FROM = Pattern.compile("(?i)\\sFROM\\s");
+  // Clauses that follow the WHERE clause of a SELECT
+  private static final Pattern REGEX_TRAILING_CLAUSES =
+      Pattern.compile(
+          "(?i)\\s+(ORDER\\s+BY|PER\\s+PARTITION\\s+LIMIT|LIMIT|ALLOW\\s+FILTERING)\\b");
   private final Map<String, LinkedHashMap<String, String>> metaData;
   private final CqlSession cassandraSession;
   private final Properties config;
-  private final PreparedStatement psCassandra;
+  private final PreparedStatementRegistry statements;
+  private final String keyspaceName;
+  private final String tableName;
+  private final PreparedStatementRegistry.Shape sourceQueryShape;
   private final String BIG_INT_MAX_VALUE = String.valueOf(2 ^ Integer.MAX_VALUE);
   private final String BIG_INT_MIN_VALUE = String.valueOf(-2 ^ Integer.MIN_VALUE);
 
   public SourceStorageOnCassandra(Properties config) {
     this.config = config;
     ConnectionFactory connectionFactory = new ConnectionFactory(config);
-    this.cassandraSession = connectionFactory.buildCqlSession("CassandraConnector.conf");
-    this.psCassandra = cassandraSession.prepare(config.getProperty("SOURCE_CQL_QUERY"));
+    this.statements =
+        PreparedStatementRegistry.connect(connectionFactory, "CassandraConnector.conf");
+    this.cassandraSession = statements.getSession();
+    this.keyspaceName = config.getProperty("TARGET_KEYSPACE");
+    this.tableName = config.getProperty("TARGET_TABLE");
+    this.sourceQueryShape = PreparedStatementRegistry.Shape.of("SELECT", keyspaceName, tableName);
+    // Prepared up front to fail fast on an invalid SOURCE_CQL_QUERY
+    getCassandraPreparedStatement();
     metaData =
         getColumns(config.getProperty("TARGET_KEYSPACE"), config.getProperty("TARGET_TABLE"));
   }
 
   public boolean findPrimaryKey(
       PrimaryKey primaryKey, String[] partitionKeyNames, String[] clusteringKeyNames) throws ArrayIndexOutOfBoundsException {
-    List<String> whereClause = new ArrayList<>();
-
     var pkValues = REGEX_PIPE.split(primaryKey.getPartitionKeys());
     var ckValues = REGEX_PIPE.split(primaryKey.getClusteringColumns());
 
-    for (var col : partitionKeyNames) {
-      whereClause.add(String.format("%s=:%s", col, col));
-    }
-    for (var col : clusteringKeyNames) {
-      whereClause.add(String.format("%s=:%s", col, col));
-    }
-
-    var pks = String.join(",", partitionKeyNames);
-    var finalWhereClause = String.join(" AND ", whereClause);
-
-    String selectStatement =
-        String.format(
-            doubleQuoteResolver("SELECT %s FROM %s.%s WHERE %s", config.getProperty("SOURCE_CQL_QUERY")),
-            pks,
-            config.getProperty("TARGET_KEYSPACE"),
-            config.getProperty("TARGET_TABLE"),
-            finalWhereClause);
-
-    PreparedStatement psSelectStatement = cassandraSession.prepare(selectStatement);
+    PreparedStatement psSelectStatement =
+        statements.prepare(
+            PreparedStatementRegistry.Shape.of(
+                "SELECT_PRIMARY_KEY", keyspaceName, tableName, partitionKeyNames, clusteringKeyNames),
+            () -> {
+              List<String> whereClause = new ArrayList<>();
+              for (var col : partitionKeyNames) {
+                whereClause.add(String.format("%s=:%s", col, col));
+              }
+              for (var col : clusteringKeyNames) {
+                whereClause.add(String.format("%s=:%s", col, col));
+              }
+              return String.format(
+                  doubleQuoteResolver("SELECT %s FROM %s.%s WHERE %s", config.getProperty("SOURCE_CQL_QUERY")),
+                  String.join(",", partitionKeyNames),
+                  keyspaceName,
+                  tableName,
+                  String.join(" AND ", whereClause));
+            });
     BoundStatementBuilder bsSelectStatement = psSelectStatement.boundStatementBuilder();
 
     int i = 0;
@@ -97,7 +122,82 @@ public class SourceStorageOnCassandra {
   }
 
   public List<Row> findPartitionsByTokenRange(String pksStr, long startRange, long endRange) {
+    return cassandraSession.execute(bindPartitionsByTokenRange(pksStr, startRange, endRange)).all();
+  }
+
+  /** Reads the partition keys of a token range page by page */
+  public CompletionStage<ConcurrentRangeScanner.Page<Row>> findPartitionsByTokenRangeAsync(
+      String pksStr, long startRange, long endRange) {
+    return findPartitionsByTokenRangeAsync(pksStr, startRange, endRange, null);
+  }
+
+  /**
+   * Reads the partition keys of a token range page by page, starting after the page of the
+   * paging state if it isn't null
+   */
+  public CompletionStage<ConcurrentRangeScanner.Page<Row>> findPartitionsByTokenRangeAsync(
+      String pksStr, long startRange, long endRange, ByteBuffer pagingState) {
+    var boundStatement = bindPartitionsByTokenRange(pksStr, startRange, endRange);
+    if (pagingState != null) {
+      boundStatement = boundStatement.setPagingState(pagingState);
+    }
+    return cassandraSession
+        .executeAsync(boundStatement)
+        .thenApply(SourceStorageOnCassandra::toPage);
+  }
+
+  private static ConcurrentRangeScanner.Page<Row> toPage(AsyncResultSet resultSet) {
+    return new ConcurrentRangeScanner.Page<>() {
+      @Override
+      public Iterable<Row> getRows() {
+        return resultSet.currentPage();
+      }
+
+      @Override
+      public CompletionStage<ConcurrentRangeScanner.Page<Row>> fetchNext() {
+        return resultSet.hasMorePages()
+            ? resultSet.fetchNextPage().thenApply(SourceStorageOnCassandra::toPage)
+            : null;
+      }
+
+      @Override
+      public ByteBuffer getPagingState() {
+        return resultSet.getExecutionInfo().getPagingState();
+      }
+    };
+  }
+
+  /** Returns the replicas of the token range that ends with the token */
+  public Set<Node> getReplicas(long endRange) {
+    return cassandraSession
+        .getMetadata()
+        .getTokenMap()
+        .map(
+            tokenMap ->
+                tokenMap.getReplicas(keyspaceName, tokenMap.parse(String.valueOf(endRange))))
+        .orElse(Collections.emptySet());
+  }
+
+  public boolean isMurmur3Partitioner() {
+    return cassandraSession
+        .getMetadata()
+        .getTokenMap()
+        .map(tokenMap -> tokenMap.getPartitionerName().endsWith("Murmur3Partitioner"))
+        .orElse(false);
+  }
 
+  /** Returns the Murmur3 token of the partition key of a row read by token range */
+  public long getToken(Row row, String[] partitionKeyNames) {
+    var components = new ByteBuffer[partitionKeyNames.length];
+    for (int i = 0; i < partitionKeyNames.length; i++) {
+      components[i] = row.getBytesUnsafe(partitionKeyNames[i]);
+    }
+    var tokenMap = cassandraSession.getMetadata().getTokenMap().get();
+    return ((Murmur3Token) tokenMap.newToken(components)).getValue();
+  }
+
+  private BoundStatement bindPartitionsByTokenRange(
+      String pksStr, long startRange, long endRange) {
     BoundStatementBuilder psPksbyRange = null;
 
     if (startRange < endRange) {
@@ -113,9 +213,7 @@ public class SourceStorageOnCassandra {
               .setLong("r1", startRange);
     }
     BoundStatement boundStatement = psPksbyRange.build();
-    return cassandraSession
-        .execute(boundStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM))
-        .all();
+    return boundStatement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
   }
 
   public List<ImmutablePair<String, String>> getTokenRanges() {
@@ -149,6 +247,37 @@ public class SourceStorageOnCassandra {
     return ranges;
   }
 
+  /**
+   * Reads the partition estimates of the table from system.size_estimates of every node, a node
+   * only keeps the estimates of its own ranges
+   */
+  public List<TokenRangePlanner.Estimate> getSizeEstimates() {
+    Map<String, TokenRangePlanner.Estimate> estimates = new HashMap<>();
+    for (Node node : cassandraSession.getMetadata().getNodes().values()) {
+      try {
+        var resultSet =
+            cassandraSession.execute(
+                SimpleStatement.newInstance(
+                        "SELECT range_start, range_end, partitions_count FROM system.size_estimates "
+                            + "WHERE keyspace_name=? AND table_name=?",
+                        keyspaceName,
+                        tableName)
+                    .setNode(node));
+        for (Row row : resultSet) {
+          var start = row.getString("range_start");
+          var end = row.getString("range_end");
+          estimates.put(
+              String.format("%s:%s", start, end),
+              new TokenRangePlanner.Estimate(
+                  Long.parseLong(start), Long.parseLong(end), row.getLong("partitions_count")));
+        }
+      } catch (RuntimeException e) {
+        LOGGER.warn("Unable to read the size estimates from {}", node.getEndPoint(), e);
+      }
+    }
+    return new ArrayList<>(estimates.values());
+  }
+
   public List<Row> extract(Object object) {
     ResultSet resultSet = cassandraSession.execute(((BoundStatementBuilder) object).build());
     return resultSet.all();
@@ -158,49 +287,134 @@ public class SourceStorageOnCassandra {
     return cassandraSession.executeAsync(((BoundStatementBuilder) object).build());
   }
 
+  /**
+   * Streams the result page by page. The next page is requested before the current page is handed
+   * to the consumer, so only the pages in flight are held on heap (see basic.request.page-size).
+   */
+  public void extractPaged(Object object, Consumer<Iterable<Row>> pageConsumer) {
+    consumePages(extractAsync(object), pageConsumer);
+  }
+
+  static void consumePages(
+      CompletionStage<AsyncResultSet> firstPage, Consumer<Iterable<Row>> pageConsumer) {
+    var resultSet = firstPage.toCompletableFuture().join();
+    while (true) {
+      CompletionStage<AsyncResultSet> nextPage =
+          resultSet.hasMorePages() ? resultSet.fetchNextPage() : null;
+      pageConsumer.accept(resultSet.currentPage());
+      if (nextPage == null) {
+        break;
+      }
+      resultSet = nextPage.toCompletableFuture().join();
+    }
+  }
+
   private PreparedStatement getPartitionKeysByTokenRange(
       String partitionKeyStr, long startRange, long endRange) {
+    // A range that wraps around the ring is only bounded by its start
+    var bounded = endRange >= startRange;
+    return statements.prepare(
+        PreparedStatementRegistry.Shape.of(
+            bounded ? "SELECT_PARTITION_KEYS" : "SELECT_PARTITION_KEYS_FROM",
+            keyspaceName,
+            tableName,
+            partitionKeyStr),
+        () ->
+            bounded
+                ? String.format(
+                    doubleQuoteResolver("select distinct %s from %s.%s where token(%s)>=:r1 and token(%s)<=:r2", config.getProperty("SOURCE_CQL_QUERY")),
+                    partitionKeyStr,
+                    keyspaceName,
+                    tableName,
+                    partitionKeyStr,
+                    partitionKeyStr)
+                : String.format(
+                    doubleQuoteResolver("select distinct %s from %s.%s where token(%s)>=:r1", config.getProperty("SOURCE_CQL_QUERY")),
+                    partitionKeyStr,
+                    keyspaceName,
+                    tableName,
+                    partitionKeyStr));
+  }
 
-    String finalCqlStatement =
-        String.format(
-            doubleQuoteResolver("select distinct %s from %s.%s where token(%s)>=:r1 and token(%s)<=:r2", config.getProperty("SOURCE_CQL_QUERY")),
-            partitionKeyStr,
-            config.getProperty("TARGET_KEYSPACE"),
-            config.getProperty("TARGET_TABLE"),
-            partitionKeyStr,
-            partitionKeyStr);
+  public PreparedStatement getCassandraPreparedStatement() {
+    return statements.prepare(sourceQueryShape, () -> config.getProperty("SOURCE_CQL_QUERY"));
+  }
 
-    if (startRange < endRange) {
-      finalCqlStatement =
-          String.format(
-              doubleQuoteResolver("select distinct %s from %s.%s where token(%s)>=:r1 and token(%s)<=:r2", config.getProperty("SOURCE_CQL_QUERY")),
-              partitionKeyStr,
-              config.getProperty("TARGET_KEYSPACE"),
-              config.getProperty("TARGET_TABLE"),
-              partitionKeyStr,
-              partitionKeyStr);
-    } else if (endRange < startRange) {
-      finalCqlStatement =
-          String.format(
-              doubleQuoteResolver("select distinct %s from %s.%s where token(%s)>=:r1", config.getProperty("SOURCE_CQL_QUERY")),
-              partitionKeyStr,
-              config.getProperty("TARGET_KEYSPACE"),
-              config.getProperty("TARGET_TABLE"),
-              partitionKeyStr);
+  /** Returns SOURCE_CQL_QUERY restricted to a range of clustering keys, e.g. "ck>=:slice_start" */
+  public PreparedStatement getCassandraPreparedStatement(String clusteringRestriction) {
+    return statements.prepare(
+        PreparedStatementRegistry.Shape.of(
+            "SELECT_SLICE", keyspaceName, tableName, clusteringRestriction),
+        () -> restrict(config.getProperty("SOURCE_CQL_QUERY"), clusteringRestriction));
+  }
+
+  /**
+   * Adds the restriction to the WHERE clause of the query, before its ORDER BY, LIMIT or ALLOW
+   * FILTERING
+   */
+  static String restrict(String query, String restriction) {
+    var trailingClauses = REGEX_TRAILING_CLAUSES.matcher(query);
+    if (!trailingClauses.find()) {
+      return String.format("%s AND %s", query.stripTrailing(), restriction);
     }
+    return String.format(
+        "%s AND %s%s",
+        query.substring(0, trailingClauses.start()),
+        restriction,
+        query.substring(trailingClauses.start()));
+  }
 
-    return cassandraSession.prepare(finalCqlStatement);
+  /**
+   * Returns a query with the WHERE clause of SOURCE_CQL_QUERY that selects only the primary key
+   * and the writetime of WRITETIME_COLUMNS, optionally restricted to clustering keys
+   */
+  public PreparedStatement getCassandraProbePreparedStatement(String clusteringRestriction) {
+    var restriction = clusteringRestriction == null ? "" : clusteringRestriction;
+    return statements.prepare(
+        PreparedStatementRegistry.Shape.of("SELECT_PROBE", keyspaceName, tableName, restriction),
+        () -> {
+          List<String> columns = new ArrayList<>(metaData.get("partition_key").keySet());
+          columns.addAll(metaData.get("clustering").keySet());
+          var writeTimeColumns =
+              REGEX_SPACE.matcher(config.getProperty("WRITETIME_COLUMNS")).replaceAll("");
+          for (var column : REGEX_COM.split(writeTimeColumns)) {
+            columns.add(String.format("writetime(%s)", column));
+          }
+          return getProbeQuery(config.getProperty("SOURCE_CQL_QUERY"), columns, restriction);
+        });
   }
 
-  public PreparedStatement getCassandraPreparedStatement() {
-    return psCassandra;
+  /**
+   * Returns the source query with the columns instead of its selection. A JSON source query is
+   * probed as JSON, otherwise the rows are serialized like the full rows, so the probed clustering
+   * keys have the same format as those of the ledger.
+   */
+  public static String getProbeQuery(String sourceQuery, List<String> columns, String restriction) {
+    var from = REGEX_FROM.matcher(sourceQuery);
+    if (!from.find()) {
+      throw new IllegalArgumentException("Unable to parse SOURCE_CQL_QUERY " + sourceQuery);
+    }
+    var probeQuery =
+        String.format(
+            "SELECT %s%s%s",
+            isJsonQuery(sourceQuery) ? "JSON " : "",
+            String.join(",", columns),
+            sourceQuery.substring(from.start()));
+    return restriction.isEmpty() ? probeQuery : restrict(probeQuery, restriction);
+  }
+
+  /** Returns true if the source query selects its rows as JSON */
+  public static boolean isJsonQuery(String sourceQuery) {
+    return sourceQuery.split(" ")[1].toLowerCase().equals("json");
   }
 
   public Map<String, LinkedHashMap<String, String>> getColumns(
       String keyspaceName, String tableName) {
     Map<Integer, Map<String, String>> partitionKeysTemp = new LinkedHashMap<>();
+    Map<Integer, Map<String, String>> clusteringOrderTemp = new LinkedHashMap<>();
     LinkedHashMap<String, String> partitionKeys = new LinkedHashMap<>();
     LinkedHashMap<String, String> clusteringKeys = new LinkedHashMap<>();
+    LinkedHashMap<String, String> clusteringOrder = new LinkedHashMap<>();
     LinkedHashMap<String, String> regularColumns = new LinkedHashMap<>();
     Map<String, LinkedHashMap<String, String>> finalMetaData = new HashMap<>();
 
@@ -219,6 +433,10 @@ public class SourceStorageOnCassandra {
       }
       if (Objects.requireNonNull(row.getString("kind")).equals("clustering")) {
         clusteringKeys.put(row.getString("column_name"), row.getString("type"));
+        clusteringOrderTemp.put(
+            row.getInt("position"),
+            Collections.singletonMap(
+                row.getString("column_name"), row.getString("clustering_order")));
       }
       if (Objects.requireNonNull(row.getString("kind")).equals("regular")
           || Objects.requireNonNull(row.getString("kind")).equals("static")) {
@@ -235,8 +453,14 @@ public class SourceStorageOnCassandra {
               partitionKeys.put(newKey, newValue);
             });
 
+    // Clustering columns in the order of their position with asc or desc
+    clusteringOrderTemp.entrySet().stream()
+        .sorted(Map.Entry.comparingByKey())
+        .forEach(entry -> clusteringOrder.putAll(entry.getValue()));
+
     finalMetaData.put("partition_key", partitionKeys);
     finalMetaData.put("clustering", clusteringKeys);
+    finalMetaData.put("clustering_order", clusteringOrder);
     finalMetaData.put("regular", regularColumns);
 
     return finalMetaData;
@@ -245,4 +469,19 @@ public class SourceStorageOnCassandra {
   public Map<String, LinkedHashMap<String, String>> getMetaData() {
     return metaData;
   }
+
+  public PreparedStatementRegistry getStatementRegistry() {
+    return statements;
+  }
+
+  /** Returns the driver's metadata of the source table */
+  public TableMetadata getTableMetadata() {
+    return cassandraSession
+        .getMetadata()
+        .getKeyspace(CqlIdentifier.fromInternal(config.getProperty("TARGET_KEYSPACE")))
+        .flatMap(
+            keyspace ->
+                keyspace.getTable(CqlIdentifier.fromInternal(config.getProperty("TARGET_TABLE"))))
+        .orElseThrow(() -> new IllegalStateException("The source table is not found"));
+  }
 }
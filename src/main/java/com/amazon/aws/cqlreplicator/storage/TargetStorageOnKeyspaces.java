@@ -6,51 +6,100 @@
 package com.amazon.aws.cqlreplicator.storage;
 
 import com.amazon.aws.cqlreplicator.connector.ConnectionFactory;
+import com.amazon.aws.cqlreplicator.connector.PreparedStatementRegistry;
 import com.amazon.aws.cqlreplicator.models.DeleteTargetOperation;
 import com.amazon.aws.cqlreplicator.models.PrimaryKey;
 import com.amazon.aws.cqlreplicator.models.QueryStats;
 import com.amazon.aws.cqlreplicator.models.StatsMetaData;
+import com.amazon.aws.cqlreplicator.util.AdaptiveConcurrencyLimiter;
+import com.amazon.aws.cqlreplicator.util.AsyncRetryScheduler;
 import com.amazon.aws.cqlreplicator.util.Utils;
+import com.amazon.aws.cqlreplicator.util.WriteCapacityLimiter;
 import com.datastax.oss.driver.api.core.AllNodesFailedException;
 import com.datastax.oss.driver.api.core.ConsistencyLevel;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.*;
 import com.datastax.oss.driver.api.core.servererrors.*;
 import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
 import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
 import io.github.resilience4j.retry.RetryRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static com.amazon.aws.cqlreplicator.util.Utils.doubleQuoteResolver;
 
 public class TargetStorageOnKeyspaces
-    extends TargetStorage<Object, List<Row>, BatchStatementBuilder, SimpleStatement> {
+    extends TargetStorage<Object, List<Row>, BatchStatementBuilder, Statement<?>> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TargetStorageOnKeyspaces.class);
   private static final Pattern REGEX_PIPE = Pattern.compile("\\|");
+  private static final PreparedStatementRegistry.Shape WRITE_STATS_SHAPE =
+      PreparedStatementRegistry.Shape.of("UPDATE", "replicator", "stats", "rows");
+  private static final PreparedStatementRegistry.Shape READ_STATS_SHAPE =
+      PreparedStatementRegistry.Shape.of("SELECT", "replicator", "stats", "ops");
   private static CqlSession cqlSession;
-  private static PreparedStatement psWriteStats;
-  private static PreparedStatement psReadStats;
+  private static PreparedStatementRegistry statements;
+  private static PreparedStatementRegistry.Shape insertJsonShape;
+  private static String insertJsonStatement;
+  private static boolean replicateWithTimestamp;
   private static Retry retry;
+  // Retry of row writes, shorter than the default one if failed writes go to the dead-letter log
+  private static Retry writeRetry;
   private static Retry.EventPublisher publisher;
+  private static final ScheduledExecutorService retryScheduler =
+      Executors.newSingleThreadScheduledExecutor();
+  private static AdaptiveConcurrencyLimiter concurrencyLimiter;
+  private static AsyncRetryScheduler asyncRetries;
+  // Replaced or cleared by a reload of the write capacity
+  private static volatile WriteCapacityLimiter capacityLimiter;
+  private static String capacityLimiterName;
+  private static DeadLetterLog deadLetterLog;
+  private static DeadLetterReplayer deadLetterReplayer;
+  private static ExecutorService deadLetterExecutor;
   private final Properties config;
 
   public TargetStorageOnKeyspaces(Properties properties) {
     var connectionFactory = new ConnectionFactory(properties);
-    cqlSession = connectionFactory.buildCqlSession("KeyspacesConnector.conf");
-    psWriteStats =
-        cqlSession.prepare(
-            "update replicator.stats set rows=rows+:value where tile=:tile and keyspacename=:keyspacename and tablename=:tablename and ops=:ops");
-    psReadStats =
-        cqlSession.prepare(
-            "select tile, keyspacename, tablename, ops, rows from replicator.stats where ops=:ops and keyspacename=:keyspacename and tablename=:tablename allow filtering");
+    statements = PreparedStatementRegistry.connect(connectionFactory, "KeyspacesConnector.conf");
+    cqlSession = statements.getSession();
+    getWriteStatsStatement();
+    getReadStatsStatement();
+    // Prepared once per target table, each row is bound to it
+    replicateWithTimestamp = properties.getProperty("REPLICATE_WITH_TIMESTAMP").equals("true");
+    insertJsonShape =
+        PreparedStatementRegistry.Shape.of(
+            replicateWithTimestamp ? "INSERT_JSON_USING_TIMESTAMP" : "INSERT_JSON",
+            properties.getProperty("TARGET_KEYSPACE"),
+            properties.getProperty("TARGET_TABLE"));
+    insertJsonStatement =
+        String.format(
+            doubleQuoteResolver(
+                replicateWithTimestamp
+                    ? "INSERT INTO %s.%s JSON ? USING TIMESTAMP ?"
+                    : "INSERT INTO %s.%s JSON ?",
+                properties.getProperty("SOURCE_CQL_QUERY")),
+            properties.getProperty("TARGET_KEYSPACE"),
+            properties.getProperty("TARGET_TABLE"));
+    getInsertJsonStatement();
 
     var retryConfig =
         RetryConfig.custom()
@@ -75,11 +124,360 @@ public class TargetStorageOnKeyspaces
     publisher = retry.getEventPublisher();
     publisher.onError(event -> LOGGER.error("Operation was failed on event {}", event));
     publisher.onRetry(event -> LOGGER.warn("Operation was retried on event {}", event));
+    writeRetry = retry;
+    if (Boolean.parseBoolean(properties.getProperty("REPLICATE_DEAD_LETTER_QUEUE", "false"))) {
+      if (!replicateWithTimestamp) {
+        // A replayed write may overwrite a newer version of the row
+        throw new IllegalArgumentException(
+            "REPLICATE_DEAD_LETTER_QUEUE requires REPLICATE_WITH_TIMESTAMP=true");
+      }
+      // Writes give up after a few attempts and are replayed from the log in the background
+      writeRetry =
+          registry.retry(
+              "TargetKeyspacesWrites",
+              RetryConfig.from(retryConfig)
+                  .maxAttempts(
+                      Integer.parseInt(
+                          properties.getProperty(
+                              "REPLICATE_DEAD_LETTER_RETRY_MAXATTEMPTS", "3")))
+                  .build());
+      writeRetry
+          .getEventPublisher()
+          .onRetry(event -> LOGGER.warn("Operation was retried on event {}", event));
+      try {
+        deadLetterLog =
+            new DeadLetterLog(
+                Paths.get(
+                    String.format(
+                        "%s/dead_letter_%s",
+                        properties.getProperty("LOCAL_STORAGE_PATH"),
+                        properties.getProperty("TILE"))),
+                Long.parseLong(
+                    properties.getProperty("REPLICATE_DEAD_LETTER_SEGMENT_BYTES", "67108864")));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      var rateLimiter =
+          RateLimiter.of(
+              "DeadLetterReplay",
+              RateLimiterConfig.custom()
+                  .limitForPeriod(
+                      Integer.parseInt(
+                          properties.getProperty("REPLICATE_DEAD_LETTER_REPLAY_RATE", "100")))
+                  .limitRefreshPeriod(Duration.ofSeconds(1))
+                  .timeoutDuration(Duration.ofMinutes(10))
+                  .build());
+      deadLetterReplayer = new DeadLetterReplayer(deadLetterLog, rateLimiter, this::replay);
+      deadLetterReplayer.start(
+          Long.parseLong(
+              properties.getProperty("REPLICATE_DEAD_LETTER_REPLAY_PERIOD_MS", "5000")));
+      // Appends force the log to disk, which must not block the I/O threads of the driver
+      deadLetterExecutor =
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                var thread = new Thread(runnable, "DeadLetterLog");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    // The capacity of the table is shared evenly by the tiles unless a tile has its own capacity
+    capacityLimiterName =
+        String.format(
+            "%s.%s:%s",
+            properties.getProperty("TARGET_KEYSPACE"),
+            properties.getProperty("TARGET_TABLE"),
+            properties.getProperty("TILE"));
+    setWriteCapacity(WriteCapacityLimiter.getTileCapacity(properties));
+    if (Boolean.parseBoolean(properties.getProperty("REPLICATE_NON_BLOCKING_RETRIES", "false"))) {
+      asyncRetries =
+          new AsyncRetryScheduler(
+              retryScheduler,
+              writeRetry.getRetryConfig().getMaxAttempts(),
+              Long.parseLong(properties.getProperty("REPLICATE_RETRY_INITIAL_BACKOFF_MS", "25")),
+              1.1,
+              Long.parseLong(properties.getProperty("REPLICATE_RETRY_MAX_BACKOFF_MS", "10000")),
+              new AsyncRetryScheduler.RetryBudget(
+                  Double.parseDouble(properties.getProperty("REPLICATE_RETRY_BUDGET_RATIO", "0.2")),
+                  Double.parseDouble(
+                      properties.getProperty("REPLICATE_RETRY_BUDGET_MAX_RETRIES", "1000"))));
+    }
+    if (Boolean.parseBoolean(properties.getProperty("REPLICATE_ADAPTIVE_CONCURRENCY", "false"))) {
+      concurrencyLimiter =
+          new AdaptiveConcurrencyLimiter(
+              Integer.parseInt(
+                  properties.getProperty("REPLICATE_ADAPTIVE_CONCURRENCY_MIN_LIMIT", "4")),
+              Integer.parseInt(
+                  properties.getProperty("REPLICATE_ADAPTIVE_CONCURRENCY_MAX_LIMIT", "1024")),
+              Integer.parseInt(
+                  properties.getProperty("REPLICATE_ADAPTIVE_CONCURRENCY_INITIAL_LIMIT", "64")),
+              TimeUnit.MILLISECONDS.toNanos(
+                  Long.parseLong(
+                      properties.getProperty(
+                          "REPLICATE_ADAPTIVE_CONCURRENCY_P99_LATENCY_MS", "100"))),
+              Double.parseDouble(
+                  properties.getProperty("REPLICATE_ADAPTIVE_CONCURRENCY_BACKOFF_RATIO", "0.7")));
+    }
     this.config = properties;
   }
 
+  /** Throttling and timeouts of Amazon Keyspaces cut the concurrency of writes */
+  private static boolean isOverloaded(Throwable e) {
+    return e instanceof WriteTimeoutException
+        || e instanceof WriteFailureException
+        || e instanceof ServerError
+        || e instanceof UnavailableException;
+  }
+
+  /** Failed writes that may succeed later, invalid and unauthorized queries never do */
+  private static boolean isRetryable(Throwable e) {
+    return (e instanceof CoordinatorException && !(e instanceof QueryValidationException))
+        || e instanceof AllNodesFailedException;
+  }
+
+  /** Reports the latency or the error of each attempt to the concurrency limiter */
+  private static <T> Supplier<T> observe(Supplier<T> supplier) {
+    if (concurrencyLimiter == null) {
+      return supplier;
+    }
+    return () -> {
+      var start = System.nanoTime();
+      try {
+        var result = supplier.get();
+        concurrencyLimiter.onSample(System.nanoTime() - start, false);
+        return result;
+      } catch (RuntimeException e) {
+        concurrencyLimiter.onSample(System.nanoTime() - start, isOverloaded(e));
+        throw e;
+      }
+    };
+  }
+
+  private static <T> Supplier<CompletionStage<T>> observeAsync(
+      Supplier<CompletionStage<T>> supplier) {
+    if (concurrencyLimiter == null) {
+      return supplier;
+    }
+    return () -> {
+      var start = System.nanoTime();
+      return supplier
+          .get()
+          .whenComplete(
+              (result, e) ->
+                  concurrencyLimiter.onSample(
+                      System.nanoTime() - start,
+                      e != null
+                          && isOverloaded(e instanceof CompletionException ? e.getCause() : e)));
+    };
+  }
+
+  private static void acquireWritePermit() {
+    if (concurrencyLimiter == null) {
+      return;
+    }
+    try {
+      concurrencyLimiter.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void releaseWritePermit() {
+    if (concurrencyLimiter != null) {
+      concurrencyLimiter.release();
+    }
+  }
+
+  /** Returns the counters of non-blocking retries, or null if retries block the caller */
+  public String getRetryStats() {
+    return asyncRetries == null ? null : asyncRetries.toString();
+  }
+
+  /** Returns the write capacity units of a row statement, estimated by the size of its values */
+  private static int getCapacityUnits(Statement<?> statement) {
+    long size = 0;
+    if (statement instanceof BoundStatement) {
+      var boundStatement = (BoundStatement) statement;
+      for (int i = 0; i < boundStatement.size(); i++) {
+        var value = boundStatement.getBytesUnsafe(i);
+        if (value != null && boundStatement.isSet(i)) {
+          size += value.remaining();
+        }
+      }
+    } else if (statement instanceof SimpleStatement) {
+      size = ((SimpleStatement) statement).getQuery().length();
+    }
+    return WriteCapacityLimiter.getCapacityUnits(size);
+  }
+
+  /**
+   * Applies the write capacity units per second of the tile, 0 stops limiting writes. A changed
+   * capacity takes effect from the next second on.
+   */
+  public void setWriteCapacity(int unitsPerSecond) {
+    var limiter = capacityLimiter;
+    if (unitsPerSecond <= 0) {
+      if (limiter != null) {
+        capacityLimiter = null;
+        LOGGER.info("Writes are not rate limited anymore");
+      }
+    } else if (limiter == null) {
+      capacityLimiter = new WriteCapacityLimiter(capacityLimiterName, unitsPerSecond);
+      LOGGER.info("Writes are limited to {} WCU per second", unitsPerSecond);
+    } else if (limiter.getUnitsPerSecond() != unitsPerSecond) {
+      limiter.setUnitsPerSecond(unitsPerSecond);
+      LOGGER.info("Writes are limited to {} WCU per second", unitsPerSecond);
+    }
+  }
+
+  /** Waits for the write capacity of the rows of the statement */
+  private static void acquireWriteCapacity(Statement<?> statement) {
+    if (capacityLimiter == null) {
+      return;
+    }
+    var units = 0;
+    if (statement instanceof BatchStatement) {
+      for (var batchableStatement : (BatchStatement) statement) {
+        units += getCapacityUnits(batchableStatement);
+      }
+    } else {
+      units = getCapacityUnits(statement);
+    }
+    acquireWriteCapacity(units);
+  }
+
+  private static void acquireWriteCapacity(int units) {
+    var limiter = capacityLimiter;
+    if (limiter != null) {
+      limiter.acquire(Math.max(1, units));
+    }
+  }
+
+  /** Returns the write capacity units consumed so far, or -1 if writes are not rate limited */
+  public long getConsumedCapacityUnits() {
+    var limiter = capacityLimiter;
+    return limiter == null ? -1 : limiter.getConsumedUnits();
+  }
+
+  /** Returns the current limit of writes in flight, or -1 if the concurrency is not adaptive */
+  public int getConcurrencyLimit() {
+    return concurrencyLimiter == null ? -1 : concurrencyLimiter.getLimit();
+  }
+
+  /** Returns the failed write as an entry of the dead-letter log, or null if it can't be logged */
+  private static DeadLetterLog.Entry toDeadLetter(Statement<?> statement) {
+    var entry = new DeadLetterLog.Entry();
+    if (statement instanceof BoundStatement) {
+      addDeadLetter(entry, (BoundStatement) statement);
+      return entry;
+    }
+    if (statement instanceof BatchStatement) {
+      for (var batchableStatement : (BatchStatement) statement) {
+        if (!(batchableStatement instanceof BoundStatement)) {
+          return null;
+        }
+        addDeadLetter(entry, (BoundStatement) batchableStatement);
+      }
+      return entry;
+    }
+    return null;
+  }
+
+  private static void addDeadLetter(DeadLetterLog.Entry entry, BoundStatement statement) {
+    List<ByteBuffer> values = new ArrayList<>(statement.size());
+    for (int i = 0; i < statement.size(); i++) {
+      values.add(statement.isSet(i) ? statement.getBytesUnsafe(i) : DeadLetterLog.UNSET);
+    }
+    entry.add(statement.getPreparedStatement().getQuery(), values);
+  }
+
+  /** Appends a failed write to the dead-letter log, returns false if it isn't logged */
+  private static boolean deadLetter(Statement<?> statement, Throwable e) {
+    if (deadLetterLog == null || !isRetryable(e)) {
+      return false;
+    }
+    var entry = toDeadLetter(statement);
+    if (entry == null) {
+      return false;
+    }
+    try {
+      deadLetterLog.append(entry);
+    } catch (IOException ex) {
+      LOGGER.error("Unable to append to the dead-letter log", ex);
+      return false;
+    }
+    LOGGER.warn("Write failed with {}, it is replayed from the dead-letter log", e.toString());
+    return true;
+  }
+
+  /** Writes an entry of the dead-letter log, returns false if it failed again */
+  private boolean replay(DeadLetterLog.Entry entry) {
+    List<BatchableStatement<?>> replayedStatements = new ArrayList<>(entry.size());
+    for (int i = 0; i < entry.size(); i++) {
+      var query = entry.getQuery(i);
+      var boundStatementBuilder =
+          statements
+              .prepare(
+                  PreparedStatementRegistry.Shape.of(
+                      "DEAD_LETTER",
+                      config.getProperty("TARGET_KEYSPACE"),
+                      config.getProperty("TARGET_TABLE"),
+                      query),
+                  () -> query)
+              .boundStatementBuilder();
+      var values = entry.getValues(i);
+      for (int v = 0; v < values.size(); v++) {
+        if (values.get(v) != DeadLetterLog.UNSET) {
+          boundStatementBuilder = boundStatementBuilder.setBytesUnsafe(v, values.get(v));
+        }
+      }
+      replayedStatements.add(
+          boundStatementBuilder
+              .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+              .setIdempotence(true)
+              .build());
+    }
+    Statement<?> statement =
+        replayedStatements.size() == 1
+            ? replayedStatements.get(0)
+            : BatchStatement.newInstance(DefaultBatchType.UNLOGGED, replayedStatements)
+                .setIdempotent(true)
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+    Supplier<Row> supplier = observe(() -> cqlSession.execute(statement).one());
+    acquireWriteCapacity(statement);
+    acquireWritePermit();
+    try {
+      Retry.decorateSupplier(writeRetry, supplier).get();
+      return true;
+    } catch (RuntimeException e) {
+      LOGGER.debug("Replay of {} failed", getQuery(statement), e);
+      return false;
+    } finally {
+      releaseWritePermit();
+    }
+  }
+
   @Override
   public void tearDown() {
+    if (deadLetterReplayer != null) {
+      deadLetterReplayer.shutdown();
+      // Failed writes still waiting for the log are appended before it's closed
+      deadLetterExecutor.shutdown();
+      try {
+        if (!deadLetterExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+          LOGGER.warn("Failed writes were not appended to the dead-letter log before shutdown");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      try {
+        deadLetterLog.close();
+      } catch (IOException e) {
+        LOGGER.error("Unable to close the dead-letter log", e);
+      }
+    }
+    retryScheduler.shutdown();
     cqlSession.close();
   }
 
@@ -94,28 +492,107 @@ public class TargetStorageOnKeyspaces
     return Retry.decorateSupplier(retry, supplier).get();
   }
 
-  public boolean execute(SimpleStatement simpleStatement) {
-    Supplier<Row> supplier = () -> cqlSession.execute(simpleStatement).one();
+  public boolean execute(Statement<?> statement) {
+    if (asyncRetries != null) {
+      // The caller waits for the result, but no thread sleeps through the backoff
+      return writeAsync(statement).toCompletableFuture().join();
+    }
+    Supplier<Row> supplier = observe(() -> cqlSession.execute(statement).one());
     try {
-      Retry.decorateSupplier(retry, supplier).get();
+      acquireWriteCapacity(statement);
+      // The permit is held across retries, so a throttled write doesn't make room for another
+      acquireWritePermit();
+      try {
+        Retry.decorateSupplier(writeRetry, supplier).get();
+      } finally {
+        releaseWritePermit();
+      }
       return true;
     }
       catch (RuntimeException e) {
-      LOGGER.error("Exception occured executing this statement: " + simpleStatement.getQuery(),e);
+      if (deadLetter(statement, e)) {
+        return true;
+      }
+      LOGGER.error("Exception occured executing this statement: " + getQuery(statement), e);
       return false;
       }
   }
 
+  private static String getQuery(Statement<?> statement) {
+    if (statement instanceof BoundStatement) {
+      return ((BoundStatement) statement).getPreparedStatement().getQuery();
+    }
+    if (statement instanceof SimpleStatement) {
+      return ((SimpleStatement) statement).getQuery();
+    }
+    return statement.toString();
+  }
+
   @Override
-  public boolean write(SimpleStatement statement) {
+  public boolean write(Statement<?> statement) {
     return execute(statement);
   }
 
+  /** Binds a JSON row and its source write time to the prepared INSERT JSON statement */
+  public BoundStatement bindInsertJson(String payload, long ts) {
+    if (replicateWithTimestamp) {
+      return getInsertJsonStatement().bind(payload, ts);
+    }
+    return getInsertJsonStatement().bind(payload);
+  }
+
+  /**
+   * Writes the statement without blocking the calling thread, retries are scheduled on a shared
+   * scheduler instead of sleeping in the caller
+   */
+  public CompletionStage<Boolean> writeAsync(Statement<?> statement) {
+    Supplier<CompletionStage<AsyncResultSet>> supplier =
+        observeAsync(() -> cqlSession.executeAsync(statement));
+    acquireWriteCapacity(statement);
+    acquireWritePermit();
+    CompletionStage<AsyncResultSet> stage;
+    try {
+      stage =
+          asyncRetries == null
+              ? Retry.decorateCompletionStage(writeRetry, retryScheduler, supplier).get()
+              : asyncRetries.submit(supplier, TargetStorageOnKeyspaces::isRetryable);
+    } catch (RuntimeException e) {
+      // The handler below releases the permit of a write that failed to start
+      stage = CompletableFuture.failedFuture(e);
+    }
+    return stage
+        .handle(
+            (resultSet, e) -> {
+              releaseWritePermit();
+              if (e == null) {
+                return CompletableFuture.completedFuture(true);
+              }
+              var cause = e instanceof CompletionException ? e.getCause() : e;
+              if (deadLetterLog == null || !isRetryable(cause)) {
+                LOGGER.error(
+                    "Exception occured executing this statement: {}", getQuery(statement), e);
+                return CompletableFuture.completedFuture(false);
+              }
+              // The stage completes on a driver or retry thread, the log is appended elsewhere
+              return CompletableFuture.supplyAsync(
+                  () -> {
+                    if (deadLetter(statement, cause)) {
+                      return true;
+                    }
+                    LOGGER.error(
+                        "Exception occured executing this statement: {}", getQuery(statement), e);
+                    return false;
+                  },
+                  deadLetterExecutor);
+            })
+        .thenCompose(Function.identity());
+  }
+
   @Override
   public void writeStats(Object o) {
     var statsMetadata = (StatsMetaData) o;
     var boundStatementBuilder =
-        psWriteStats
+        getWriteStatsStatement()
             .boundStatementBuilder()
             .setInt("tile", statsMetadata.getTile())
             .setString("keyspacename", statsMetadata.getKeyspaceName())
@@ -135,7 +612,7 @@ public class TargetStorageOnKeyspaces
   public List<Row> readStats(Object o) {
     var queryStats = (QueryStats) o;
     var boundStatementBuilder =
-        psReadStats
+        getReadStatsStatement()
             .boundStatementBuilder()
             .setString("ops", queryStats.getOps())
             .setString("keyspacename", queryStats.getKeyspaceName())
@@ -152,29 +629,15 @@ public class TargetStorageOnKeyspaces
       String[] partitionKeyNames,
       String[] clusteringKeyNames,
       Map<String, LinkedHashMap<String, String>> metadata) {
-    var batchableStatements = BatchStatement.builder(DefaultBatchType.UNLOGGED);
-    List<String> whereClause = new ArrayList<>();
-
     var pkValues = REGEX_PIPE.split(primaryKey.getPartitionKeys());
     var ckValues = REGEX_PIPE.split(primaryKey.getClusteringColumns());
 
-    for (var col : partitionKeyNames) {
-      whereClause.add(String.format("%s=:%s", col, col));
-    }
-    for (var col : clusteringKeyNames) {
-      whereClause.add(String.format("%s=:%s", col, col));
-    }
-
-    var finalWhereClause = String.join(" AND ", whereClause);
-
-    String deleteStatement =
-        String.format(
-            doubleQuoteResolver("DELETE FROM %s.%s WHERE %s", config.getProperty("SOURCE_CQL_QUERY")),
+    PreparedStatement psDeleteStatement =
+        getDeleteStatement(
             config.getProperty("TARGET_KEYSPACE"),
             config.getProperty("TARGET_TABLE"),
-            finalWhereClause);
-
-    PreparedStatement psDeleteStatement = cqlSession.prepare(deleteStatement);
+            partitionKeyNames,
+            clusteringKeyNames);
     BoundStatementBuilder bsDeleteStatement = psDeleteStatement.boundStatementBuilder();
 
     int i = 0;
@@ -191,14 +654,56 @@ public class TargetStorageOnKeyspaces
       k++;
     }
 
+    return executeDelete(bsDeleteStatement, 1);
+  }
+
+  /**
+   * Deletes all rows of a partition with a single partition tombstone
+   *
+   * @param rows rows of the partition in the ledger, each of them takes a write capacity unit. They
+   *     are acquired in chunks of the capacity of a second, so a wide partition doesn't time out
+   */
+  public boolean deletePartition(
+      String partitionKey,
+      int rows,
+      String[] partitionKeyNames,
+      Map<String, LinkedHashMap<String, String>> metadata) {
+    var pkValues = REGEX_PIPE.split(partitionKey);
+
+    PreparedStatement psDeleteStatement =
+        getDeleteStatement(
+            config.getProperty("TARGET_KEYSPACE"),
+            config.getProperty("TARGET_TABLE"),
+            partitionKeyNames);
+    BoundStatementBuilder bsDeleteStatement = psDeleteStatement.boundStatementBuilder();
+
+    int i = 0;
+    for (var cl : partitionKeyNames) {
+      var type = metadata.get("partition_key").get(cl);
+      bsDeleteStatement = Utils.aggregateBuilder(type, cl, pkValues[i], bsDeleteStatement);
+      i++;
+    }
+
+    return executeDelete(bsDeleteStatement, rows);
+  }
+
+  private boolean executeDelete(BoundStatementBuilder bsDeleteStatement, int capacityUnits) {
+    var batchableStatements = BatchStatement.builder(DefaultBatchType.UNLOGGED);
     batchableStatements.addStatement(
         bsDeleteStatement
             .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
             .setIdempotence(true)
             .build());
 
-    Supplier<Boolean> supplier = () -> cqlSession.execute(batchableStatements.build()).wasApplied();
-    return Retry.decorateSupplier(retry, supplier).get();
+    Supplier<Boolean> supplier =
+        observe(() -> cqlSession.execute(batchableStatements.build()).wasApplied());
+    acquireWriteCapacity(capacityUnits);
+    acquireWritePermit();
+    try {
+      return Retry.decorateSupplier(retry, supplier).get();
+    } finally {
+      releaseWritePermit();
+    }
   }
 
   @Override
@@ -207,21 +712,11 @@ public class TargetStorageOnKeyspaces
 
     var deleteTargetOperation = (DeleteTargetOperation) o;
     // Deleting the row in the target table
-    List<String> whereClause = new ArrayList<>();
-    for (String col : deleteTargetOperation.getNames()) {
-      whereClause.add(String.format("%s=:%s", col, col));
-    }
-    String finalWhereClause = String.join(" AND ", whereClause);
-
-    // Build the DELETE statement
-    String deleteStatement =
-        String.format(
-            doubleQuoteResolver("DELETE FROM %s.%s WHERE %s", config.getProperty("SOURCE_CQL_QUERY")),
+    PreparedStatement psDeleteTargetData =
+        getDeleteStatement(
             deleteTargetOperation.getKeyspaceName(),
             deleteTargetOperation.getTableName(),
-            finalWhereClause);
-
-    PreparedStatement psDeleteTargetData = cqlSession.prepare(deleteStatement);
+            deleteTargetOperation.getNames());
     BoundStatementBuilder bsDeleteTargetData = psDeleteTargetData.boundStatementBuilder();
 
     int i = 0;
@@ -239,6 +734,58 @@ public class TargetStorageOnKeyspaces
             .setIdempotence(true)
             .build());
 
+    acquireWriteCapacity(1);
     execute(batchableStatements);
   }
+
+  private static PreparedStatement getWriteStatsStatement() {
+    return statements.prepare(
+        WRITE_STATS_SHAPE,
+        () ->
+            "update replicator.stats set rows=rows+:value where tile=:tile and keyspacename=:keyspacename and tablename=:tablename and ops=:ops");
+  }
+
+  private static PreparedStatement getReadStatsStatement() {
+    return statements.prepare(
+        READ_STATS_SHAPE,
+        () ->
+            "select tile, keyspacename, tablename, ops, rows from replicator.stats where ops=:ops and keyspacename=:keyspacename and tablename=:tablename allow filtering");
+  }
+
+  private static PreparedStatement getInsertJsonStatement() {
+    return statements.prepare(insertJsonShape, () -> insertJsonStatement);
+  }
+
+  /** Returns the DELETE of the table restricted by the columns, in the order of the arrays */
+  private PreparedStatement getDeleteStatement(
+      String keyspaceName, String tableName, String[]... columns) {
+    return statements.prepare(
+        PreparedStatementRegistry.Shape.of("DELETE", keyspaceName, tableName, (Object[]) columns),
+        () ->
+            getDeleteQuery(
+                keyspaceName, tableName, config.getProperty("SOURCE_CQL_QUERY"), columns));
+  }
+
+  /**
+   * Returns the DELETE restricted by the columns, the partition key columns delete a partition and
+   * the primary key columns a row
+   */
+  static String getDeleteQuery(
+      String keyspaceName, String tableName, String sourceQuery, String[]... columns) {
+    List<String> whereClause = new ArrayList<>();
+    for (var names : columns) {
+      for (var col : names) {
+        whereClause.add(String.format("%s=:%s", col, col));
+      }
+    }
+    return String.format(
+        doubleQuoteResolver("DELETE FROM %s.%s WHERE %s", sourceQuery),
+        keyspaceName,
+        tableName,
+        String.join(" AND ", whereClause));
+  }
+
+  public PreparedStatementRegistry getStatementRegistry() {
+    return statements;
+  }
 }
@@ -27,6 +27,38 @@ public abstract class AbstractTask {
         "Elapsed time is {} ms for task {}", Duration.ofNanos(elapsedTime).toMillis(), taskName);
   }
 
+  /**
+   * Runs passes of the task until the thread is interrupted. A pass starts when the previous one
+   * has been scheduled, but not before the minimum interval, so an idle table isn't scanned in a
+   * busy loop. A failed pass is logged and retried by the next one.
+   */
+  public final void performContinuously(
+      CacheStorage pkCache, Utils.CassandraTaskTypes taskName, Duration minPassInterval)
+      throws InterruptedException {
+    while (!Thread.currentThread().isInterrupted()) {
+      var startTime = System.nanoTime();
+      try {
+        doPerformPass(pkCache, taskName);
+      } catch (IOException | ExecutionException | TimeoutException | RuntimeException e) {
+        LOGGER.error("Pass of task {} failed", taskName, e);
+      }
+      var elapsedTime = Duration.ofNanos(System.nanoTime() - startTime);
+      LOGGER.info("Elapsed time is {} ms for a pass of task {}", elapsedTime.toMillis(), taskName);
+      var remaining = minPassInterval.minus(elapsedTime);
+      if (!remaining.isNegative()) {
+        Thread.sleep(remaining.toMillis());
+      }
+    }
+  }
+
+  /** Runs one pass of the continuous mode, a task without a streaming pass runs a full cycle */
+  protected void doPerformPass(CacheStorage pkCache, Utils.CassandraTaskTypes taskName)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    doPerformTask(pkCache, taskName);
+  }
+
+  /** Releases the resources of the task when the process is stopped */
+  public void tearDown() {}
 
   protected abstract void doPerformTask(CacheStorage pkCache, Utils.CassandraTaskTypes taskName)
       throws IOException, InterruptedException, ExecutionException, TimeoutException;
@@ -2,18 +2,24 @@
 // SPDX-License-Identifier: Apache-2.0
 package com.amazon.aws.cqlreplicator.task.replication;
 
+import com.amazon.aws.cqlreplicator.config.ReplicationSettings;
 import com.amazon.aws.cqlreplicator.models.*;
 import com.amazon.aws.cqlreplicator.storage.*;
 import com.amazon.aws.cqlreplicator.task.AbstractTask;
+import com.amazon.aws.cqlreplicator.util.BoundedTaskScheduler;
+import com.amazon.aws.cqlreplicator.util.ClusteringKeyCodec;
 import com.amazon.aws.cqlreplicator.util.CustomResultSetSerializer;
+import com.amazon.aws.cqlreplicator.util.InFlightWindow;
+import com.amazon.aws.cqlreplicator.util.RowDiff;
 import com.amazon.aws.cqlreplicator.util.StatsCounter;
+import com.amazon.aws.cqlreplicator.util.TokenRangePlanner;
 import com.amazon.aws.cqlreplicator.util.Utils;
 import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.Row;
-import com.datastax.oss.driver.api.core.cql.SimpleStatement;
-import com.datastax.oss.driver.shaded.guava.common.collect.MapDifference;
-import com.datastax.oss.driver.shaded.guava.common.collect.Maps;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -28,7 +34,9 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -49,25 +57,95 @@ public class CassandraReplicationTask extends AbstractTask {
   private static Map<String, LinkedHashMap<String, String>> cassandraSchemaMetadata;
   private static StatsCounter statsCounter;
   private static Properties config = new Properties();
-  private static int CORE_POOL_SIZE;
-  private static int MAX_CORE_POOL_SIZE;
-  private static int CORE_POOL_TIMEOUT;
+  private static boolean useVirtualThreads;
   private static CloudWatchClient cloudWatchClient;
   private static boolean useCustomJsonSerializer = false;
+  private static boolean asyncWrites = false;
+  private static InFlightWindow inFlightWindow;
+  private static ExecutorService ledgerCommitExecutor;
+  private static boolean widePartitionSlicing = false;
+  private static ExecutorService sliceExecutor;
+  private static boolean probeChanges = false;
+  private static ClusteringKeyCodec clusteringKeyCodec;
+  // Partitions of the cycle whose deleted rows were found by the merge join
+  private static final Set<String> joinedPartitions = ConcurrentHashMap.newKeySet();
+  // Scheduled partitions that haven't completed yet
+  private static final Set<String> inFlightPartitions = ConcurrentHashMap.newKeySet();
+  private static StreamingPass streamingPass;
+  // Passes of the continuous mode reconcile deletes and flush stats on slower schedules
+  private static long deleteIntervalNanos;
+  private static long statsIntervalNanos;
+  private static CdcChangeSource cdcChangeSource;
+  private static ScheduledExecutorService changeFeed;
+  private static BoundedTaskScheduler changeFeedScheduler;
+  // Changed partitions that were replicating from a scan when they were polled
+  private static final ChangeFeedBacklog changeFeedBacklog = new ChangeFeedBacklog();
   private static final ObjectMapper mapper = new ObjectMapper();
   private static final SimpleModule module = new SimpleModule();
 
   public CassandraReplicationTask(final Properties cfg) throws IOException {
     config = cfg;
-    CORE_POOL_SIZE = Integer.parseInt(cfg.getProperty("REPLICATE_WITH_CORE_POOL_SIZE"));
-    MAX_CORE_POOL_SIZE = Integer.parseInt(cfg.getProperty("REPLICATE_WITH_MAX_CORE_POOL_SIZE"));
-    CORE_POOL_TIMEOUT = Integer.parseInt(cfg.getProperty("REPLICATE_WITH_CORE_POOL_TIMEOUT"));
+    useVirtualThreads =
+        Boolean.parseBoolean(cfg.getProperty("REPLICATE_WITH_VIRTUAL_THREADS", "false"));
     sourceStorageOnCassandra = new SourceStorageOnCassandra(config);
     cassandraSchemaMetadata = sourceStorageOnCassandra.getMetaData();
     statsCounter = new StatsCounter();
     targetStorageOnKeyspaces = new TargetStorageOnKeyspaces(config);
     ledgerStorageOnLevelDB = new LedgerStorageOnLevelDB(config);
-    useCustomJsonSerializer = !cfg.getProperty("SOURCE_CQL_QUERY").split(" ")[1].toLowerCase().equals("json");
+    // Non-blocking retries only free the replication threads if they don't wait for each write
+    asyncWrites =
+        Boolean.parseBoolean(cfg.getProperty("REPLICATE_ASYNC_WRITES", "false"))
+            || Boolean.parseBoolean(cfg.getProperty("REPLICATE_NON_BLOCKING_RETRIES", "false"));
+    if (asyncWrites) {
+      inFlightWindow =
+          new InFlightWindow(
+              Integer.parseInt(cfg.getProperty("REPLICATE_MAX_IN_FLIGHT_WRITES", "3000")),
+              Integer.parseInt(
+                  cfg.getProperty("REPLICATE_MAX_IN_FLIGHT_WRITES_PER_PARTITION", "64")));
+      // Ledger updates are kept off the driver's I/O threads
+      ledgerCommitExecutor =
+          Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+    widePartitionSlicing =
+        Boolean.parseBoolean(cfg.getProperty("REPLICATE_WIDE_PARTITIONS", "false"));
+    if (widePartitionSlicing) {
+      sliceExecutor =
+          Executors.newFixedThreadPool(
+              Integer.parseInt(cfg.getProperty("REPLICATE_WIDE_PARTITION_PARALLELISM", "8")));
+    }
+    probeChanges = Boolean.parseBoolean(cfg.getProperty("REPLICATE_WITH_PROBE", "false"));
+    deleteIntervalNanos =
+        TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(
+                cfg.getProperty("REPLICATE_CONTINUOUSLY_DELETE_INTERVAL_MS", "600000")));
+    statsIntervalNanos =
+        TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(cfg.getProperty("REPLICATE_CONTINUOUSLY_STATS_INTERVAL_MS", "60000")));
+    if (Boolean.parseBoolean(cfg.getProperty("REPLICATE_WITH_MERGE_JOIN", "false"))) {
+      clusteringKeyCodec =
+          ClusteringKeyCodec.create(
+              cassandraSchemaMetadata.get("clustering"),
+              cassandraSchemaMetadata.get("clustering_order"));
+      if (clusteringKeyCodec == null) {
+        LOGGER.warn("The clustering key can't be ordered in the ledger, the merge join is disabled");
+      } else {
+        ledgerStorageOnLevelDB.setClusteringKeyCodec(clusteringKeyCodec);
+      }
+    }
+    if (Boolean.parseBoolean(cfg.getProperty("REPLICATE_FROM_CDC", "false"))) {
+      var settings = ReplicationSettings.get();
+      cdcChangeSource =
+          CdcChangeSource.create(
+              cfg,
+              sourceStorageOnCassandra.getTableMetadata(),
+              TokenRangePlanner.getRangesByTiles(
+                      cfg,
+                      settings.getTiles(),
+                      sourceStorageOnCassandra.getTokenRanges(),
+                      sourceStorageOnCassandra::getSizeEstimates)
+                  .get(settings.getTile()));
+    }
+    useCustomJsonSerializer = !SourceStorageOnCassandra.isJsonQuery(cfg.getProperty("SOURCE_CQL_QUERY"));
     if (useCustomJsonSerializer) {
       module.addSerializer(Row.class, new CustomResultSetSerializer());
       mapper.registerModule(module);
@@ -85,96 +163,211 @@ public class CassandraReplicationTask extends AbstractTask {
       }
   }
 
-  protected static String transformer(final String input, final Properties config) {
-    if (config.getProperty("TRANSFORM_INBOUND_REQUEST").equals("true")) {
+  protected static String transformer(final String input, final ReplicationSettings settings) {
+    if (settings.isTransformInboundRequest()) {
       var ionEngine = new IonEngine();
-      var res = ionEngine.query(config.getProperty("TRANSFORM_SQL"), input);
+      var res = ionEngine.query(settings.getTransformSql(), input);
       return res.substring(1, res.length() - 1);
     }
     return input;
   }
 
-  private static String preparePayload(final Payload jsonPayload) {
-    var ts = jsonPayload.getTimestamp();
-    var query = "";
-    var payload = transformer(jsonPayload.getPayload(), config);
+  private static BoundStatement preparePayload(
+      final Payload jsonPayload, final ReplicationSettings settings) {
+    var payload = transformer(jsonPayload.getPayload(), settings);
 
     LOGGER.debug("PAYLOAD: {}", payload);
-    // Prepare the JSON CQL statement with "USING TIMESTAMP" from the source
-    if (config.getProperty("REPLICATE_WITH_TIMESTAMP").equals("true")) {
-      query =
-          String.format(
-              doubleQuoteResolver("INSERT INTO %s.%s JSON '%s' USING TIMESTAMP %s", config.getProperty("SOURCE_CQL_QUERY")),
-              config.getProperty("TARGET_KEYSPACE"),
-              config.getProperty("TARGET_TABLE"),
-              payload,
-              ts);
-    } else {
-      query =
-          String.format(
-              doubleQuoteResolver("INSERT INTO %s.%s JSON '%s'", config.getProperty("SOURCE_CQL_QUERY")),
-              config.getProperty("TARGET_KEYSPACE"), config.getProperty("TARGET_TABLE"), payload);
-    }
-    return query;
+    // Bind the JSON row to the prepared INSERT, "USING TIMESTAMP" is taken from the source
+    return targetStorageOnKeyspaces.bindInsertJson(payload, jsonPayload.getTimestamp());
   }
 
-  private void delete(
+  private static void delete(
       final PrimaryKey primaryKey,
       final String[] pks,
       final String[] cls,
-      CacheStorage<String, String> pkCache)
+      CacheStorage<String, ?> pkCache,
+      final ReplicationSettings settings)
       throws IOException, InterruptedException, ExecutionException, TimeoutException, ArrayIndexOutOfBoundsException {
     if (!sourceStorageOnCassandra.findPrimaryKey(primaryKey, pks, cls)) {
-      var rowIsDeleted =
-          targetStorageOnKeyspaces.delete(primaryKey, pks, cls, cassandraSchemaMetadata);
-      if (rowIsDeleted) {
-        ledgerStorageOnLevelDB.deleteRowMetadata(
-            new LedgerMetaData(
-                primaryKey.getPartitionKeys(),
-                primaryKey.getClusteringColumns(),
-                // TODO: Remove overhead params
-                config.getProperty("TARGET_KEYSPACE"),
-                config.getProperty("TARGET_TABLE"),
-                Integer.parseInt(config.getProperty("TILE")),
-                0,
-                0));
-        pkCache.remove(
-            Integer.parseInt(config.getProperty("TILE")),
-            "rd",
-            String.format(
-                "%s|%s", primaryKey.getPartitionKeys(), primaryKey.getClusteringColumns()));
-        statsCounter.incrementStat("DELETE");
-      }
+      deleteMissingRow(primaryKey, pks, cls, pkCache, settings);
+    }
+  }
+
+  /** Deletes a row that is missing from the source from the target and the ledger */
+  private static void deleteMissingRow(
+      final PrimaryKey primaryKey,
+      final String[] pks,
+      final String[] cls,
+      CacheStorage<String, ?> pkCache,
+      final ReplicationSettings settings)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    var rowIsDeleted =
+        targetStorageOnKeyspaces.delete(primaryKey, pks, cls, cassandraSchemaMetadata);
+    if (rowIsDeleted) {
+      ledgerStorageOnLevelDB.deleteRowMetadata(
+          new LedgerMetaData(
+              primaryKey.getPartitionKeys(),
+              primaryKey.getClusteringColumns(),
+              // TODO: Remove overhead params
+              settings.getTargetKeyspace(),
+              settings.getTargetTable(),
+              settings.getTile(),
+              0,
+              0));
+      pkCache.remove(
+          settings.getTile(),
+          "rd",
+          String.format(
+              "%s|%s", primaryKey.getPartitionKeys(), primaryKey.getClusteringColumns()));
+      statsCounter.incrementStat("DELETE");
     }
   }
 
   private void replicateDeletedCassandraRow(
-      final String[] pks, final String[] cls, CacheStorage<String, String> pkCache) {
+      final String[] pks,
+      final String[] cls,
+      CacheStorage<String, String> pkCache,
+      final ReplicationSettings settings) {
 
     var ledger = ledgerStorageOnLevelDB.readPaginatedPrimaryKeys();
     ledger.forEachRemaining(
-        primaryKeys ->
-            primaryKeys.parallelStream()
-                .forEach(
-                    pk -> {
-                      try {
-                        delete(pk, pks, cls, pkCache);
-                      } catch (IOException
-                          | ArrayIndexOutOfBoundsException
-                          | InterruptedException
-                          | ExecutionException
-                          | TimeoutException e) {
-                        if (e instanceof ArrayIndexOutOfBoundsException) {
-                          LOGGER.error("Perhaps one of the columns in your primary key is empty! pks:{}, cls:{}, pk:{}", Arrays.toString(pks), Arrays.toString(cls), pk);
-                        }
-                        throw new RuntimeException(e);
+        primaryKeys -> {
+          // Pages of the ledger hold whole partitions, each partition is checked with one query
+          Map<String, List<String>> clusteringKeysByPartition = new LinkedHashMap<>();
+          for (var pk : primaryKeys) {
+            // The merge join already deleted the missing rows of these partitions
+            if (!joinedPartitions.contains(pk.getPartitionKeys())) {
+              clusteringKeysByPartition
+                  .computeIfAbsent(pk.getPartitionKeys(), k -> new ArrayList<>())
+                  .add(pk.getClusteringColumns());
+            }
+          }
+          clusteringKeysByPartition.entrySet().parallelStream()
+              .forEach(
+                  partition -> {
+                    try {
+                      deleteMissingRows(
+                          partition.getKey(), partition.getValue(), pks, cls, pkCache, settings);
+                    } catch (IOException
+                        | ArrayIndexOutOfBoundsException
+                        | InterruptedException
+                        | ExecutionException
+                        | TimeoutException e) {
+                      if (e instanceof ArrayIndexOutOfBoundsException) {
+                        LOGGER.error("Perhaps one of the columns in your primary key is empty! pks:{}, cls:{}, pk:{}", Arrays.toString(pks), Arrays.toString(cls), partition.getKey());
                       }
-                    }));
+                      throw new RuntimeException(e);
+                    }
+                  });
+        });
   }
 
-  private static void persistMetrics(StatsMetaData statsMetadata){
+  /**
+   * Reads the clustering keys of a source partition with one query and deletes the rows of the
+   * ledger that are missing from it
+   */
+  private static void deleteMissingRows(
+      final String partitionKey,
+      final List<String> ledgerClusteringKeys,
+      final String[] pks,
+      final String[] cls,
+      CacheStorage<String, ?> pkCache,
+      final ReplicationSettings settings)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    var sourceClusteringKeys = readSourceClusteringKeys(partitionKey, pks, cls, settings);
+    if (isMissingPartition(sourceClusteringKeys, cls)) {
+      deleteMissingPartition(partitionKey, ledgerClusteringKeys.size(), pks, pkCache, settings);
+      return;
+    }
+    for (var clusteringKey : getMissingRows(ledgerClusteringKeys, sourceClusteringKeys)) {
+      deleteMissingRow(new PrimaryKey(partitionKey, clusteringKey), pks, cls, pkCache, settings);
+    }
+  }
+
+  /**
+   * Returns true if a partition with clustering columns is gone from the source, it's removed with
+   * one partition tombstone
+   */
+  static boolean isMissingPartition(Set<String> sourceClusteringKeys, String[] cls) {
+    return sourceClusteringKeys.isEmpty() && cls.length > 0;
+  }
+
+  /** Returns the clustering keys of the ledger that are missing from the source partition */
+  static List<String> getMissingRows(
+      List<String> ledgerClusteringKeys, Set<String> sourceClusteringKeys) {
+    List<String> missingRows = new ArrayList<>();
+    for (var clusteringKey : ledgerClusteringKeys) {
+      if (!sourceClusteringKeys.contains(clusteringKey)) {
+        missingRows.add(clusteringKey);
+      }
+    }
+    return missingRows;
+  }
+
+  /** Deletes a partition that is missing from the source from the target and the ledger */
+  private static void deleteMissingPartition(
+      final String partitionKey,
+      final int rows,
+      final String[] pks,
+      CacheStorage<String, ?> pkCache,
+      final ReplicationSettings settings)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    if (targetStorageOnKeyspaces.deletePartition(partitionKey, rows, pks, cassandraSchemaMetadata)) {
+      var clusteringKeys = ledgerStorageOnLevelDB.deletePartitionRows(partitionKey);
+      List<String> cacheKeys = new ArrayList<>(clusteringKeys.size());
+      for (var clusteringKey : clusteringKeys) {
+        cacheKeys.add(String.format("%s|%s", partitionKey, clusteringKey));
+      }
+      pkCache.removeAll(settings.getTile(), "rd", cacheKeys);
+      statsCounter.incrementStat("DELETE", clusteringKeys.size());
+      LOGGER.debug("Deleted partition {} with {} rows", partitionKey, clusteringKeys.size());
+    }
+  }
+
+  /** Returns the clustering keys of a source partition as they are stored in the ledger */
+  private static Set<String> readSourceClusteringKeys(
+      final String partitionKey,
+      final String[] pks,
+      final String[] cls,
+      final ReplicationSettings settings) {
+    // The probe selects only the primary key and writetimes as JSON, rows serialized by the custom
+    // serializer are read with the source query to get the same formatting as the ledger
+    var preparedStatement =
+        useCustomJsonSerializer
+            ? sourceStorageOnCassandra.getCassandraPreparedStatement()
+            : sourceStorageOnCassandra.getCassandraProbePreparedStatement(null);
+    var boundStatementCassandraBuilder =
+        RowReplicationTask.prepareCassandraStatement(
+            preparedStatement, REGEX_PIPE.split(partitionKey), pks);
+
+    Set<String> clusteringKeys = new HashSet<>();
+    sourceStorageOnCassandra.extractPaged(
+        boundStatementCassandraBuilder,
+        page -> {
+          for (var row : page) {
+            try {
+              clusteringKeys.add(
+                  getLedgerClusteringKey(
+                      getSerializedCassandraRow(row), settings.getWritetimeColumns(), cls, pks));
+            } catch (JsonProcessingException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        });
+    return clusteringKeys;
+  }
+
+  /** Returns the clustering key of a source row serialized as JSON, as it's stored in the ledger */
+  static String getLedgerClusteringKey(
+      String json, String writetimeColumns, String[] cls, String[] pks) {
+    return RowReplicationTask.getClusteringKey(
+        Utils.convertToJson(json, writetimeColumns, cls, pks), cls);
+  }
+
+  private static void persistMetrics(
+      StatsMetaData statsMetadata, final ReplicationSettings settings) {
     if (statsMetadata.getValue() > 0) {
-      if (config.getProperty("ENABLE_CLOUD_WATCH").equals("false")) {
+      if (!settings.isEnableCloudWatch()) {
         targetStorageOnKeyspaces.writeStats(statsMetadata);
       } else {
         var metricVal = statsMetadata.getValue();
@@ -204,26 +397,226 @@ public class CassandraReplicationTask extends AbstractTask {
     var clusteringColumnNames =
         cassandraSchemaMetadata.get("clustering").keySet().toArray(new String[0]);
 
-    BlockingQueue<Runnable> blockingQueue = new LinkedBlockingQueue<>(BLOCKING_QUEUE_SIZE);
+    // Tunables are reloaded between cycles, a cycle runs with one snapshot
+    var settings = ReplicationSettings.get();
+    targetStorageOnKeyspaces.setWriteCapacity(settings.getWriteCapacity());
+    startChangeFeed(pkCache, settings);
+    var scheduler = createScheduler(settings);
 
-    ThreadPoolExecutor executor =
-        new ThreadPoolExecutor(
-            CORE_POOL_SIZE,
-            MAX_CORE_POOL_SIZE,
-            CORE_POOL_TIMEOUT,
-            TimeUnit.SECONDS,
-            blockingQueue,
-            new ThreadPoolExecutor.AbortPolicy());
+    schedulePartitions(
+        pkCache,
+        scheduler,
+        partitionKey ->
+            schedulePartition(
+                scheduler,
+                partitionKeyNames,
+                clusteringColumnNames,
+                partitionKey,
+                pkCache,
+                settings),
+        settings);
+
+    // Every scheduled partition is replicated before deletes and stats of the cycle
+    scheduler.awaitQuiescence();
+    scheduler.shutdown();
+    LOGGER.info(
+        "Replicated partitions: {}, failed partitions: {}",
+        scheduler.getCompletedTasks(),
+        scheduler.getFailedTasks());
+
+    completeCycle(pkCache, settings, partitionKeyNames, clusteringColumnNames);
+  }
+
+  /**
+   * Schedules the partitions of the tile on the long-lived scheduler without waiting for them. A
+   * partition still replicating from an earlier pass is skipped and picked up by a later pass, so
+   * a slow partition doesn't hold back the others.
+   */
+  @Override
+  protected void doPerformPass(CacheStorage pkCache, Utils.CassandraTaskTypes taskName)
+      throws InterruptedException, ExecutionException, TimeoutException, IOException {
+
+    var partitionKeyNames =
+        cassandraSchemaMetadata.get("partition_key").keySet().toArray(new String[0]);
+    var clusteringColumnNames =
+        cassandraSchemaMetadata.get("clustering").keySet().toArray(new String[0]);
+
+    var settings = ReplicationSettings.get();
+    targetStorageOnKeyspaces.setWriteCapacity(settings.getWriteCapacity());
+    startChangeFeed(pkCache, settings);
+    if (streamingPass == null) {
+      // Pool sizes are taken once, the other tunables are reloaded per pass
+      streamingPass =
+          new StreamingPass(
+              createScheduler(settings),
+              inFlightPartitions,
+              deleteIntervalNanos,
+              statsIntervalNanos,
+              System::nanoTime);
+    }
+
+    // Rows missing from the source are reconciled once the scheduled partitions are replicated
+    streamingPass.run(
+        new StreamingPass.Steps() {
+          @Override
+          public void schedulePartitions(StreamingPass pass) throws IOException {
+            CassandraReplicationTask.this.schedulePartitions(
+                pkCache,
+                pass.getScheduler(),
+                partitionKey ->
+                    pass.schedule(
+                        partitionKey,
+                        replicationOf(
+                            partitionKeyNames,
+                            clusteringColumnNames,
+                            partitionKey,
+                            pkCache,
+                            settings)),
+                settings);
+            LOGGER.info(
+                "Replicated partitions: {}, failed partitions: {}, partitions in flight: {}",
+                pass.getScheduler().getCompletedTasks(),
+                pass.getScheduler().getFailedTasks(),
+                inFlightPartitions.size());
+          }
+
+          @Override
+          public void replicateDeletes() {
+            CassandraReplicationTask.this.replicateDeletes(
+                pkCache, settings, partitionKeyNames, clusteringColumnNames);
+          }
+
+          @Override
+          public void persistStats() {
+            CassandraReplicationTask.persistStats(settings);
+          }
+        },
+        settings.isReplicateDeletes());
+  }
+
+  /**
+   * Stops the change feed and the passes of the continuous mode, stops the threads that replicate
+   * the slices of wide partitions and lets the partitions in flight and the pending ledger commits
+   * of asynchronous writes finish
+   */
+  @Override
+  public void tearDown() {
+    if (changeFeed != null) {
+      changeFeed.shutdownNow();
+    }
+    if (streamingPass != null) {
+      try {
+        if (!streamingPass.shutdown(30, TimeUnit.SECONDS)) {
+          LOGGER.warn("Partitions in flight didn't finish replicating before shutdown");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (sliceExecutor != null) {
+      sliceExecutor.shutdownNow();
+    }
+    if (ledgerCommitExecutor != null) {
+      ledgerCommitExecutor.shutdown();
+      try {
+        if (!ledgerCommitExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+          LOGGER.warn("Ledger commits of asynchronous writes didn't finish before shutdown");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Starts polling the CDC change source, the scans of the cycles or passes reconcile changes the
+   * feed missed
+   */
+  private void startChangeFeed(CacheStorage pkCache, ReplicationSettings settings) {
+    if (cdcChangeSource == null || changeFeed != null) {
+      return;
+    }
+    changeFeedScheduler = createScheduler(settings);
+    changeFeed =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              var thread = new Thread(runnable, "ChangeFeed");
+              thread.setDaemon(true);
+              return thread;
+            });
+    var pollPeriod = Long.parseLong(config.getProperty("CDC_POLL_PERIOD_MS", "1000"));
+    changeFeed.scheduleWithFixedDelay(
+        () -> replicateChanges(pkCache), 0, pollPeriod, TimeUnit.MILLISECONDS);
+    LOGGER.info("Replicating changes from {}", config.getProperty("CDC_RAW_DIRECTORY"));
+  }
+
+  /** Replicates the partitions changed since the last poll of the change feed */
+  private void replicateChanges(CacheStorage pkCache) {
+    var partitionKeyNames =
+        cassandraSchemaMetadata.get("partition_key").keySet().toArray(new String[0]);
+    var clusteringColumnNames =
+        cassandraSchemaMetadata.get("clustering").keySet().toArray(new String[0]);
+    var settings = ReplicationSettings.get();
+
+    try {
+      // Polled partitions are kept in the backlog until they are replicated, a failure below
+      // leaves them there for the next poll
+      changeFeedBacklog.complete(cdcChangeSource.poll(changeFeedBacklog::add));
+
+      var changedPartitions = changeFeedBacklog.getPartitions();
+      List<String> scheduledPartitions = new ArrayList<>();
+      for (var partitionKey : changedPartitions) {
+        // A scan may have read the partition before the change, it's replicated again later
+        if (schedulePartition(
+            changeFeedScheduler,
+            partitionKeyNames,
+            clusteringColumnNames,
+            partitionKey,
+            pkCache,
+            settings)) {
+          scheduledPartitions.add(partitionKey);
+        }
+      }
+      changeFeedScheduler.awaitQuiescence();
+      changeFeedBacklog.replicated(scheduledPartitions);
+
+      var releasableSegments = changeFeedBacklog.takeReleasable();
+      try {
+        cdcChangeSource.release(releasableSegments);
+      } catch (IOException e) {
+        changeFeedBacklog.complete(releasableSegments);
+        throw e;
+      }
+      if (!changedPartitions.isEmpty()) {
+        LOGGER.debug(
+            "Replicated {} changed partitions, {} deferred",
+            scheduledPartitions.size(),
+            changedPartitions.size() - scheduledPartitions.size());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException | RuntimeException e) {
+      // The next poll reads the segments again from the last position
+      LOGGER.error("Unable to replicate changes from CDC", e);
+    }
+  }
+
+  private void schedulePartitions(
+      CacheStorage pkCache,
+      BoundedTaskScheduler scheduler,
+      Predicate<String> schedulePartition,
+      ReplicationSettings settings)
+      throws IOException {
 
     // Let's get all available partitions by chunks
 
     LOGGER.info(
         "The number of pre-loaded elements in the cache is {} ",
-        pkCache.getSize(Integer.parseInt(config.getProperty("TILE"))));
+        pkCache.getSize(settings.getTile()));
 
     var chunks =
         ((MemcachedCacheStorage) pkCache)
-            .getTotalChunks(Integer.parseInt(config.getProperty("TILE")));
+            .getTotalChunks(settings.getTile());
 
     if (chunks > 0) {
       if (config.getProperty("ENABLE_INTERNAL_PARTITION_KEY_STORAGE").equals("false")) {
@@ -238,21 +631,15 @@ public class CassandraReplicationTask extends AbstractTask {
                     listOfPartitionKeys =
                         ((MemcachedCacheStorage) pkCache)
                             .getListOfPartitionKeysByChunk(
-                                chunk, Integer.parseInt(config.getProperty("TILE")));
+                                chunk, settings.getTile());
                   } catch (IOException e) {
                     throw new RuntimeException(e);
                   }
                   assert listOfPartitionKeys != null;
 
-                  executor.prestartAllCoreThreads();
-                  listOfPartitionKeys.forEach(
-                      row ->
-                          blockingQueue.offer(
-                              new RowReplicationTask(
-                                  partitionKeyNames,
-                                  clusteringColumnNames,
-                                  new PrimaryKey(row.toString(), config.getProperty("TILE")),
-                                  pkCache)));
+                  listOfPartitionKeys.forEach(row -> schedulePartition.test(row.toString()));
+                  LOGGER.debug(
+                      "Chunk {} is scheduled, queue depth is {}", chunk, scheduler.getQueueDepth());
                 });
 
       } else {
@@ -266,114 +653,173 @@ public class CassandraReplicationTask extends AbstractTask {
 
         LOGGER.info(
             "The number of pre-loaded elements in the cache is {} ",
-            pkCache.getSize(Integer.parseInt(config.getProperty("TILE"))));
+            pkCache.getSize(settings.getTile()));
 
-        executor.prestartAllCoreThreads();
-        ledgerPks.forEach(
-            row ->
-                blockingQueue.offer(
-                    new RowReplicationTask(
-                        partitionKeyNames,
-                        clusteringColumnNames,
-                        new PrimaryKey(row.toString(), config.getProperty("TILE")),
-                        pkCache)));
+        ledgerPks.forEach(row -> schedulePartition.test(row.toString()));
       }
     }
+  }
 
-    if (config.getProperty("REPLICATE_DELETES").equals("true")) {
-      replicateDeletedCassandraRow(partitionKeyNames, clusteringColumnNames, pkCache);
-    }
+  /**
+   * Schedules the replication of a partition, a partition that is still replicating from a scan
+   * or from the change feed is skipped
+   *
+   * @return false if the partition is skipped
+   */
+  private static boolean schedulePartition(
+      BoundedTaskScheduler scheduler,
+      String[] partitionKeyNames,
+      String[] clusteringColumnNames,
+      String partitionKey,
+      CacheStorage pkCache,
+      ReplicationSettings settings) {
+    return StreamingPass.schedule(
+        scheduler,
+        inFlightPartitions,
+        partitionKey,
+        replicationOf(partitionKeyNames, clusteringColumnNames, partitionKey, pkCache, settings));
+  }
 
-    var statsMetaDataInserts =
-        new StatsMetaData(
-            Integer.parseInt(config.getProperty("TILE")),
-            config.getProperty("TARGET_KEYSPACE"),
-            config.getProperty("TARGET_TABLE"),
-            "INSERT");
+  /** Replicates the rows of a partition of the tile */
+  private static Runnable replicationOf(
+      String[] partitionKeyNames,
+      String[] clusteringColumnNames,
+      String partitionKey,
+      CacheStorage pkCache,
+      ReplicationSettings settings) {
+    return () ->
+        new RowReplicationTask(
+                partitionKeyNames,
+                clusteringColumnNames,
+                new PrimaryKey(partitionKey, String.valueOf(settings.getTile())),
+                pkCache,
+                settings)
+            .run();
+  }
+
+  /** Replicates deleted rows and persists the stats of a cycle */
+  private void completeCycle(
+      CacheStorage pkCache,
+      ReplicationSettings settings,
+      String[] partitionKeyNames,
+      String[] clusteringColumnNames) {
+    replicateDeletes(pkCache, settings, partitionKeyNames, clusteringColumnNames);
+    persistStats(settings);
+  }
 
-    statsMetaDataInserts.setValue(statsCounter.getStat("INSERT"));
-    persistMetrics(statsMetaDataInserts);
+  private void replicateDeletes(
+      CacheStorage pkCache,
+      ReplicationSettings settings,
+      String[] partitionKeyNames,
+      String[] clusteringColumnNames) {
+    if (settings.isReplicateDeletes()) {
+      replicateDeletedCassandraRow(partitionKeyNames, clusteringColumnNames, pkCache, settings);
+    }
+    joinedPartitions.clear();
+  }
 
-    var statsMetaDataUpdates =
-        new StatsMetaData(
-            Integer.parseInt(config.getProperty("TILE")),
-            config.getProperty("TARGET_KEYSPACE"),
-            config.getProperty("TARGET_TABLE"),
-            "UPDATE");
+  /** Logs the state of the writes and persists the stats counted since the last call */
+  private static void persistStats(ReplicationSettings settings) {
+    if (targetStorageOnKeyspaces.getConcurrencyLimit() > 0) {
+      LOGGER.info(
+          "Concurrency limit of writes: {}", targetStorageOnKeyspaces.getConcurrencyLimit());
+    }
+    if (targetStorageOnKeyspaces.getConsumedCapacityUnits() >= 0) {
+      LOGGER.info(
+          "Write capacity units consumed: {}",
+          targetStorageOnKeyspaces.getConsumedCapacityUnits());
+    }
+    if (targetStorageOnKeyspaces.getRetryStats() != null) {
+      LOGGER.info("Retries of writes: {}", targetStorageOnKeyspaces.getRetryStats());
+    }
+    LOGGER.info(
+        "Prepared statements of {} and {}",
+        sourceStorageOnCassandra.getStatementRegistry(),
+        targetStorageOnKeyspaces.getStatementRegistry());
 
-    statsMetaDataUpdates.setValue(statsCounter.getStat("UPDATE"));
-    persistMetrics(statsMetaDataUpdates);
+    for (var ops : List.of("INSERT", "UPDATE", "DELETE")) {
+      var statsMetaData =
+          new StatsMetaData(
+              settings.getTile(), settings.getTargetKeyspace(), settings.getTargetTable(), ops);
+      // Increments of partitions still in flight go to the next flush
+      statsMetaData.setValue(statsCounter.getAndResetStat(ops));
+      persistMetrics(statsMetaData, settings);
+    }
+  }
 
-    var statsMetaDataDeletes =
-        new StatsMetaData(
-            Integer.parseInt(config.getProperty("TILE")),
-            config.getProperty("TARGET_KEYSPACE"),
-            config.getProperty("TARGET_TABLE"),
-            "DELETE");
+  private static BoundedTaskScheduler createScheduler(final ReplicationSettings settings) {
+    if (useVirtualThreads) {
+      // One virtual thread per partition, the scheduler's permits cap the concurrency
+      LOGGER.info(
+          "Replicating partitions on virtual threads with max concurrency {}",
+          settings.getVirtualThreadsMaxConcurrency());
+      return new BoundedTaskScheduler(
+          Utils.newVirtualThreadPerTaskExecutor(), settings.getVirtualThreadsMaxConcurrency());
+    }
 
-    statsMetaDataDeletes.setValue(statsCounter.getStat("DELETE"));
-    persistMetrics(statsMetaDataDeletes);
+    BlockingQueue<Runnable> blockingQueue = new LinkedBlockingQueue<>(BLOCKING_QUEUE_SIZE);
 
-    statsCounter.resetStat("INSERT");
-    statsCounter.resetStat("UPDATE");
-    statsCounter.resetStat("DELETE");
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            settings.getCorePoolSize(),
+            settings.getMaxCorePoolSize(),
+            settings.getCorePoolTimeout(),
+            TimeUnit.SECONDS,
+            blockingQueue,
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.prestartAllCoreThreads();
 
-    executor.shutdown();
-    executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.MILLISECONDS);
+    // Producers are parked while the queue and the pool are full, no partition is skipped
+    return new BoundedTaskScheduler(
+        executor, BLOCKING_QUEUE_SIZE + settings.getMaxCorePoolSize());
   }
 
   public static class RowReplicationTask implements Runnable {
 
+    private static final long NOT_IN_LEDGER = Long.MIN_VALUE;
     private static CacheStorage<String, Long> pkCache;
     private final String[] pks;
     private final String[] cls;
     private final PrimaryKey primaryKey;
+    private final ReplicationSettings settings;
 
     public RowReplicationTask(
         final String[] pks,
         final String[] cls,
         final PrimaryKey pk,
-        CacheStorage<String, Long> pkc) {
+        CacheStorage<String, Long> pkc,
+        final ReplicationSettings settings) {
       this.pks = pks;
       this.cls = cls;
       this.primaryKey = pk;
+      this.settings = settings;
       pkCache = pkc;
     }
 
     private void dataLoader(
-        final SimpleStatement simpleStatement,
+        final BoundStatement boundStatement,
         final LedgerMetaData ledgerMetaData,
         final boolean setStartReplicationPoint,
         final long ts,
-        final String ops)
+        final String ops,
+        final PartitionWriter partitionWriter)
         throws IOException {
-      if (!setStartReplicationPoint) {
-        var result = targetStorageOnKeyspaces.write(simpleStatement);
-        if (result) {
-          ledgerStorageOnLevelDB.writeRowMetadata(ledgerMetaData);
-          statsCounter.incrementStat(ops);
-        }
-
-      } else {
-        if (ledgerMetaData.getLastWriteTime() > ts) {
-          var result = targetStorageOnKeyspaces.write(simpleStatement);
-          if (result) {
-            ledgerStorageOnLevelDB.writeRowMetadata(ledgerMetaData);
-            statsCounter.incrementStat(ops);
-          }
-        }
+      if (setStartReplicationPoint && ledgerMetaData.getLastWriteTime() <= ts) {
+        return;
       }
+      partitionWriter.write(boundStatement, ledgerMetaData, ops);
     }
 
     private void insertRow(
         final long v,
         final String k,
-        final ConcurrentMap<String, String> jsonColumnHashMapPerPartition,
-        final PrimaryKey primaryKey)
+        final BoundStatement payload,
+        final PrimaryKey primaryKey,
+        final PartitionWriter partitionWriter)
         throws IOException {
       var valueOnClient = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
-      var simpleStatement =
-          SimpleStatement.newInstance(jsonColumnHashMapPerPartition.get(k))
+      var boundStatement =
+          payload
               .setIdempotent(true)
               .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
 
@@ -381,29 +827,32 @@ public class CassandraReplicationTask extends AbstractTask {
           new LedgerMetaData(
               primaryKey.getPartitionKeys(),
               k,
-              config.getProperty("TARGET_KEYSPACE"),
-              config.getProperty("TARGET_TABLE"),
-              Integer.parseInt(config.getProperty("TILE")),
+              settings.getTargetKeyspace(),
+              settings.getTargetTable(),
+              settings.getTile(),
               valueOnClient,
               v);
       dataLoader(
-          simpleStatement,
+          boundStatement,
           ledgerMetaData,
-          Boolean.parseBoolean(config.getProperty("ENABLE_REPLICATION_POINT")),
-          Long.parseLong(config.getProperty("STARTING_REPLICATION_TIMESTAMP")),
-          "INSERT");
+          settings.isEnableReplicationPoint(),
+          settings.getStartingReplicationTimestamp(),
+          "INSERT",
+          partitionWriter);
     }
 
     private void updateRow(
-        final MapDifference.ValueDifference<Long> v,
+        final long sourceWriteTime,
+        final long ledgerLastRun,
         final String k,
-        final ConcurrentMap<String, String> jsonColumnHashMapPerPartition,
-        final PrimaryKey primaryKey)
+        final BoundStatement payload,
+        final PrimaryKey primaryKey,
+        final PartitionWriter partitionWriter)
         throws IOException {
       var valueOnClient = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
-      if (v.leftValue() > v.rightValue()) {
-        var simpleStatement =
-            SimpleStatement.newInstance(jsonColumnHashMapPerPartition.get(k))
+      if (sourceWriteTime > ledgerLastRun) {
+        var boundStatement =
+            payload
                 .setIdempotent(true)
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
 
@@ -411,23 +860,30 @@ public class CassandraReplicationTask extends AbstractTask {
             new LedgerMetaData(
                 primaryKey.getPartitionKeys(),
                 k,
-                config.getProperty("TARGET_KEYSPACE"),
-                config.getProperty("TARGET_TABLE"),
-                Integer.parseInt(config.getProperty("TILE")),
+                settings.getTargetKeyspace(),
+                settings.getTargetTable(),
+                settings.getTile(),
                 valueOnClient,
-                v.leftValue());
+                sourceWriteTime);
         dataLoader(
-            simpleStatement,
+            boundStatement,
             ledgerMetaData,
-            Boolean.parseBoolean(config.getProperty("ENABLE_REPLICATION_POINT")),
-            Long.parseLong(config.getProperty("STARTING_REPLICATION_TIMESTAMP")),
-            "UPDATE");
+            settings.isEnableReplicationPoint(),
+            settings.getStartingReplicationTimestamp(),
+            "UPDATE",
+            partitionWriter);
       }
     }
 
     public static BoundStatementBuilder prepareCassandraStatement(String[] pk, String[] pks) {
+      return prepareCassandraStatement(
+          sourceStorageOnCassandra.getCassandraPreparedStatement(), pk, pks);
+    }
+
+    private static BoundStatementBuilder prepareCassandraStatement(
+        PreparedStatement preparedStatement, String[] pk, String[] pks) {
       BoundStatementBuilder boundStatementCassandraBuilder =
-              sourceStorageOnCassandra.getCassandraPreparedStatement().boundStatementBuilder();
+              preparedStatement.boundStatementBuilder();
       int i = 0;
       try {
         for (String columnName : pks) {
@@ -444,112 +900,507 @@ public class CassandraReplicationTask extends AbstractTask {
       return boundStatementCassandraBuilder;
     }
 
+    private PartitionWriter newPartitionWriter() {
+      return new PartitionWriter(
+          targetStorageOnKeyspaces,
+          ledgerStorageOnLevelDB,
+          statsCounter,
+          asyncWrites ? inFlightWindow.forPartition() : null,
+          ledgerCommitExecutor,
+          settings.getBatchMaxRows(),
+          settings.getBatchMaxBytes());
+    }
+
+    private static void flush(PartitionWriter partitionWriter) {
+      try {
+        partitionWriter.flush();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+
+    private static List<Row> toList(Iterable<Row> page) {
+      List<Row> rows = new ArrayList<>();
+      page.forEach(rows::add);
+      return rows;
+    }
+
     @Override
     public void run() {
-
       var pk = REGEX_PIPE.split(primaryKey.getPartitionKeys());
-      ConcurrentMap<String, Long> ledgerHashMap = new ConcurrentHashMap<>();
-      ConcurrentMap<String, Long> sourceHashMap = new ConcurrentHashMap<>();
-      ConcurrentMap<String, String> jsonColumnHashMapPerPartition = new ConcurrentHashMap<>();
-
-      var boundStatementCassandraBuilder = prepareCassandraStatement(pk, pks);
-
-      var cassandraResult = sourceStorageOnCassandra.extract(boundStatementCassandraBuilder);
-      cassandraResult.parallelStream()
-          .forEach(
-              compareRow -> {
-                Payload jsonPayload = null;
-                try {
-                  jsonPayload = Utils.convertToJson(
-                          getSerializedCassandraRow(compareRow),
-                          config.getProperty("WRITETIME_COLUMNS"),
-                          cls,
-                          pks);
-                } catch (JsonProcessingException e) {
-                  throw new RuntimeException(e);
-                }
-                var ts = jsonPayload.getTimestamp();
-                Map<String, String> clusteringColumnsMapping = jsonPayload.getClusteringColumns();
-                List<String> clTmp = new ArrayList<>();
-                for (String cln : cls) {
-                  if (!cln.equals(CLUSTERING_COLUMN_ABSENT)) {
-                    var val = clusteringColumnsMapping.get(cln);
-                    clTmp.add(val);
-                  } else {
-                    clTmp.add(REPLICATION_NOT_APPLICABLE);
-                  }
-                }
-                var cl = String.join("|", clTmp);
-                var hk = String.format("%s|%s", primaryKey.getPartitionKeys(), cl);
-                // if hk is not in the global pk cache, add it
-                try {
-                  if (!pkCache.containsKey(hk)) {
-                    sourceHashMap.put(cl, ts);
-                    pkCache.add(Integer.parseInt(config.getProperty("TILE")), hk, ts);
-                    jsonColumnHashMapPerPartition.put(cl, preparePayload(jsonPayload));
-                  } else {
-                    // if hk is in the global pk cache, compare timestamps
-                    if (ts > (long) pkCache.get(hk)) {
-                      sourceHashMap.put(cl, ts);
-                      pkCache.put(hk, ts);
-                      var query = preparePayload(jsonPayload);
-                      jsonColumnHashMapPerPartition.put(cl, preparePayload(jsonPayload));
-                    }
-                    // if it's less than do nothing
-                  }
-                } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                  throw new RuntimeException(e);
-                }
-              });
-
-      if (!sourceHashMap.isEmpty()) {
-        QueryLedgerItemByPk queryLedgerItemByPk =
-            new QueryLedgerItemByPk(
-                primaryKey.getPartitionKeys(),
-                Integer.parseInt(config.getProperty("TILE")),
-                config.getProperty("TARGET_KEYSPACE"),
-                config.getProperty("TARGET_TABLE"));
+      var checkpoint = widePartitionSlicing ? getSliceCheckpoint() : null;
+      if (checkpoint != null) {
+        replicateSlices(pk, checkpoint);
+        return;
+      }
 
-        List<Object> ledgerResultSet;
-        try {
-          ledgerResultSet = ledgerStorageOnLevelDB.readRowMetaData(queryLedgerItemByPk);
+      var partitionWriter = newPartitionWriter();
+      var boundStatementCassandraBuilder =
+          isProbe()
+              ? prepareCassandraStatement(
+                  sourceStorageOnCassandra.getCassandraProbePreparedStatement(null), pk, pks)
+              : prepareCassandraStatement(pk, pks);
+
+      // The partition is diffed and written page by page while the next page is fetched
+      if (clusteringKeyCodec == null) {
+        sourceStorageOnCassandra.extractPaged(
+            boundStatementCassandraBuilder,
+            page -> replicatePage(toList(page), partitionWriter, null));
+      } else {
+        try (var ledgerRows =
+            ledgerStorageOnLevelDB.readOrderedRowMetaData(primaryKey.getPartitionKeys())) {
+          var join = new LedgerMergeJoin(clusteringKeyCodec, ledgerRows);
+          sourceStorageOnCassandra.extractPaged(
+              boundStatementCassandraBuilder,
+              page -> replicatePage(toList(page), partitionWriter, join));
+          join.finish(this::deleteRow);
+          if (join.isOrdered()) {
+            joinedPartitions.add(primaryKey.getPartitionKeys());
+          }
         } catch (IOException e) {
           throw new RuntimeException(e);
         }
+      }
+      flush(partitionWriter);
+    }
 
-        if (!ledgerResultSet.isEmpty()) {
-          ledgerResultSet.parallelStream()
-              .forEach(
-                  ledgerRow -> {
-                    var r = (Value) ledgerRow;
-                    var lastRun = r.getLastRun();
-                    var cl = r.getCk();
-                    ledgerHashMap.put(cl, lastRun);
-                  });
+    /** Deletes a row of the ledger that the source skipped, once it's confirmed as deleted */
+    private void deleteRow(String clusteringKey) {
+      if (!settings.isReplicateDeletes()) {
+        return;
+      }
+      try {
+        delete(
+            new PrimaryKey(primaryKey.getPartitionKeys(), clusteringKey),
+            pks,
+            cls,
+            pkCache,
+            settings);
+      } catch (IOException
+          | InterruptedException
+          | ExecutionException
+          | TimeoutException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Returns the slices of a wide partition, resuming an interrupted partition from its
+     * checkpoint, or null if the partition is extracted with a single query
+     */
+    private SliceCheckpoint getSliceCheckpoint() {
+      var checkpoint = ledgerStorageOnLevelDB.readSliceCheckpoint(primaryKey.getPartitionKeys());
+      if (checkpoint != null) {
+        LOGGER.info("Resuming the wide partition {}", primaryKey.getPartitionKeys());
+        return checkpoint;
+      }
+
+      var clusteringOrder = cassandraSchemaMetadata.get("clustering_order");
+      if (clusteringOrder.isEmpty()) {
+        return null;
+      }
+      var column = clusteringOrder.keySet().iterator().next();
+      var position = Arrays.asList(cls).indexOf(column);
+
+      // The number of rows replicated last cycles tells whether the partition is wide
+      List<String> clusteringKeys;
+      try {
+        clusteringKeys =
+            ledgerStorageOnLevelDB.readClusteringKeys(
+                primaryKey.getPartitionKeys(), settings.getWidePartitionMinRows());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      if (clusteringKeys.isEmpty()) {
+        return null;
+      }
+
+      List<String> values = new ArrayList<>(clusteringKeys.size());
+      for (var clusteringKey : clusteringKeys) {
+        values.add(REGEX_PIPE.split(clusteringKey, -1)[position]);
+      }
+      var boundaries =
+          ClusteringRangeSlicer.getBoundaries(
+              values,
+              cassandraSchemaMetadata.get("clustering").get(column),
+              (clusteringKeys.size() + settings.getWidePartitionSliceRows() - 1)
+                  / settings.getWidePartitionSliceRows());
+      if (boundaries.isEmpty()) {
+        return null;
+      }
+
+      LOGGER.info(
+          "Extracting the wide partition {} with {} rows in {} slices",
+          primaryKey.getPartitionKeys(),
+          clusteringKeys.size(),
+          boundaries.size() + 1);
+      checkpoint = new SliceCheckpoint(boundaries);
+      ledgerStorageOnLevelDB.writeSliceCheckpoint(primaryKey.getPartitionKeys(), checkpoint);
+      return checkpoint;
+    }
+
+    private void replicateSlices(String[] pk, SliceCheckpoint checkpoint) {
+      List<CompletableFuture<Void>> slices = new ArrayList<>();
+      for (int i = 0; i < checkpoint.getSlices(); i++) {
+        if (!checkpoint.isCompleted(i)) {
+          final int slice = i;
+          slices.add(
+              CompletableFuture.runAsync(
+                  () -> replicateSlice(pk, checkpoint, slice), sliceExecutor));
         }
       }
+      CompletableFuture.allOf(slices.toArray(new CompletableFuture[0])).join();
+      ledgerStorageOnLevelDB.deleteSliceCheckpoint(primaryKey.getPartitionKeys());
+    }
 
-      MapDifference<String, Long> diff = Maps.difference(sourceHashMap, ledgerHashMap);
-      Map<String, MapDifference.ValueDifference<Long>> rowDiffering = diff.entriesDiffering();
-      Map<String, Long> newItems = diff.entriesOnlyOnLeft();
+    private void replicateSlice(String[] pk, SliceCheckpoint checkpoint, int slice) {
+      var clusteringOrder = cassandraSchemaMetadata.get("clustering_order");
+      var column = clusteringOrder.keySet().iterator().next();
+      var type = cassandraSchemaMetadata.get("clustering").get(column);
+      var descending = "desc".equalsIgnoreCase(clusteringOrder.get(column));
+      var lowerBound = checkpoint.getLowerBound(slice);
+      var upperBound = checkpoint.getUpperBound(slice);
 
-      rowDiffering.forEach(
-          (k, v) -> {
-            try {
-              updateRow(v, k, jsonColumnHashMapPerPartition, primaryKey);
-            } catch (IOException e) {
-              throw new RuntimeException(e);
+      List<String> restrictions = new ArrayList<>();
+      if (lowerBound != null) {
+        restrictions.add(String.format("%s>=:slice_start", column));
+      }
+      if (upperBound != null) {
+        restrictions.add(
+            String.format(
+                checkpoint.isUpperInclusive(slice) ? "%s<=:slice_end" : "%s<:slice_end", column));
+      }
+      var boundStatementCassandraBuilder =
+          prepareCassandraStatement(
+              isProbe()
+                  ? sourceStorageOnCassandra.getCassandraProbePreparedStatement(
+                      String.join(" AND ", restrictions))
+                  : sourceStorageOnCassandra.getCassandraPreparedStatement(
+                      String.join(" AND ", restrictions)),
+              pk,
+              pks);
+      if (lowerBound != null) {
+        boundStatementCassandraBuilder =
+            aggregateBuilder(type, "slice_start", lowerBound, boundStatementCassandraBuilder);
+      }
+      if (upperBound != null) {
+        boundStatementCassandraBuilder =
+            aggregateBuilder(type, "slice_end", upperBound, boundStatementCassandraBuilder);
+      }
+
+      var partitionWriter = newPartitionWriter();
+      sourceStorageOnCassandra.extractPaged(
+          boundStatementCassandraBuilder,
+          page -> {
+            var lastRow = replicatePage(toList(page), partitionWriter, null);
+            if (lastRow == null) {
+              return;
+            }
+            // The slice resumes at the last clustering value once the rows of the page are written
+            flush(partitionWriter);
+            var position = lastRow.getClusteringColumns().get(column);
+            if (descending) {
+              checkpoint.advanceUpperBound(slice, position);
+            } else {
+              checkpoint.advanceLowerBound(slice, position);
             }
+            ledgerStorageOnLevelDB.writeSliceCheckpoint(primaryKey.getPartitionKeys(), checkpoint);
           });
+      flush(partitionWriter);
+      checkpoint.complete(slice);
+      ledgerStorageOnLevelDB.writeSliceCheckpoint(primaryKey.getPartitionKeys(), checkpoint);
+    }
 
-      newItems.forEach(
-          (k, v) -> {
-            try {
-              insertRow(v, k, jsonColumnHashMapPerPartition, primaryKey);
-            } catch (IOException e) {
-              throw new RuntimeException(e);
+    private Payload toPayload(Row row) {
+      try {
+        return Utils.convertToJson(
+            getSerializedCassandraRow(row), settings.getWritetimeColumns(), cls, pks);
+      } catch (JsonProcessingException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Replicates the changed rows of a page and returns the payload of its last row
+     *
+     * @param join ledger rows of the partition in clustering order, or null to look up rows
+     */
+    private Payload replicatePage(
+        List<Row> page, PartitionWriter partitionWriter, LedgerMergeJoin join) {
+      if (page.isEmpty()) {
+        return null;
+      }
+      if (isProbe()) {
+        // The page holds only keys and writetimes, full rows are fetched for changed keys
+        List<Payload> probes =
+            page.parallelStream().map(this::toProbePayload).collect(Collectors.toList());
+        var probeKeys = getClusteringKeys(probes);
+        var changed = isChanged(probes, probeKeys);
+        List<Payload> changedProbes = new ArrayList<>();
+        for (int row = 0; row < probes.size(); row++) {
+          if (!changed[row] && join == null) {
+            continue;
+          }
+          var probe = probes.get(row);
+          var lastRun = readLastRun(probeKeys[row], join);
+          if (changed[row] && (lastRun == NOT_IN_LEDGER || probe.getTimestamp() > lastRun)) {
+            changedProbes.add(probe);
+          }
+        }
+        List<Payload> payloads =
+            fetchRows(changedProbes).parallelStream()
+                .map(this::toPayload)
+                .collect(Collectors.toList());
+        replicateChanged(payloads, getClusteringKeys(payloads), null, partitionWriter, null);
+        return probes.get(probes.size() - 1);
+      }
+
+      List<Payload> payloads =
+          page.parallelStream().map(this::toPayload).collect(Collectors.toList());
+      var clusteringKeys = getClusteringKeys(payloads);
+      replicateChanged(
+          payloads, clusteringKeys, isChanged(payloads, clusteringKeys), partitionWriter, join);
+      return payloads.get(payloads.size() - 1);
+    }
+
+    private boolean isProbe() {
+      return probeChanges && cls.length > 0;
+    }
+
+    /** Reads a probed row in the format of full rows, see getProbeQuery */
+    private Payload toProbePayload(Row row) {
+      return toPayload(row);
+    }
+
+    /** Returns the clustering keys of the rows, computed once per page */
+    private String[] getClusteringKeys(List<Payload> payloads) {
+      var clusteringKeys = new String[payloads.size()];
+      for (int row = 0; row < clusteringKeys.length; row++) {
+        clusteringKeys[row] = getClusteringKey(payloads.get(row), cls);
+      }
+      return clusteringKeys;
+    }
+
+    private static String getClusteringKey(Payload jsonPayload, String[] cls) {
+      Map<String, String> clusteringColumnsMapping = jsonPayload.getClusteringColumns();
+      var cl = new StringBuilder();
+      for (String cln : cls) {
+        if (cl.length() > 0) {
+          cl.append('|');
+        }
+        if (!cln.equals(CLUSTERING_COLUMN_ABSENT)) {
+          cl.append(clusteringColumnsMapping.get(cln));
+        } else {
+          cl.append(REPLICATION_NOT_APPLICABLE);
+        }
+      }
+      return cl.toString();
+    }
+
+    /** Returns true if the row is newer than in the global pk cache and updates the cache */
+    private boolean isChanged(Payload jsonPayload, String clusteringKey) {
+      var ts = jsonPayload.getTimestamp();
+      var hk = primaryKey.getPartitionKeys() + '|' + clusteringKey;
+      // if hk is not in the global pk cache, add it
+      try {
+        if (!pkCache.containsKey(hk)) {
+          pkCache.add(settings.getTile(), hk, ts);
+          return true;
+        }
+        // if hk is in the global pk cache, compare timestamps
+        if (ts > (long) pkCache.get(hk)) {
+          pkCache.put(hk, ts);
+          return true;
+        }
+        // if it's less than do nothing
+        return false;
+      } catch (InterruptedException | ExecutionException | TimeoutException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private boolean[] isChanged(List<Payload> payloads, String[] clusteringKeys) {
+      var changed = new boolean[payloads.size()];
+      IntStream.range(0, payloads.size())
+          .parallel()
+          .forEach(row -> changed[row] = isChanged(payloads.get(row), clusteringKeys[row]));
+      return changed;
+    }
+
+    /**
+     * Returns the last run of a row in the ledger, or NOT_IN_LEDGER. Rows are joined in clustering
+     * order while the source is in the order of the ledger and looked up otherwise.
+     */
+    private long readLastRun(String clusteringKey, LedgerMergeJoin join) {
+      if (join != null && join.isOrdered()) {
+        var ledgerRow = join.next(clusteringKey, this::deleteRow);
+        if (join.isOrdered()) {
+          return ledgerRow == null ? NOT_IN_LEDGER : ledgerRow.getLastRun();
+        }
+      }
+      var ledgerRow =
+          ledgerStorageOnLevelDB.readRowMetaData(primaryKey.getPartitionKeys(), clusteringKey);
+      return ledgerRow == null ? NOT_IN_LEDGER : ledgerRow.getLastRun();
+    }
+
+    /** Reads the full rows of the probed keys with a bounded number of concurrent queries */
+    private List<Row> fetchRows(List<Payload> probes) {
+      List<String> restrictions = new ArrayList<>();
+      for (var column : cls) {
+        restrictions.add(String.format("%s=:%s", column, column));
+      }
+      var preparedStatement =
+          sourceStorageOnCassandra.getCassandraPreparedStatement(
+              String.join(" AND ", restrictions));
+      var pk = REGEX_PIPE.split(primaryKey.getPartitionKeys());
+
+      var concurrency = settings.getProbeFetchConcurrency();
+      List<Row> rows = new ArrayList<>(probes.size());
+      for (int i = 0; i < probes.size(); i += concurrency) {
+        List<CompletableFuture<AsyncResultSet>> results = new ArrayList<>();
+        for (var probe : probes.subList(i, Math.min(i + concurrency, probes.size()))) {
+          var boundStatementCassandraBuilder = prepareCassandraStatement(preparedStatement, pk, pks);
+          for (var column : cls) {
+            boundStatementCassandraBuilder =
+                aggregateBuilder(
+                    cassandraSchemaMetadata.get("clustering").get(column),
+                    column,
+                    probe.getClusteringColumns().get(column),
+                    boundStatementCassandraBuilder);
+          }
+          results.add(
+              sourceStorageOnCassandra
+                  .extractAsync(boundStatementCassandraBuilder)
+                  .toCompletableFuture());
+        }
+        for (var result : results) {
+          // The row may have been deleted since the probe
+          var row = result.join().one();
+          if (row != null) {
+            rows.add(row);
+          }
+        }
+      }
+      return rows;
+    }
+
+    /**
+     * Sets the ledger writetimes of rows the join didn't reach. With the ordered index the range of
+     * their clustering keys is read with one scan, other rows are looked up one by one.
+     */
+    private void readLedger(RowDiff diff, String[] clusteringKeys, int[] rows, int count) {
+      byte[] first = null;
+      byte[] last = null;
+      for (int i = 0; i < count; i++) {
+        var clusteringKey = clusteringKeys[rows[i]];
+        var orderedKey =
+            clusteringKeyCodec == null ? null : clusteringKeyCodec.encode(clusteringKey);
+        if (orderedKey == null) {
+          var ledgerRow =
+              ledgerStorageOnLevelDB.readRowMetaData(primaryKey.getPartitionKeys(), clusteringKey);
+          if (ledgerRow != null) {
+            diff.addLedger(clusteringKey, ledgerRow.getLastRun());
+          }
+          continue;
+        }
+        if (first == null || ClusteringKeyCodec.compare(orderedKey, first) < 0) {
+          first = orderedKey;
+        }
+        if (last == null || ClusteringKeyCodec.compare(orderedKey, last) > 0) {
+          last = orderedKey;
+        }
+      }
+      if (first == null) {
+        return;
+      }
+      try (var ledgerRows =
+          ledgerStorageOnLevelDB.readOrderedRowMetaData(primaryKey.getPartitionKeys(), first)) {
+        while (ledgerRows.hasNext()) {
+          var ledgerRow = ledgerRows.next();
+          if (ClusteringKeyCodec.compare(ledgerRow.getOrderedKey(), last) > 0) {
+            break;
+          }
+          // Ledger rows between the keys of the page that the page doesn't hold are ignored
+          diff.addLedger(ledgerRow.getCk(), ledgerRow.getLastRun());
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * @param clusteringKeys clustering keys of the rows
+     * @param changed rows changed in the pk cache, or null if all rows are changed
+     * @param join ledger rows of the partition in clustering order, or null to look up rows
+     */
+    private void replicateChanged(
+        List<Payload> payloads,
+        String[] clusteringKeys,
+        boolean[] changed,
+        PartitionWriter partitionWriter,
+        LedgerMergeJoin join) {
+      try (var diff = RowDiff.get()) {
+        // Changed rows whose ledger writetime is read after the join
+        var unjoined = new int[payloads.size()];
+        var unjoinedRows = 0;
+        for (int row = 0; row < payloads.size(); row++) {
+          var rowChanged = changed == null || changed[row];
+          var joined = join != null && join.isOrdered();
+          // Without the join only the changed rows of the page are looked up in the ledger
+          if (!rowChanged && !joined) {
+            continue;
+          }
+          var lastRun = NOT_IN_LEDGER;
+          if (joined) {
+            var ledgerRow = join.next(clusteringKeys[row], this::deleteRow);
+            joined = join.isOrdered();
+            if (ledgerRow != null) {
+              lastRun = ledgerRow.getLastRun();
             }
-          });
+          }
+          if (!rowChanged) {
+            continue;
+          }
+          var entry = diff.addSource(clusteringKeys[row], row, payloads.get(row).getTimestamp());
+          if (!joined) {
+            unjoined[unjoinedRows++] = row;
+          } else if (lastRun != NOT_IN_LEDGER) {
+            diff.setLedger(entry, lastRun);
+          }
+        }
+        readLedger(diff, clusteringKeys, unjoined, unjoinedRows);
+
+        // Payloads are bound for inserted and updated rows only
+        diff.forEachChange(
+            new RowDiff.Listener() {
+              @Override
+              public void onInsert(int row, long sourceTimestamp) throws IOException {
+                insertRow(
+                    sourceTimestamp,
+                    clusteringKeys[row],
+                    preparePayload(payloads.get(row), settings),
+                    primaryKey,
+                    partitionWriter);
+              }
+
+              @Override
+              public void onUpdate(int row, long sourceTimestamp, long ledgerTimestamp)
+                  throws IOException {
+                updateRow(
+                    sourceTimestamp,
+                    ledgerTimestamp,
+                    clusteringKeys[row],
+                    preparePayload(payloads.get(row), settings),
+                    primaryKey,
+                    partitionWriter);
+              }
+            });
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 }
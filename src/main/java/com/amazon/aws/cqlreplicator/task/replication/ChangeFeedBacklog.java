@@ -0,0 +1,66 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import java.util.*;
+
+/**
+ * Partitions reported by the change feed per commitlog segment until they are replicated. A
+ * partition is kept from the moment it's polled, so a failure while scheduling it doesn't lose it,
+ * and a completed segment is released as soon as all of its partitions are replicated.
+ */
+class ChangeFeedBacklog {
+
+  private final Map<String, Set<String>> partitionsBySegment = new LinkedHashMap<>();
+  private final Set<String> completedSegments = new LinkedHashSet<>();
+
+  void add(String segmentName, String partitionKey) {
+    partitionsBySegment
+        .computeIfAbsent(segmentName, name -> new LinkedHashSet<>())
+        .add(partitionKey);
+  }
+
+  /**
+   * Marks segments read to the end or not deleted yet, they are released once their partitions are
+   * replicated
+   */
+  void complete(Collection<String> segmentNames) {
+    completedSegments.addAll(segmentNames);
+  }
+
+  /** Returns the partitions to replicate in the order they were polled, without duplicates */
+  Set<String> getPartitions() {
+    Set<String> partitions = new LinkedHashSet<>();
+    partitionsBySegment.values().forEach(partitions::addAll);
+    return partitions;
+  }
+
+  /** Removes partitions from all segments, a replication covers every change polled before it */
+  void replicated(Collection<String> partitionKeys) {
+    var segments = partitionsBySegment.values().iterator();
+    while (segments.hasNext()) {
+      var partitions = segments.next();
+      partitions.removeAll(partitionKeys);
+      if (partitions.isEmpty()) {
+        segments.remove();
+      }
+    }
+  }
+
+  /** Returns the completed segments whose partitions are all replicated, they are forgotten */
+  List<String> takeReleasable() {
+    List<String> releasable = new ArrayList<>();
+    var segments = completedSegments.iterator();
+    while (segments.hasNext()) {
+      var segmentName = segments.next();
+      if (!partitionsBySegment.containsKey(segmentName)) {
+        releasable.add(segmentName);
+        segments.remove();
+      }
+    }
+    return releasable;
+  }
+}
@@ -0,0 +1,91 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** Splits a wide partition into ranges of its first clustering column */
+final class ClusteringRangeSlicer {
+
+  private ClusteringRangeSlicer() {}
+
+  /** Returns the CQL order of the values of the type, or null if the type can't be sliced */
+  static Comparator<String> getComparator(String cqlType) {
+    switch (cqlType) {
+      case "tinyint":
+      case "smallint":
+      case "int":
+      case "bigint":
+        return Comparator.comparingLong(Long::parseLong);
+      case "varint":
+        return Comparator.comparing(BigInteger::new);
+      // Cassandra orders NaN after Infinity, like Float.compare and Double.compare
+      case "float":
+        return (a, b) -> Float.compare(Float.parseFloat(a), Float.parseFloat(b));
+      case "double":
+        return Comparator.comparingDouble(Double::parseDouble);
+      case "decimal":
+        return Comparator.comparing(BigDecimal::new);
+      case "ascii":
+      case "text":
+      case "varchar":
+      case "date":
+        return ClusteringRangeSlicer::compareUtf8;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Compares the strings in the byte order of their UTF-8 encoding, which is the order of their
+   * code points. String.compareTo orders UTF-16 code units, so a supplementary character sorts
+   * before the characters from U+E000 to U+FFFF.
+   */
+  static int compareUtf8(String a, String b) {
+    int i = 0;
+    int j = 0;
+    while (i < a.length() && j < b.length()) {
+      var codePointA = a.codePointAt(i);
+      var codePointB = b.codePointAt(j);
+      if (codePointA != codePointB) {
+        return Integer.compare(codePointA, codePointB);
+      }
+      i += Character.charCount(codePointA);
+      j += Character.charCount(codePointB);
+    }
+    return Integer.compare(a.length() - i, b.length() - j);
+  }
+
+  /**
+   * Returns up to slices - 1 ascending boundaries that split the values into slices of about the
+   * same number of rows. Repeated values are never split across slices.
+   */
+  static List<String> getBoundaries(List<String> values, String cqlType, int slices) {
+    var comparator = getComparator(cqlType);
+    List<String> boundaries = new ArrayList<>();
+    if (comparator == null || values.isEmpty() || slices < 2) {
+      return boundaries;
+    }
+    List<String> sorted = new ArrayList<>(values);
+    sorted.sort(comparator);
+    var previous = sorted.get(0);
+    var index = 0;
+    for (int i = 1; i < slices; i++) {
+      index = Math.max(index, (int) ((long) i * sorted.size() / slices));
+      // A boundary starts a new slice, so move it past a run of repeated values
+      while (index < sorted.size() && comparator.compare(sorted.get(index), previous) <= 0) {
+        index++;
+      }
+      if (index == sorted.size()) {
+        break;
+      }
+      previous = sorted.get(index);
+      boundaries.add(previous);
+    }
+    return boundaries;
+  }
+}
@@ -0,0 +1,71 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.models.OrderedValue;
+import com.amazon.aws.cqlreplicator.util.ClusteringKeyCodec;
+import com.datastax.oss.driver.shaded.guava.common.collect.Iterators;
+import com.datastax.oss.driver.shaded.guava.common.collect.PeekingIterator;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Joins the rows of a partition, as the source returns them in clustering order, with the ledger
+ * iterated in the same order. Ledger rows that the source skipped are reported as deletion
+ * candidates. The join stops as soon as a source row is out of the order of the ledger, the caller
+ * then looks up the remaining rows one by one.
+ */
+class LedgerMergeJoin {
+
+  private final ClusteringKeyCodec codec;
+  private final PeekingIterator<OrderedValue> ledger;
+  private byte[] previous;
+  private boolean ordered = true;
+
+  LedgerMergeJoin(final ClusteringKeyCodec codec, final Iterator<OrderedValue> ledger) {
+    this.codec = codec;
+    this.ledger = Iterators.peekingIterator(ledger);
+  }
+
+  boolean isOrdered() {
+    return ordered;
+  }
+
+  /**
+   * Advances the ledger to the next source row and returns the ledger row with the same clustering
+   * key, or null if the row is new or the join stopped
+   */
+  OrderedValue next(String clusteringKey, Consumer<String> deletionCandidates) {
+    if (!ordered) {
+      return null;
+    }
+    var key = codec.encode(clusteringKey);
+    if (key == null || (previous != null && ClusteringKeyCodec.compare(key, previous) <= 0)) {
+      ordered = false;
+      return null;
+    }
+    previous = key;
+    while (ledger.hasNext()) {
+      var cmp = ClusteringKeyCodec.compare(ledger.peek().getOrderedKey(), key);
+      if (cmp == 0) {
+        return ledger.next();
+      }
+      if (cmp > 0) {
+        break;
+      }
+      deletionCandidates.accept(ledger.next().getCk());
+    }
+    return null;
+  }
+
+  /** Reports the ledger rows after the last source row as deletion candidates */
+  void finish(Consumer<String> deletionCandidates) {
+    if (!ordered) {
+      return;
+    }
+    while (ledger.hasNext()) {
+      deletionCandidates.accept(ledger.next().getCk());
+    }
+  }
+}
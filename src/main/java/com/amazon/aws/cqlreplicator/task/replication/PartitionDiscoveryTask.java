@@ -2,9 +2,14 @@
 // SPDX-License-Identifier: Apache-2.0
 package com.amazon.aws.cqlreplicator.task.replication;
 
+import com.amazon.aws.cqlreplicator.config.ReplicationSettings;
+import com.amazon.aws.cqlreplicator.models.DiscoveryCheckpoint;
 import com.amazon.aws.cqlreplicator.models.PartitionMetaData;
+import com.amazon.aws.cqlreplicator.models.PartitionToken;
 import com.amazon.aws.cqlreplicator.storage.*;
 import com.amazon.aws.cqlreplicator.task.AbstractTask;
+import com.amazon.aws.cqlreplicator.util.ConcurrentRangeScanner;
+import com.amazon.aws.cqlreplicator.util.TokenRangePlanner;
 import com.amazon.aws.cqlreplicator.util.Utils;
 import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
 import com.datastax.oss.driver.api.core.cql.Row;
@@ -13,13 +18,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
-import static com.amazon.aws.cqlreplicator.util.Utils.getDistributedRangesByTiles;
 
 /**
  * The {@code PartitionDiscoveryTask} class provides partition key synchronization between Cassandra
@@ -39,6 +50,11 @@ public class PartitionDiscoveryTask extends AbstractTask {
   private static SourceStorageOnCassandra sourceStorageOnCassandra;
   private static Map<String, LinkedHashMap<String, String>> metaData;
   private static LedgerStorageOnLevelDB ledgerStorageOnLevelDB;
+  private static ConcurrentRangeScanner<ImmutablePair<String, String>, Row> rangeScanner;
+  private static LeaseStore leaseStore;
+  private static WorkLeaseCoordinator workLeases;
+  private static long checkpointIntervalMillis;
+  private static boolean mergeDiff;
   private final Properties config;
 
   /**
@@ -53,14 +69,69 @@ public class PartitionDiscoveryTask extends AbstractTask {
     sourceStorageOnCassandra = new SourceStorageOnCassandra(config);
     metaData = sourceStorageOnCassandra.getMetaData();
     ledgerStorageOnLevelDB = new LedgerStorageOnLevelDB(config);
+    rangeScanner =
+        new ConcurrentRangeScanner<>(
+            Integer.parseInt(config.getProperty("DISCOVERY_MAX_IN_FLIGHT_RANGES", "8")),
+            Integer.parseInt(config.getProperty("DISCOVERY_MAX_IN_FLIGHT_RANGES_PER_NODE", "2")));
+    checkpointIntervalMillis =
+        Long.parseLong(config.getProperty("DISCOVERY_CHECKPOINT_INTERVAL_MS", "10000"));
+    if (Boolean.parseBoolean(config.getProperty("WORK_LEASES", "false"))) {
+      leaseStore =
+          config.getProperty("WORK_LEASE_STORE", "memcached").equals("file")
+              ? new FileLeaseStore(
+                  Path.of(
+                      config.getProperty(
+                          "WORK_LEASE_PATH",
+                          String.format("%s/leases", config.getProperty("LOCAL_STORAGE_PATH")))))
+              : new MemcachedLeaseStore(config);
+      leaseStore.connect();
+      workLeases =
+          new WorkLeaseCoordinator(
+              leaseStore,
+              String.format(
+                  "%s/%s", ManagementFactory.getRuntimeMXBean().getName(), UUID.randomUUID()),
+              Long.parseLong(config.getProperty("WORK_LEASE_DURATION_MS", "60000")));
+      workLeases.start();
+      LOGGER.info("Claiming token ranges by work leases as {}", workLeases.getOwner());
+    }
+    mergeDiff = Boolean.parseBoolean(config.getProperty("DISCOVERY_MERGE_DIFF", "false"));
+    if (mergeDiff && workLeases != null) {
+      // The index is local, ranges of other processes would be diffed against a stale index
+      LOGGER.warn("DISCOVERY_MERGE_DIFF is ignored with WORK_LEASES");
+      mergeDiff = false;
+    }
+    if (mergeDiff && !sourceStorageOnCassandra.isMurmur3Partitioner()) {
+      LOGGER.warn("DISCOVERY_MERGE_DIFF supports only Murmur3Partitioner and is ignored");
+      mergeDiff = false;
+    }
+  }
+
+  /** Releases the work leases held by this process, so other processes take over right away */
+  @Override
+  public void tearDown() {
+    if (workLeases != null) {
+      workLeases.tearDown();
+      leaseStore.tearDown();
+    }
   }
 
-  /** Scan and compare partition keys. */
+  /**
+   * Scan and compare partition keys.
+   *
+   * @param leased tells whether the range is still leased by this process, a range that lost its
+   *     lease is stopped before its next page
+   */
   private void scanAndCompare(
-      List<ImmutablePair<String, String>> rangeList, CacheStorage pkCache, String[] pks)
+      List<ImmutablePair<String, String>> rangeList,
+      int tile,
+      CacheStorage pkCache,
+      String[] pks,
+      ReplicationSettings settings,
+      Predicate<ImmutablePair<String, String>> leased)
       throws IOException, InterruptedException, ExecutionException, TimeoutException {
 
     AdvancedCache<String> advancedCache = null;
+    var totalChunks = String.format("%s|%s", tile, "totalChunks");
 
     if (pkCache instanceof MemcachedCacheStorage) {
       advancedCache =
@@ -68,83 +139,328 @@ public class PartitionDiscoveryTask extends AbstractTask {
             @Override
             protected void flush(List<String> payload, CacheStorage cacheStorage)
                 throws IOException, InterruptedException, ExecutionException, TimeoutException {
-              var totalChunks = String.format("%s|%s", config.getProperty("TILE"), "totalChunks");
-              var currentChunk = Integer.parseInt((String) cacheStorage.get(totalChunks));
-              LOGGER.debug("{}:{}", totalChunks, currentChunk);
               var cborPayload = Utils.cborEncoder(payload);
               var compressedCborPayload = Utils.compress(cborPayload);
-              var keyOfChunk =
-                  String.format("%s|%s|%s", "pksChunk", config.getProperty("TILE"), currentChunk);
-              pkCache.put(keyOfChunk, compressedCborPayload);
-              ((MemcachedCacheStorage) pkCache).incrByOne(totalChunks);
+              // Other processes may flush chunks of the same tile with work leases
+              var currentChunk =
+                  ((MemcachedCacheStorage) cacheStorage).appendChunk(tile, compressedCborPayload);
+              LOGGER.debug("{}:{}", totalChunks, currentChunk);
             }
           };
     }
 
-    boolean totalChunksExist =
-        pkCache.containsKey(String.format("%s|%s", config.getProperty("TILE"), "totalChunks"));
-    if (!totalChunksExist)
-      pkCache.put(String.format("%s|%s", config.getProperty("TILE"), "totalChunks"), "0");
+    boolean totalChunksExist = pkCache.containsKey(totalChunks);
+    if (!totalChunksExist) pkCache.put(totalChunks, "0");
 
     var pksStr = String.join(",", pks);
 
-    for (ImmutablePair<String, String> range : rangeList) {
-      var rangeStart = Long.parseLong(range.left);
-      var rangeEnd = Long.parseLong(range.right);
+    // Ranges completed by an interrupted pass are skipped, started ranges resume after their page
+    var checkpoint = ledgerStorageOnLevelDB.readDiscoveryCheckpoint(tile);
+    if (checkpoint == null) {
+      checkpoint = new DiscoveryCheckpoint();
+    } else {
+      LOGGER.info(
+          "Resuming the discovery of tile {} with {} completed and {} started ranges",
+          tile,
+          checkpoint.getCompleted(),
+          checkpoint.getStarted());
+    }
+    final var finalCheckpoint = checkpoint;
+    List<ImmutablePair<String, String>> pendingRanges = new ArrayList<>();
+    for (var range : rangeList) {
+      if (!checkpoint.isCompleted(getCheckpointRange(range))) {
+        pendingRanges.add(range);
+      }
+    }
+    var lastCheckpoint = new long[] {System.currentTimeMillis()};
+    Map<ImmutablePair<String, String>, PartitionKeyMergeDiff> diffs = new HashMap<>();
+    Map<ImmutablePair<String, String>, LedgerStorageOnLevelDB.PartitionTokenIterator> indexes =
+        new HashMap<>();
+    Set<ImmutablePair<String, String>> resumedRanges = new HashSet<>();
+    Set<String> vanishedKeys = new HashSet<>();
+
+    final var finalAdvancedCache = advancedCache;
+    // Ranges are read concurrently, their pages are compared on this thread as they arrive
+    try {
+      rangeScanner.scan(
+          pendingRanges,
+          range -> sourceStorageOnCassandra.getReplicas(Long.parseLong(range.right)),
+          range -> {
+            LOGGER.trace("Processing a range: {} - {}", range.left, range.right);
+            return findPartitions(
+                pksStr, range, finalCheckpoint.getPagingState(getCheckpointRange(range)));
+          },
+          (range, page) -> {
+            try {
+              var pagingState = page.getPagingState();
+              if (mergeDiff) {
+                var diff = diffs.get(range);
+                if (diff == null) {
+                  var start = Long.parseLong(range.left);
+                  var end = Long.parseLong(range.right);
+                  // A range that wraps around the ring is only bounded by its start
+                  var index =
+                      ledgerStorageOnLevelDB.readPartitionTokens(
+                          tile, start, start <= end ? end : Long.MAX_VALUE);
+                  indexes.put(range, index);
+                  if (finalCheckpoint.getPagingState(getCheckpointRange(range)) != null) {
+                    resumedRanges.add(range);
+                  }
+                  diff = new PartitionKeyMergeDiff(index, resumedRanges.contains(range));
+                  diffs.put(range, diff);
+                }
+                var indexed =
+                    ledgerStorageOnLevelDB.isRangeIndexed(tile, getCheckpointRange(range));
+                compareByIndex(
+                    page.getRows(),
+                    diff,
+                    pagingState == null,
+                    indexed,
+                    tile,
+                    pkCache,
+                    pks,
+                    finalAdvancedCache,
+                    settings,
+                    vanishedKeys);
+                if (pagingState == null) {
+                  diffs.remove(range);
+                  indexes.remove(range).close();
+                  // Only a whole pass in token order vouches for every key of the range
+                  if (diff.isOrdered() && !resumedRanges.remove(range)) {
+                    ledgerStorageOnLevelDB.writeRangeIndexed(tile, getCheckpointRange(range));
+                  }
+                }
+              } else {
+                compare(page.getRows(), tile, pkCache, pks, finalAdvancedCache, settings);
+              }
+              if (pagingState == null) {
+                finalCheckpoint.complete(getCheckpointRange(range));
+              } else {
+                var bytes = new byte[pagingState.remaining()];
+                pagingState.duplicate().get(bytes);
+                finalCheckpoint.advance(getCheckpointRange(range), bytes);
+              }
+              if (checkpointIntervalMillis > 0
+                  && System.currentTimeMillis() - lastCheckpoint[0] >= checkpointIntervalMillis) {
+                // Keys of the checkpointed pages must be in their chunks before they are skipped
+                if (finalAdvancedCache != null && finalAdvancedCache.getSize() > 0) {
+                  finalAdvancedCache.doFlush();
+                }
+                ledgerStorageOnLevelDB.writeDiscoveryCheckpoint(tile, finalCheckpoint);
+                lastCheckpoint[0] = System.currentTimeMillis();
+              }
+            } catch (IOException | InterruptedException | ExecutionException | TimeoutException e) {
+              throw new RuntimeException(e);
+            }
+          },
+          leased);
+    } finally {
+      for (var index : indexes.values()) {
+        index.close();
+      }
+    }
 
-      var resultSetRange =
-          sourceStorageOnCassandra.findPartitionsByTokenRange(pksStr, rangeStart, rangeEnd);
+    if (advancedCache != null && advancedCache.getSize() > 0) {
+      LOGGER.info("Flushing remainders: {}", advancedCache.getSize());
+      advancedCache.doFlush();
+    }
+    if (advancedCache != null && !vanishedKeys.isEmpty()) {
+      // The merge diff runs without work leases, no other process appends to the chunks
+      var chunks = Integer.parseInt(((String) pkCache.get(totalChunks)).trim());
+      var removed = removeFromChunks(pkCache, tile, chunks, vanishedKeys);
+      LOGGER.info("Removed {} deleted partition keys from the chunks of tile {}", removed, tile);
+    }
 
-      LOGGER.trace("Processing a range: {} - {}", rangeStart, rangeEnd);
-      for (Row eachResult : resultSetRange) {
-        var i = 0;
-        List<String> tmp = new ArrayList<>();
+    List<String> checkpointRanges = new ArrayList<>(rangeList.size());
+    for (var range : rangeList) {
+      checkpointRanges.add(getCheckpointRange(range));
+    }
+    checkpoint.removeAll(checkpointRanges);
+    if (checkpoint.isEmpty()) {
+      ledgerStorageOnLevelDB.deleteDiscoveryCheckpoint(tile);
+    } else {
+      // Ranges of other lease batches of the tile keep their progress
+      ledgerStorageOnLevelDB.writeDiscoveryCheckpoint(tile, checkpoint);
+    }
 
-        for (String cl : pks) {
-          var type = metaData.get("partition_key").get(cl);
-          tmp.add(String.valueOf(eachResult.get(pks[i], Utils.getClassType(type.toUpperCase()))));
-          i++;
-        }
+    LOGGER.info("Comparing stage is running");
+  }
 
-        var res = String.join("|", tmp);
-        var flag = pkCache.containsKey(res);
+  private static String getCheckpointRange(ImmutablePair<String, String> range) {
+    return String.format("%s|%s", range.left, range.right);
+  }
 
-        if (!flag) {
-          pkCache.add(
-              Integer.parseInt(config.getProperty("TILE")), res, Instant.now().toEpochMilli());
+  /** Starts a range at its paging state, or from the start if the paging state is rejected */
+  private CompletionStage<ConcurrentRangeScanner.Page<Row>> findPartitions(
+      String pksStr, ImmutablePair<String, String> range, byte[] pagingState) {
+    var start = Long.parseLong(range.left);
+    var end = Long.parseLong(range.right);
+    if (pagingState == null) {
+      return sourceStorageOnCassandra.findPartitionsByTokenRangeAsync(pksStr, start, end);
+    }
+    return sourceStorageOnCassandra
+        .findPartitionsByTokenRangeAsync(pksStr, start, end, ByteBuffer.wrap(pagingState))
+        .handle(
+            (page, error) -> {
+              if (error == null) {
+                return CompletableFuture.completedFuture(page);
+              }
+              LOGGER.warn(
+                  "Unable to resume the range {} - {}, scanning it from the start",
+                  range.left,
+                  range.right,
+                  error);
+              return sourceStorageOnCassandra.findPartitionsByTokenRangeAsync(pksStr, start, end);
+            })
+        .thenCompose(page -> page);
+  }
 
-          var partitionMetaData =
-              new PartitionMetaData(
-                  Integer.parseInt(config.getProperty("TILE")),
-                  config.getProperty("TARGET_KEYSPACE"),
-                  config.getProperty("TARGET_TABLE"),
-                  res);
+  private static String getPartitionKey(Row row, String[] pks) {
+    List<String> values = new ArrayList<>(pks.length);
+    for (String cl : pks) {
+      var type = metaData.get("partition_key").get(cl);
+      values.add(String.valueOf(row.get(cl, Utils.getClassType(type.toUpperCase()))));
+    }
+    return String.join("|", values);
+  }
 
-          syncPartitionKeys(partitionMetaData);
+  /**
+   * Diffs a page of a range with the partition token index of the ledger. New partition keys are
+   * added like by compare, vanished partition keys are removed from the cache and the ledger if
+   * deletes are replicated. Until a pass over the range completed with the index, new keys are
+   * checked against the cache, they may have been discovered before the index existed.
+   *
+   * @param lastPage finishes the diff of the range
+   * @param vanishedKeys collects the removed partition keys, to remove them from the chunks
+   */
+  private void compareByIndex(
+      Iterable<Row> rows,
+      PartitionKeyMergeDiff diff,
+      boolean lastPage,
+      boolean indexed,
+      int tile,
+      CacheStorage pkCache,
+      String[] pks,
+      AdvancedCache<String> advancedCache,
+      ReplicationSettings settings,
+      Set<String> vanishedKeys)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    List<PartitionToken> newKeys = new ArrayList<>();
+    List<PartitionToken> vanishedKeys = new ArrayList<>();
+    for (Row row : rows) {
+      diff.next(
+          sourceStorageOnCassandra.getToken(row, pks),
+          getPartitionKey(row, pks),
+          newKeys::add,
+          vanishedKeys::add);
+    }
+    if (lastPage) {
+      diff.finish(newKeys::add, vanishedKeys::add);
+    }
 
-          if (advancedCache != null) advancedCache.put(partitionMetaData.getPk());
+    for (var partition : newKeys) {
+      var res = partition.getPartitionKey();
+      // Ranges share their boundary tokens
+      if (ledgerStorageOnLevelDB.containsPartitionToken(tile, partition.getToken(), res)) {
+        continue;
+      }
+      if (indexed || !pkCache.containsKey(res)) {
+        pkCache.add(tile, res, Instant.now().toEpochMilli());
+        var partitionMetaData =
+            new PartitionMetaData(
+                tile, settings.getTargetKeyspace(), settings.getTargetTable(), res);
+        syncPartitionKeys(partitionMetaData);
+        if (advancedCache != null) advancedCache.put(partitionMetaData.getPk());
+        LOGGER.debug("Syncing a new partition key: {}", res);
+      }
+      ledgerStorageOnLevelDB.writePartitionToken(tile, partition.getToken(), res);
+    }
+
+    if (!settings.isReplicateDeletes()) {
+      return;
+    }
+    for (var partition : vanishedKeys) {
+      var res = partition.getPartitionKey();
+      LOGGER.debug("Found deleted partition key {}", res);
+      pkCache.remove(tile, res);
+      ledgerStorageOnLevelDB.deletePartitionMetadata(
+          new PartitionMetaData(
+              tile, settings.getTargetKeyspace(), settings.getTargetTable(), res));
+      ledgerStorageOnLevelDB.deletePartitionToken(tile, partition.getToken(), res);
+      vanishedKeys.add(res);
+    }
+  }
 
-          LOGGER.debug("Syncing a new partition key: {}", res);
+  /**
+   * Rewrites the chunks of the tile without the partition keys, like deletePartitions, so the
+   * replication stops reading them and a partition that reappears is in the chunks only once
+   *
+   * @return the number of keys removed from the chunks
+   */
+  static int removeFromChunks(
+      CacheStorage pkCache, int tile, int totalChunks, Set<String> partitionKeys)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    var removed = 0;
+    for (int chunk = 0; chunk < totalChunks; chunk++) {
+      var keyOfChunk = String.format("%s|%s|%s", "pksChunk", tile, chunk);
+      var compressedPayload = (byte[]) pkCache.get(keyOfChunk);
+      if (compressedPayload == null) {
+        continue;
+      }
+      var collection = Utils.cborDecoder(Utils.decompress(compressedPayload));
+      List<Object> remaining = new ArrayList<>(collection.size());
+      for (var key : collection) {
+        if (!partitionKeys.contains(key)) {
+          remaining.add(key);
         }
       }
+      if (remaining.size() < collection.size()) {
+        removed += collection.size() - remaining.size();
+        // Emptied chunks are kept, the numbers of the following chunks don't change
+        pkCache.put(keyOfChunk, Utils.compress(Utils.cborEncoder(remaining)));
+      }
     }
+    return removed;
+  }
 
-    if (advancedCache != null && advancedCache.getSize() > 0) {
-      LOGGER.info("Flushing remainders: {}", advancedCache.getSize());
-      advancedCache.doFlush();
-    }
+  /** Adds the partition keys missing from the cache to the cache and to the ledger */
+  private void compare(
+      Iterable<Row> rows,
+      int tile,
+      CacheStorage pkCache,
+      String[] pks,
+      AdvancedCache<String> advancedCache,
+      ReplicationSettings settings)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    for (Row eachResult : rows) {
+      var res = getPartitionKey(eachResult, pks);
+      var flag = pkCache.containsKey(res);
 
-    LOGGER.info("Comparing stage is running");
+      if (!flag) {
+        pkCache.add(tile, res, Instant.now().toEpochMilli());
+
+        var partitionMetaData =
+            new PartitionMetaData(
+                tile, settings.getTargetKeyspace(), settings.getTargetTable(), res);
+
+        syncPartitionKeys(partitionMetaData);
+
+        if (advancedCache != null) advancedCache.put(partitionMetaData.getPk());
+
+        LOGGER.debug("Syncing a new partition key: {}", res);
+      }
+    }
   }
 
   private void syncPartitionKeys(PartitionMetaData partitionMetaData) {
     ledgerStorageOnLevelDB.writePartitionMetadata(partitionMetaData);
   }
 
-  private void deletePartitions(String[] pks, CacheStorage pkCache, int chunk)
+  private void deletePartitions(
+      String[] pks, CacheStorage pkCache, int tile, int chunk, ReplicationSettings settings)
       throws IOException, InterruptedException, ExecutionException, TimeoutException {
 
-    var keyOfChunkFirst = String.format("%s|%s|%s", "pksChunk", config.getProperty("TILE"), chunk);
+    var keyOfChunkFirst = String.format("%s|%s|%s", "pksChunk", tile, chunk);
     var compressedPayloadFirst = (byte[]) pkCache.get(keyOfChunkFirst);
     var cborPayloadFirst = Utils.decompress(compressedPayloadFirst);
     var collection = Utils.cborDecoder(cborPayloadFirst);
@@ -182,7 +498,7 @@ public class PartitionDiscoveryTask extends AbstractTask {
             // Remove partition key from the cache
             if (pkCache instanceof MemcachedCacheStorage) {
               try {
-                pkCache.remove(Integer.parseInt(config.getProperty("TILE")), (key));
+                pkCache.remove(tile, (key));
               } catch (InterruptedException | ExecutionException | TimeoutException e) {
                 throw new RuntimeException(e);
               }
@@ -192,9 +508,9 @@ public class PartitionDiscoveryTask extends AbstractTask {
             // Delete partition from Ledger
             ledgerStorageOnLevelDB.deletePartitionMetadata(
                 new PartitionMetaData(
-                    Integer.parseInt(config.getProperty("TILE")),
-                    config.getProperty("TARGET_KEYSPACE"),
-                    config.getProperty("TARGET_TABLE"),
+                    tile,
+                    settings.getTargetKeyspace(),
+                    settings.getTargetTable(),
                     (String) key));
           }
         });
@@ -202,12 +518,12 @@ public class PartitionDiscoveryTask extends AbstractTask {
     if (finalClonedCollection.size() < collection.size()) {
       var cborPayload = Utils.cborEncoder(finalClonedCollection);
       var compressedPayload = Utils.compress(cborPayload);
-      var keyOfChunk = String.format("%s|%s|%s", "pksChunk", config.getProperty("TILE"), chunk);
+      var keyOfChunk = String.format("%s|%s|%s", "pksChunk", tile, chunk);
       pkCache.put(keyOfChunk, compressedPayload);
     }
 
     if (finalClonedCollection.size() == 0) {
-      var keyOfChunk = String.format("%s|%s", config.getProperty("TILE"), "totalChunks");
+      var keyOfChunk = String.format("%s|%s", tile, "totalChunks");
       ((MemcachedCacheStorage) pkCache).decrByOne(keyOfChunk);
     }
   }
@@ -217,20 +533,114 @@ public class PartitionDiscoveryTask extends AbstractTask {
    *
    * @params rangeList, pkCache, pks the array to be sorted
    */
-  private void scanAndRemove(CacheStorage pkCache, String[] pks, Utils.CassandraTaskTypes taskName)
+  private void scanAndRemove(
+      int tile,
+      CacheStorage pkCache,
+      String[] pks,
+      Utils.CassandraTaskTypes taskName,
+      ReplicationSettings settings)
       throws IOException, InterruptedException, ExecutionException, TimeoutException {
 
     if (taskName.equals(Utils.CassandraTaskTypes.SYNC_DELETED_PARTITION_KEYS)) {
       LOGGER.info("Syncing deleted partition keys between C* and Amazon Keyspaces");
       if (pkCache instanceof MemcachedCacheStorage) {
-        var totalChunks = String.format("%s|%s", config.getProperty("TILE"), "totalChunks");
+        var totalChunks = String.format("%s|%s", tile, "totalChunks");
         var chunks = Integer.parseInt(((String) pkCache.get(totalChunks)).trim());
         // remove each chunk of partition keys
         for (int chunk = 0; chunk < chunks; chunk++) {
-          deletePartitions(pks, pkCache, chunk);
+          deletePartitions(pks, pkCache, tile, chunk, settings);
+        }
+      }
+    }
+  }
+
+  private static String getRangeUnit(int tile, ImmutablePair<String, String> range) {
+    return String.format("ranges|%s|%s|%s", tile, range.left, range.right);
+  }
+
+  /**
+   * Scans the ranges of every tile as work units leased from the other discovery processes. A
+   * range keeps the tile of the plan, so its partition keys go to the chunks that the replication
+   * of the tile reads no matter which process found them. A pass ends when no unit is due.
+   */
+  private void performLeasedUnits(
+      List<List<ImmutablePair<String, String>>> tiles,
+      CacheStorage pkCache,
+      String[] pks,
+      Utils.CassandraTaskTypes taskName,
+      ReplicationSettings settings)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    Map<String, Integer> tileOfUnit = new HashMap<>();
+    Map<String, ImmutablePair<String, String>> rangeOfUnit = new HashMap<>();
+    List<String> rangeUnits = new ArrayList<>();
+    List<String> deleteUnits = new ArrayList<>();
+    for (int tile = 0; tile < tiles.size(); tile++) {
+      for (var range : tiles.get(tile)) {
+        var unit = getRangeUnit(tile, range);
+        tileOfUnit.put(unit, tile);
+        rangeOfUnit.put(unit, range);
+        rangeUnits.add(unit);
+      }
+      var unit = String.format("deletes|%s", tile);
+      tileOfUnit.put(unit, tile);
+      deleteUnits.add(unit);
+    }
+    var dueInMillis =
+        TimeUnit.SECONDS.toMillis(Long.parseLong(config.getProperty("POOLING_PERIOD")));
+    var batch = Integer.parseInt(config.getProperty("DISCOVERY_MAX_IN_FLIGHT_RANGES", "8"));
+
+    var scanned = 0;
+    for (var units = workLeases.claim(rangeUnits, batch);
+        !units.isEmpty();
+        units = workLeases.claim(rangeUnits, batch)) {
+      Map<Integer, List<ImmutablePair<String, String>>> rangesByTile = new TreeMap<>();
+      for (var unit : units) {
+        rangesByTile
+            .computeIfAbsent(tileOfUnit.get(unit), tile -> new ArrayList<>())
+            .add(rangeOfUnit.get(unit));
+      }
+      try {
+        for (var entry : rangesByTile.entrySet()) {
+          int tile = entry.getKey();
+          scanAndCompare(
+              entry.getValue(),
+              tile,
+              pkCache,
+              pks,
+              settings,
+              range -> workLeases.isHeld(getRangeUnit(tile, range)));
+        }
+      } catch (Exception e) {
+        // Another process may scan the units right away
+        for (var unit : units) {
+          workLeases.release(unit);
+        }
+        throw e;
+      }
+      for (var unit : units) {
+        if (workLeases.complete(unit, dueInMillis)) {
+          scanned++;
+        } else {
+          LOGGER.warn("Stopped the scan of {} after its lease was lost", unit);
         }
       }
     }
+    LOGGER.info("The number of ranges scanned by this process: {}", scanned);
+
+    if (settings.isReplicateDeletes()) {
+      for (var units = workLeases.claim(deleteUnits, 1);
+          !units.isEmpty();
+          units = workLeases.claim(deleteUnits, 1)) {
+        var unit = units.get(0);
+        try {
+          scanAndRemove(tileOfUnit.get(unit), pkCache, pks, taskName, settings);
+        } catch (Exception e) {
+          workLeases.release(unit);
+          throw e;
+        }
+        workLeases.complete(unit, dueInMillis);
+      }
+    }
   }
 
   /**
@@ -243,12 +653,19 @@ public class PartitionDiscoveryTask extends AbstractTask {
       throws IOException, InterruptedException, ExecutionException, TimeoutException {
 
     var pks = metaData.get("partition_key").keySet().toArray(new String[0]);
+    var settings = ReplicationSettings.get();
 
     List<ImmutablePair<String, String>> ranges = sourceStorageOnCassandra.getTokenRanges();
     var totalRanges = ranges.size();
     List<List<ImmutablePair<String, String>>> tiles =
-        getDistributedRangesByTiles(ranges, Integer.parseInt(config.getProperty("TILES")));
-    var currentTile = Integer.parseInt(config.getProperty("TILE"));
+        TokenRangePlanner.getRangesByTiles(
+            config, settings.getTiles(), ranges, sourceStorageOnCassandra::getSizeEstimates);
+    if (workLeases != null) {
+      LOGGER.info("The number of ranges in the cassandra: {}", totalRanges);
+      performLeasedUnits(tiles, (CacheStorage<String, Long>) pkCache, pks, taskName, settings);
+      return;
+    }
+    var currentTile = settings.getTile();
     List<ImmutablePair<String, String>> rangeList = tiles.get(currentTile);
 
     // if tiles = 0 we need to scan one range from one pkScanner, if tiles>0 we need to scan all
@@ -258,14 +675,21 @@ public class PartitionDiscoveryTask extends AbstractTask {
     LOGGER.info("The number of tiles: {}", tiles.size());
     LOGGER.info("The current tile: {}", currentTile);
 
-    scanAndCompare(rangeList, (CacheStorage<String, Long>) pkCache, pks);
-    if (config.getProperty("REPLICATE_DELETES").equals("true")) {
-      scanAndRemove((CacheStorage<String, Long>) pkCache, pks, taskName);
+    scanAndCompare(
+        rangeList,
+        currentTile,
+        (CacheStorage<String, Long>) pkCache,
+        pks,
+        settings,
+        range -> true);
+    // The merge diff removes vanished partition keys while it scans
+    if (settings.isReplicateDeletes() && !mergeDiff) {
+      scanAndRemove(currentTile, (CacheStorage<String, Long>) pkCache, pks, taskName, settings);
     }
 
     LOGGER.info("Caching and comparing stage is completed");
     LOGGER.info(
         "The number of pre-loaded elements in the cache is {} ",
-        pkCache.getSize(Integer.parseInt(config.getProperty("TILE"))));
+        pkCache.getSize(settings.getTile()));
   }
 }
@@ -0,0 +1,109 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.models.PartitionToken;
+import com.datastax.oss.driver.shaded.guava.common.collect.Iterators;
+import com.datastax.oss.driver.shaded.guava.common.collect.PeekingIterator;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Diffs the partition keys of a token range, as the source returns them in token order, with the
+ * partition token index iterated in the same order. Source keys missing from the index are
+ * reported as new, index keys that the source skipped as vanished. Keys that share a token are
+ * compared as a set, their order within the token differs between the source and the index.
+ *
+ * <p>A diff of a range resumed in the middle doesn't report the index keys before the first
+ * source key, and the diff stops reporting vanished keys as soon as a source key is out of token
+ * order.
+ */
+class PartitionKeyMergeDiff {
+
+  private final PeekingIterator<PartitionToken> index;
+  private final Set<String> keysOfToken = new HashSet<>();
+  private boolean resumed;
+  private boolean started;
+  private boolean ordered = true;
+  private long token;
+
+  PartitionKeyMergeDiff(final Iterator<PartitionToken> index, final boolean resumed) {
+    this.index = Iterators.peekingIterator(index);
+    this.resumed = resumed;
+  }
+
+  boolean isOrdered() {
+    return ordered;
+  }
+
+  /** Advances the diff to the next source key */
+  void next(
+      long token,
+      String partitionKey,
+      Consumer<PartitionToken> newKeys,
+      Consumer<PartitionToken> vanishedKeys) {
+    if (!ordered) {
+      newKeys.accept(new PartitionToken(token, partitionKey));
+      return;
+    }
+    if (resumed) {
+      while (index.hasNext() && index.peek().getToken() < token) {
+        index.next();
+      }
+      resumed = false;
+    }
+    if (started && token != this.token) {
+      if (token < this.token) {
+        ordered = false;
+        diffToken(newKeys, ignored -> {});
+        newKeys.accept(new PartitionToken(token, partitionKey));
+        return;
+      }
+      diffToken(newKeys, vanishedKeys);
+    }
+    started = true;
+    this.token = token;
+    keysOfToken.add(partitionKey);
+  }
+
+  /** Reports the keys of the last token and the index keys after it */
+  void finish(Consumer<PartitionToken> newKeys, Consumer<PartitionToken> vanishedKeys) {
+    if (!ordered) {
+      return;
+    }
+    if (started) {
+      diffToken(newKeys, vanishedKeys);
+    } else if (resumed) {
+      // Nothing is known about the range after the resumed page
+      return;
+    }
+    while (index.hasNext()) {
+      vanishedKeys.accept(index.next());
+    }
+  }
+
+  private void diffToken(Consumer<PartitionToken> newKeys, Consumer<PartitionToken> vanishedKeys) {
+    while (index.hasNext() && index.peek().getToken() < token) {
+      vanishedKeys.accept(index.next());
+    }
+    Set<String> known = new HashSet<>();
+    while (index.hasNext() && index.peek().getToken() == token) {
+      var indexed = index.next();
+      if (keysOfToken.contains(indexed.getPartitionKey())) {
+        known.add(indexed.getPartitionKey());
+      } else {
+        vanishedKeys.accept(indexed);
+      }
+    }
+    for (var key : keysOfToken) {
+      if (!known.contains(key)) {
+        newKeys.accept(new PartitionToken(token, key));
+      }
+    }
+    keysOfToken.clear();
+    started = false;
+  }
+}
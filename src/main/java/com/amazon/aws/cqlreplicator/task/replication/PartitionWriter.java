@@ -0,0 +1,251 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.models.LedgerMetaData;
+import com.amazon.aws.cqlreplicator.storage.LedgerStorageOnLevelDB;
+import com.amazon.aws.cqlreplicator.storage.TargetStorageOnKeyspaces;
+import com.amazon.aws.cqlreplicator.util.InFlightWindow;
+import com.amazon.aws.cqlreplicator.util.FlushingList;
+import com.amazon.aws.cqlreplicator.util.StatsCounter;
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writes the changed rows of one partition to Amazon Keyspaces and commits them to the ledger.
+ * Rows are written one by one or as size-bounded unlogged batches of the partition, either
+ * synchronously or asynchronously within an in-flight window.
+ */
+class PartitionWriter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PartitionWriter.class);
+  private final Target targetStorage;
+  private final Ledger ledgerStorage;
+  private final StatsCounter statsCounter;
+  private final InFlightWindow.PartitionWindow partitionWindow;
+  private final Executor commitExecutor;
+  private final FlushingList<RowMutation> batch;
+
+  /**
+   * @param partitionWindow window of asynchronous writes, or null to write synchronously
+   * @param batchMaxRows maximum number of rows per batch, or 0 to write rows one by one
+   */
+  PartitionWriter(
+      final TargetStorageOnKeyspaces targetStorage,
+      final LedgerStorageOnLevelDB ledgerStorage,
+      final StatsCounter statsCounter,
+      final InFlightWindow.PartitionWindow partitionWindow,
+      final Executor commitExecutor,
+      final int batchMaxRows,
+      final long batchMaxBytes) {
+    this(
+        new Target() {
+          @Override
+          public boolean write(Statement<?> statement) {
+            return targetStorage.write(statement);
+          }
+
+          @Override
+          public CompletionStage<Boolean> writeAsync(Statement<?> statement) {
+            return targetStorage.writeAsync(statement);
+          }
+        },
+        ledgerStorage::writeRowMetadata,
+        statsCounter,
+        partitionWindow,
+        commitExecutor,
+        batchMaxRows,
+        batchMaxBytes);
+  }
+
+  PartitionWriter(
+      final Target targetStorage,
+      final Ledger ledgerStorage,
+      final StatsCounter statsCounter,
+      final InFlightWindow.PartitionWindow partitionWindow,
+      final Executor commitExecutor,
+      final int batchMaxRows,
+      final long batchMaxBytes) {
+    this.targetStorage = targetStorage;
+    this.ledgerStorage = ledgerStorage;
+    this.statsCounter = statsCounter;
+    this.partitionWindow = partitionWindow;
+    // A write that completes after the executor is shut down still releases its window
+    this.commitExecutor =
+        commitExecutor == null
+            ? null
+            : command -> {
+              try {
+                commitExecutor.execute(command);
+              } catch (RejectedExecutionException e) {
+                command.run();
+              }
+            };
+    if (batchMaxRows > 1) {
+      this.batch =
+          new FlushingList<>(
+              batchMaxRows, batchMaxBytes, mutation -> sizeOf(mutation.getStatement())) {
+            @Override
+            protected void flush(List<RowMutation> payload) {
+              try {
+                submit(payload);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            }
+          };
+    } else {
+      this.batch = null;
+    }
+  }
+
+  private static long sizeOf(BoundStatement statement) {
+    long size = 0;
+    for (int i = 0; i < statement.size(); i++) {
+      var value = statement.getBytesUnsafe(i);
+      if (value != null) {
+        size += value.remaining();
+      }
+    }
+    return size;
+  }
+
+  public void write(
+      final BoundStatement statement, final LedgerMetaData ledgerMetaData, final String ops)
+      throws IOException {
+    var mutation = new RowMutation(statement, ledgerMetaData, ops);
+    if (batch != null) {
+      try {
+        batch.put(mutation);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    } else {
+      submit(Collections.singletonList(mutation));
+    }
+  }
+
+  /** Flushes the pending batch and waits for the asynchronous writes of the partition */
+  public void flush() throws IOException, InterruptedException {
+    if (batch != null && batch.getSize() > 0) {
+      try {
+        batch.doFlush();
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+    if (partitionWindow != null) {
+      partitionWindow.awaitCompletion();
+    }
+  }
+
+  private void submit(List<RowMutation> mutations) throws IOException {
+    Statement<?> statement;
+    if (mutations.size() == 1) {
+      statement = mutations.get(0).getStatement();
+    } else {
+      List<BatchableStatement<?>> statements = new ArrayList<>(mutations.size());
+      for (var mutation : mutations) {
+        statements.add(mutation.getStatement());
+      }
+      statement =
+          BatchStatement.newInstance(DefaultBatchType.UNLOGGED, statements)
+              .setIdempotent(true)
+              .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+    }
+
+    if (partitionWindow == null) {
+      if (targetStorage.write(statement)) {
+        commit(mutations);
+      }
+      return;
+    }
+
+    try {
+      partitionWindow.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    CompletionStage<Boolean> write;
+    try {
+      write = targetStorage.writeAsync(statement);
+    } catch (RuntimeException e) {
+      partitionWindow.release();
+      throw e;
+    }
+    write.whenCompleteAsync(
+        (result, e) -> {
+          try {
+            if (Boolean.TRUE.equals(result)) {
+              commit(mutations);
+            }
+          } catch (IOException ex) {
+            LOGGER.error("Unable to update the ledger for {} rows", mutations.size(), ex);
+          } finally {
+            partitionWindow.release();
+          }
+        },
+        commitExecutor);
+  }
+
+  private void commit(List<RowMutation> mutations) throws IOException {
+    List<LedgerMetaData> rows = new ArrayList<>(mutations.size());
+    for (var mutation : mutations) {
+      rows.add(mutation.getLedgerMetaData());
+    }
+    ledgerStorage.writeRowMetadata(rows);
+    for (var mutation : mutations) {
+      statsCounter.incrementStat(mutation.getOps());
+    }
+  }
+
+  /** Writes statements to Amazon Keyspaces, see TargetStorageOnKeyspaces */
+  interface Target {
+    boolean write(Statement<?> statement);
+
+    CompletionStage<Boolean> writeAsync(Statement<?> statement);
+  }
+
+  /** Commits the rows written to Amazon Keyspaces, see LedgerStorageOnLevelDB */
+  interface Ledger {
+    void writeRowMetadata(List<LedgerMetaData> rows) throws IOException;
+  }
+
+  /** A row of the partition with its ledger entry and its operation type */
+  static class RowMutation {
+    private final BoundStatement statement;
+    private final LedgerMetaData ledgerMetaData;
+    private final String ops;
+
+    RowMutation(
+        final BoundStatement statement, final LedgerMetaData ledgerMetaData, final String ops) {
+      this.statement = statement;
+      this.ledgerMetaData = ledgerMetaData;
+      this.ops = ops;
+    }
+
+    BoundStatement getStatement() {
+      return statement;
+    }
+
+    LedgerMetaData getLedgerMetaData() {
+      return ledgerMetaData;
+    }
+
+    String getOps() {
+      return ops;
+    }
+  }
+}
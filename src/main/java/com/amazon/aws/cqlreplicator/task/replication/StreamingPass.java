@@ -0,0 +1,139 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.util.BoundedTaskScheduler;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Passes of the continuous mode. A pass schedules the partitions of the tile on a long-lived
+ * scheduler without waiting for them, deletes are reconciled and stats are flushed on their own,
+ * slower schedules.
+ */
+class StreamingPass {
+
+  /** Steps of a pass that read the source and write the target */
+  interface Steps {
+    /** Schedules the partitions of the tile with {@link StreamingPass#schedule} */
+    void schedulePartitions(StreamingPass pass) throws IOException;
+
+    void replicateDeletes();
+
+    void persistStats();
+  }
+
+  private final BoundedTaskScheduler scheduler;
+  // Scheduled partitions that haven't completed yet, shared with the change feed
+  private final Set<String> inFlightPartitions;
+  private final long deleteIntervalNanos;
+  private final long statsIntervalNanos;
+  private final LongSupplier nanoTime;
+  private long lastDeleteReconciliation;
+  private long lastStatsFlush;
+  private volatile boolean shutdown;
+
+  StreamingPass(
+      BoundedTaskScheduler scheduler,
+      Set<String> inFlightPartitions,
+      long deleteIntervalNanos,
+      long statsIntervalNanos,
+      LongSupplier nanoTime) {
+    this.scheduler = scheduler;
+    this.inFlightPartitions = inFlightPartitions;
+    this.deleteIntervalNanos = deleteIntervalNanos;
+    this.statsIntervalNanos = statsIntervalNanos;
+    this.nanoTime = nanoTime;
+    this.lastDeleteReconciliation = nanoTime.getAsLong();
+    this.lastStatsFlush = lastDeleteReconciliation;
+  }
+
+  /**
+   * Runs a pass, deletes are reconciled once the scheduled partitions are replicated if {@code
+   * awaitBeforeDeletes} is set
+   */
+  void run(Steps steps, boolean awaitBeforeDeletes) throws IOException, InterruptedException {
+    if (shutdown) {
+      return;
+    }
+    steps.schedulePartitions(this);
+
+    if (nanoTime.getAsLong() - lastDeleteReconciliation >= deleteIntervalNanos) {
+      if (awaitBeforeDeletes) {
+        scheduler.awaitQuiescence();
+      }
+      steps.replicateDeletes();
+      lastDeleteReconciliation = nanoTime.getAsLong();
+    }
+    if (nanoTime.getAsLong() - lastStatsFlush >= statsIntervalNanos) {
+      steps.persistStats();
+      lastStatsFlush = nanoTime.getAsLong();
+    }
+  }
+
+  /**
+   * Schedules the replication of a partition, a partition that is still in flight is skipped and
+   * picked up by a later pass
+   *
+   * @return false if the partition is skipped
+   */
+  boolean schedule(String partitionKey, Runnable replication) {
+    if (shutdown) {
+      return false;
+    }
+    return schedule(scheduler, inFlightPartitions, partitionKey, replication);
+  }
+
+  /**
+   * Schedules the replication of a partition unless it's in flight on any scheduler
+   *
+   * @return false if the partition is skipped
+   */
+  static boolean schedule(
+      BoundedTaskScheduler scheduler,
+      Set<String> inFlightPartitions,
+      String partitionKey,
+      Runnable replication) {
+    if (!inFlightPartitions.add(partitionKey)) {
+      return false;
+    }
+    try {
+      scheduler.submit(
+          () -> {
+            try {
+              replication.run();
+            } finally {
+              inFlightPartitions.remove(partitionKey);
+            }
+          });
+    } catch (InterruptedException e) {
+      inFlightPartitions.remove(partitionKey);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (RuntimeException e) {
+      inFlightPartitions.remove(partitionKey);
+      throw e;
+    }
+    return true;
+  }
+
+  BoundedTaskScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Stops scheduling partitions and waits for the ones in flight
+   *
+   * @return false if partitions were still replicating when the timeout elapsed
+   */
+  boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    shutdown = true;
+    return scheduler.shutdown(timeout, unit);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.models.WorkLease;
+import com.amazon.aws.cqlreplicator.storage.LeaseStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out work units to the processes that share a lease store. A process claims units whose
+ * lease expired, renews its leases in the background while it works on them and marks a unit done
+ * by a lease without an owner that expires when the unit is due again. Units of a process that
+ * died are taken over once their leases expire, so processes can be added or removed at any time.
+ *
+ * <p>Lease expiry compares the clocks of different hosts, the lease duration must be well above
+ * their skew.
+ */
+public class WorkLeaseCoordinator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkLeaseCoordinator.class);
+  private final LeaseStore leaseStore;
+  private final String owner;
+  private final long leaseMillis;
+  private final LongSupplier clock;
+  private final Map<String, WorkLease> held = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            var thread = new Thread(runnable, "WorkLeaseRenewal");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public WorkLeaseCoordinator(
+      final LeaseStore leaseStore, final String owner, final long leaseMillis) {
+    this(leaseStore, owner, leaseMillis, System::currentTimeMillis);
+  }
+
+  WorkLeaseCoordinator(
+      final LeaseStore leaseStore,
+      final String owner,
+      final long leaseMillis,
+      final LongSupplier clock) {
+    this.leaseStore = leaseStore;
+    this.owner = owner;
+    this.leaseMillis = leaseMillis;
+    this.clock = clock;
+  }
+
+  /** Renews the held leases three times per lease duration */
+  public void start() {
+    var period = Math.max(1, leaseMillis / 3);
+    executor.scheduleWithFixedDelay(
+        () -> {
+          try {
+            renew();
+          } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to renew the work leases", e);
+          }
+        },
+        period,
+        period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops the renewals and gives the held units back, so other processes claim them right away */
+  public void tearDown() {
+    executor.shutdownNow();
+    for (var unit : new ArrayList<>(held.keySet())) {
+      try {
+        release(unit);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("Unable to release {}, it's claimed again once its lease expires", unit, e);
+      }
+    }
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  /**
+   * Claims up to max units that are due. Processes start looking at different units, so they
+   * rarely compete for the same unit.
+   */
+  public List<String> claim(List<String> units, int max) throws IOException {
+    List<String> claimed = new ArrayList<>();
+    if (units.isEmpty()) {
+      return claimed;
+    }
+    var offset = Math.floorMod(owner.hashCode(), units.size());
+    for (int i = 0; i < units.size() && claimed.size() < max; i++) {
+      var unit = units.get((offset + i) % units.size());
+      if (held.containsKey(unit)) {
+        continue;
+      }
+      var lease = leaseStore.get(unit);
+      var now = clock.getAsLong();
+      if (lease != null && !lease.isExpired(now)) {
+        continue;
+      }
+      var update = new WorkLease(owner, now + leaseMillis);
+      if (leaseStore.compareAndSet(unit, lease, update)) {
+        held.put(unit, update);
+        claimed.add(unit);
+        if (lease != null && !lease.getOwner().isEmpty() && !lease.isOwnedBy(owner)) {
+          LOGGER.info("Took over {} from {} after its lease expired", unit, lease.getOwner());
+        }
+      }
+    }
+    return claimed;
+  }
+
+  /** Marks the unit done, it's due again after the delay */
+  public boolean complete(String unit, long dueInMillis) throws IOException {
+    return finish(unit, clock.getAsLong() + dueInMillis);
+  }
+
+  /** Gives the unit back without completing it, another process may claim it right away */
+  public boolean release(String unit) throws IOException {
+    return finish(unit, clock.getAsLong());
+  }
+
+  public boolean isHeld(String unit) {
+    return held.containsKey(unit);
+  }
+
+  private synchronized boolean finish(String unit, long expiresAt) throws IOException {
+    var lease = held.remove(unit);
+    if (lease == null) {
+      return false;
+    }
+    if (!leaseStore.compareAndSet(unit, lease, new WorkLease(null, expiresAt))) {
+      LOGGER.warn("The lease of {} was lost before the unit was finished", unit);
+      return false;
+    }
+    return true;
+  }
+
+  synchronized void renew() throws IOException {
+    for (var entry : held.entrySet()) {
+      var update = new WorkLease(owner, clock.getAsLong() + leaseMillis);
+      if (leaseStore.compareAndSet(entry.getKey(), entry.getValue(), update)) {
+        entry.setValue(update);
+      } else {
+        held.remove(entry.getKey());
+        LOGGER.warn("The lease of {} was lost, another process took over the unit", entry.getKey());
+      }
+    }
+  }
+}
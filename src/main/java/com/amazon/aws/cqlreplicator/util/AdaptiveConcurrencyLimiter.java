@@ -0,0 +1,147 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of writes in flight with additive increase and multiplicative decrease. The
+ * latencies and errors of the writes are observed in windows of about one limit of requests. A
+ * window with a throttling or timeout error, or with a p99 latency above the threshold, cuts the
+ * limit by the backoff ratio. A window that used the limit raises it by one.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+  private static final int MIN_WINDOW = 20;
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdNanos;
+  private final double backoffRatio;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition permitReleased = lock.newCondition();
+  private final long[] latencies;
+  private int limit;
+  private int inFlight;
+  private int maxInFlight;
+  private int samples;
+  private int errors;
+
+  public AdaptiveConcurrencyLimiter(
+      final int minLimit,
+      final int maxLimit,
+      final int initialLimit,
+      final long latencyThresholdNanos,
+      final double backoffRatio) {
+    if (minLimit < 1 || maxLimit < minLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+      throw new IllegalArgumentException("Invalid concurrency limits");
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyThresholdNanos = latencyThresholdNanos;
+    this.backoffRatio = backoffRatio;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.latencies = new long[Math.max(maxLimit, MIN_WINDOW)];
+  }
+
+  /** Blocks while the writes in flight are at the limit */
+  public void acquire() throws InterruptedException {
+    lock.lock();
+    try {
+      while (inFlight >= limit) {
+        permitReleased.await();
+      }
+      inFlight++;
+      maxInFlight = Math.max(maxInFlight, inFlight);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void release() {
+    lock.lock();
+    try {
+      inFlight--;
+      permitReleased.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Observes one attempt of a write
+   *
+   * @param overloaded true if the attempt failed with a throttling or timeout error
+   */
+  public void onSample(long latencyNanos, boolean overloaded) {
+    lock.lock();
+    try {
+      if (overloaded) {
+        errors++;
+      } else {
+        latencies[samples - errors] = latencyNanos;
+      }
+      samples++;
+      if (samples >= Math.min(latencies.length, Math.max(limit, MIN_WINDOW))) {
+        adjust();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void adjust() {
+    var previous = limit;
+    var successes = samples - errors;
+    var p99 = 0L;
+    if (successes > 0) {
+      Arrays.sort(latencies, 0, successes);
+      p99 = latencies[Math.min(successes - 1, (int) Math.ceil(successes * 0.99) - 1)];
+    }
+    if (errors > 0 || p99 > latencyThresholdNanos) {
+      limit = Math.max(minLimit, (int) (limit * backoffRatio));
+    } else if (maxInFlight * 2 >= limit) {
+      // The limit is only raised while the writes are bounded by it
+      limit = Math.min(maxLimit, limit + 1);
+    }
+    if (limit != previous) {
+      LOGGER.debug(
+          "Concurrency limit {} -> {}, p99 {} ms, errors {}",
+          previous,
+          limit,
+          p99 / 1_000_000,
+          errors);
+      // A raised limit admits waiting writers
+      permitReleased.signalAll();
+    }
+    samples = 0;
+    errors = 0;
+    maxInFlight = inFlight;
+  }
+
+  public int getLimit() {
+    lock.lock();
+    try {
+      return limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
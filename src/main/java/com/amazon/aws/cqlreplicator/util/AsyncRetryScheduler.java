@@ -0,0 +1,156 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries asynchronous operations without blocking a thread: a failed attempt is submitted again by
+ * a shared scheduler after an exponential backoff with jitter. Retries of all operations draw from
+ * one budget that every operation refills by a fraction of a retry, so a throttled target sees at
+ * most that fraction of extra requests once the budget is spent.
+ */
+public class AsyncRetryScheduler {
+
+  private final ScheduledExecutorService scheduler;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final double multiplier;
+  private final long maxBackoffMillis;
+  private final RetryBudget budget;
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder exhausted = new LongAdder();
+
+  public AsyncRetryScheduler(
+      final ScheduledExecutorService scheduler,
+      final int maxAttempts,
+      final long initialBackoffMillis,
+      final double multiplier,
+      final long maxBackoffMillis,
+      final RetryBudget budget) {
+    this.scheduler = scheduler;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.multiplier = multiplier;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.budget = budget;
+  }
+
+  /**
+   * Runs the operation and retries it while it fails with a retryable error, the stage completes
+   * with the last error once the attempts or the budget are spent
+   */
+  public <T> CompletionStage<T> submit(
+      Supplier<CompletionStage<T>> operation, Predicate<Throwable> retryable) {
+    var result = new CompletableFuture<T>();
+    budget.deposit();
+    attempt(operation, retryable, result, 1);
+    return result;
+  }
+
+  private <T> void attempt(
+      Supplier<CompletionStage<T>> operation,
+      Predicate<Throwable> retryable,
+      CompletableFuture<T> result,
+      int attempt) {
+    CompletionStage<T> stage;
+    try {
+      stage = operation.get();
+    } catch (RuntimeException e) {
+      stage = CompletableFuture.failedFuture(e);
+    }
+    stage.whenComplete(
+        (value, e) -> {
+          if (e == null) {
+            result.complete(value);
+            return;
+          }
+          var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+          if (attempt >= maxAttempts || !retryable.test(cause)) {
+            result.completeExceptionally(cause);
+            return;
+          }
+          if (!budget.tryWithdraw()) {
+            exhausted.increment();
+            result.completeExceptionally(cause);
+            return;
+          }
+          retries.increment();
+          scheduler.schedule(
+              () -> attempt(operation, retryable, result, attempt + 1),
+              getBackoffMillis(attempt),
+              TimeUnit.MILLISECONDS);
+        });
+  }
+
+  /** Returns the backoff after the attempt, half of it is fixed and half of it is random */
+  long getBackoffMillis(int attempt) {
+    var ceiling =
+        (long) Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, attempt - 1));
+    var half = ceiling / 2;
+    return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+  }
+
+  public long getRetries() {
+    return retries.sum();
+  }
+
+  /** Returns the number of operations that failed because the retry budget was spent */
+  public long getExhausted() {
+    return exhausted.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "retries %s, budget exhausted %s, budget balance %.1f",
+        getRetries(), getExhausted(), budget.getBalance());
+  }
+
+  /** Retries allowed across operations: each operation deposits a ratio of a retry */
+  public static class RetryBudget {
+    private final double ratio;
+    private final double maxBalance;
+    private double balance;
+
+    /**
+     * @param ratio retries per operation in the long run
+     * @param maxBalance retries that can be spent in a burst, the budget starts full
+     */
+    public RetryBudget(final double ratio, final double maxBalance) {
+      if (ratio < 0 || maxBalance < 1) {
+        throw new IllegalArgumentException("Invalid retry budget");
+      }
+      this.ratio = ratio;
+      this.maxBalance = maxBalance;
+      this.balance = maxBalance;
+    }
+
+    public synchronized void deposit() {
+      balance = Math.min(maxBalance, balance + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+      if (balance < 1) {
+        return false;
+      }
+      balance--;
+      return true;
+    }
+
+    public synchronized double getBalance() {
+      return balance;
+    }
+  }
+}
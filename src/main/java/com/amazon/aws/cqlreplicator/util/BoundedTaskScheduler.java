@@ -0,0 +1,91 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Submits tasks to an executor with a bounded number of pending tasks. The producer is parked
+ * when the bound is reached instead of the task being dropped, so every submitted task runs
+ * exactly once.
+ */
+public class BoundedTaskScheduler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BoundedTaskScheduler.class);
+  private final ExecutorService executor;
+  private final Semaphore slots;
+  private final int capacity;
+  private final AtomicLong completedTasks = new AtomicLong();
+  private final AtomicLong failedTasks = new AtomicLong();
+
+  public BoundedTaskScheduler(final ExecutorService executor, final int capacity) {
+    this.executor = executor;
+    this.capacity = capacity;
+    this.slots = new Semaphore(capacity);
+  }
+
+  /** Submits the task, blocks while the scheduler is at capacity */
+  public void submit(final Runnable task) throws InterruptedException {
+    slots.acquire();
+    try {
+      executor.execute(
+          () -> {
+            try {
+              task.run();
+              completedTasks.incrementAndGet();
+            } catch (RuntimeException e) {
+              failedTasks.incrementAndGet();
+              LOGGER.error("Task failed", e);
+            } finally {
+              slots.release();
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      slots.release();
+      throw e;
+    }
+  }
+
+  /** Returns the number of submitted tasks that are queued or running */
+  public int getQueueDepth() {
+    return capacity - slots.availablePermits();
+  }
+
+  public long getCompletedTasks() {
+    return completedTasks.get();
+  }
+
+  public long getFailedTasks() {
+    return failedTasks.get();
+  }
+
+  /** Blocks until every submitted task is completed */
+  public void awaitQuiescence() throws InterruptedException {
+    slots.acquire(capacity);
+    slots.release(capacity);
+  }
+
+  public void shutdown() throws InterruptedException {
+    shutdown(Integer.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops accepting tasks and waits for the submitted ones
+   *
+   * @return false if tasks were still running when the timeout elapsed
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    executor.shutdown();
+    return executor.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Encodes clustering keys of the ledger ("v1|v2|...") into bytes whose unsigned order is the
+ * clustering order of the table, so the ledger can iterate a partition in the same order as the
+ * source returns its rows.
+ */
+public class ClusteringKeyCodec {
+
+  private static final Pattern REGEX_PIPE = Pattern.compile("\\|");
+  // Position of each clustering column in the ledger key, in clustering order
+  private final int[] positions;
+  private final String[] types;
+  private final boolean[] descending;
+  private final String signature;
+
+  private ClusteringKeyCodec(int[] positions, String[] types, boolean[] descending) {
+    this.positions = positions;
+    this.types = types;
+    this.descending = descending;
+    this.signature =
+        String.format(
+            "v1:%s:%s:%s",
+            Arrays.toString(positions), Arrays.toString(types), Arrays.toString(descending));
+  }
+
+  /**
+   * Creates the codec of a table, or returns null if one of its clustering types has no
+   * order-preserving encoding
+   *
+   * @param clustering clustering columns and types in the order of the ledger key
+   * @param clusteringOrder clustering columns in clustering order with asc or desc
+   */
+  public static ClusteringKeyCodec create(
+      Map<String, String> clustering, Map<String, String> clusteringOrder) {
+    if (clustering.isEmpty() || clustering.size() != clusteringOrder.size()) {
+      return null;
+    }
+    List<String> keyColumns = new ArrayList<>(clustering.keySet());
+    var size = clusteringOrder.size();
+    var positions = new int[size];
+    var types = new String[size];
+    var descending = new boolean[size];
+    var i = 0;
+    for (var entry : clusteringOrder.entrySet()) {
+      positions[i] = keyColumns.indexOf(entry.getKey());
+      types[i] = clustering.get(entry.getKey());
+      descending[i] = "desc".equalsIgnoreCase(entry.getValue());
+      if (positions[i] < 0 || !isSupported(types[i])) {
+        return null;
+      }
+      i++;
+    }
+    return new ClusteringKeyCodec(positions, types, descending);
+  }
+
+  private static boolean isSupported(String cqlType) {
+    switch (cqlType) {
+      case "tinyint":
+      case "smallint":
+      case "int":
+      case "bigint":
+      case "float":
+      case "double":
+      case "ascii":
+      case "text":
+      case "varchar":
+      case "date":
+      case "timestamp":
+      case "boolean":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /** Identifies the encoding, an ordered index built with another signature must be rebuilt */
+  public String getSignature() {
+    return signature;
+  }
+
+  /** Returns the encoded clustering key, or null if the key can't be encoded */
+  public byte[] encode(String clusteringKey) {
+    var values = REGEX_PIPE.split(clusteringKey, -1);
+    if (values.length != positions.length) {
+      return null;
+    }
+    var out = new ByteArrayOutputStream(clusteringKey.length() + 8 * positions.length);
+    try {
+      for (int i = 0; i < positions.length; i++) {
+        var start = out.size();
+        encodeValue(types[i], values[positions[i]], out);
+        if (descending[i]) {
+          // Inverting the bytes of a self-delimiting encoding reverses its order
+          var bytes = out.toByteArray();
+          out.reset();
+          for (int b = 0; b < bytes.length; b++) {
+            out.write(b < start ? bytes[b] : ~bytes[b]);
+          }
+        }
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return out.toByteArray();
+  }
+
+  private static void encodeValue(String cqlType, String value, ByteArrayOutputStream out) {
+    switch (cqlType) {
+      case "tinyint":
+      case "smallint":
+      case "int":
+      case "bigint":
+        writeLong(Long.parseLong(value) ^ Long.MIN_VALUE, out);
+        break;
+      case "float":
+      case "double":
+        var bits = Double.doubleToLongBits(Double.parseDouble(value));
+        writeLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE, out);
+        break;
+      default:
+        // Text, dates and timestamps of the ledger sort as their UTF-8 bytes
+        writeString(value, out);
+        break;
+    }
+  }
+
+  private static void writeLong(long value, ByteArrayOutputStream out) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      out.write((int) (value >>> shift));
+    }
+  }
+
+  /** Writes the bytes of the value with 0x00 escaped as 0x00 0xFF and terminated by 0x00 0x00 */
+  public static void writeString(String value, ByteArrayOutputStream out) {
+    for (var b : value.getBytes(StandardCharsets.UTF_8)) {
+      out.write(b);
+      if (b == 0) {
+        out.write(0xff);
+      }
+    }
+    out.write(0);
+    out.write(0);
+  }
+
+  /** Compares encoded keys as unsigned bytes */
+  public static int compare(byte[] left, byte[] right) {
+    return Arrays.compareUnsigned(left, right);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Scans ranges with several asynchronous queries in flight. A range takes a slot of the scanner and
+ * a slot of every replica of the range until its last page is read, so no node serves more than
+ * its cap of range queries. Pages are handed to the consumer on the calling thread as they arrive,
+ * the next page of a range is requested before its current page is consumed.
+ */
+public class ConcurrentRangeScanner<R, T> {
+
+  private final int maxInFlight;
+  private final int maxInFlightPerNode;
+
+  public ConcurrentRangeScanner(final int maxInFlight, final int maxInFlightPerNode) {
+    if (maxInFlight < 1 || maxInFlightPerNode < 1) {
+      throw new IllegalArgumentException("The number of range queries in flight must be positive");
+    }
+    this.maxInFlight = maxInFlight;
+    this.maxInFlightPerNode = maxInFlightPerNode;
+  }
+
+  /**
+   * Scans the ranges and returns once every page is consumed
+   *
+   * @param replicas nodes that serve a range, an empty collection if they are unknown
+   * @param firstPage starts the query of a range
+   * @param pages consumes a page of a range
+   * @throws RuntimeException if a query fails, the queries in flight are abandoned
+   */
+  public void scan(
+      List<R> ranges,
+      Function<R, Collection<?>> replicas,
+      Function<R, CompletionStage<Page<T>>> firstPage,
+      BiConsumer<R, Page<T>> pages)
+      throws InterruptedException {
+    scan(ranges, replicas, firstPage, pages, range -> true);
+  }
+
+  /**
+   * Scans the ranges like {@link #scan(List, Function, Function, BiConsumer)}, a range that is no
+   * longer active is stopped before its next page is requested and its page isn't consumed
+   *
+   * @param active tells whether a range should still be scanned
+   */
+  public void scan(
+      List<R> ranges,
+      Function<R, Collection<?>> replicas,
+      Function<R, CompletionStage<Page<T>>> firstPage,
+      BiConsumer<R, Page<T>> pages,
+      Predicate<R> active)
+      throws InterruptedException {
+    Deque<R> pending = new ArrayDeque<>(ranges);
+    BlockingQueue<Result<R, T>> results = new LinkedBlockingQueue<>();
+    Map<Object, Integer> nodeLoad = new HashMap<>();
+    var inFlight = 0;
+
+    while (!pending.isEmpty() || inFlight > 0) {
+      for (var iterator = pending.iterator(); iterator.hasNext() && inFlight < maxInFlight; ) {
+        var range = iterator.next();
+        if (!active.test(range)) {
+          iterator.remove();
+          continue;
+        }
+        var nodes = replicas.apply(range);
+        if (!hasCapacity(nodeLoad, nodes)) {
+          continue;
+        }
+        iterator.remove();
+        for (var node : nodes) {
+          nodeLoad.merge(node, 1, Integer::sum);
+        }
+        inFlight++;
+        submit(range, nodes, start(firstPage, range), results);
+      }
+      if (inFlight == 0) {
+        continue;
+      }
+
+      var result = results.take();
+      if (result.error != null) {
+        throw new RuntimeException(
+            String.format("Unable to scan the range %s", result.range), result.error);
+      }
+      var isActive = active.test(result.range);
+      var nextPage = isActive ? result.page.fetchNext() : null;
+      if (nextPage != null) {
+        submit(result.range, result.nodes, nextPage, results);
+      }
+      if (isActive) {
+        pages.accept(result.range, result.page);
+      }
+      if (nextPage == null) {
+        inFlight--;
+        for (var node : result.nodes) {
+          nodeLoad.merge(node, -1, Integer::sum);
+        }
+      }
+    }
+  }
+
+  private boolean hasCapacity(Map<Object, Integer> nodeLoad, Collection<?> nodes) {
+    for (var node : nodes) {
+      if (nodeLoad.getOrDefault(node, 0) >= maxInFlightPerNode) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static <R, T> CompletionStage<Page<T>> start(
+      Function<R, CompletionStage<Page<T>>> firstPage, R range) {
+    try {
+      return firstPage.apply(range);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private static <R, T> void submit(
+      R range,
+      Collection<?> nodes,
+      CompletionStage<Page<T>> stage,
+      BlockingQueue<Result<R, T>> results) {
+    stage.whenComplete((page, error) -> results.add(new Result<>(range, nodes, page, error)));
+  }
+
+  /** A page of rows of a range query */
+  public interface Page<T> {
+    Iterable<T> getRows();
+
+    /** Requests the next page, or returns null if this page is the last one */
+    CompletionStage<Page<T>> fetchNext();
+
+    /** Returns the state to resume the range after this page, or null if it is unknown */
+    default ByteBuffer getPagingState() {
+      return null;
+    }
+  }
+
+  private static class Result<R, T> {
+    private final R range;
+    private final Collection<?> nodes;
+    private final Page<T> page;
+    private final Throwable error;
+
+    Result(R range, Collection<?> nodes, Page<T> page, Throwable error) {
+      this.range = range;
+      this.nodes = nodes;
+      this.page = page;
+      this.error = error;
+    }
+  }
+}
@@ -7,31 +7,74 @@ package com.amazon.aws.cqlreplicator.util;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
 
+/**
+ * Flushes its elements when either the number of elements or, with a size function, their total
+ * size reaches a limit. The flush runs under a lock rather than a monitor, so a virtual thread
+ * blocked in it is not pinned.
+ */
 public abstract class FlushingList<T> {
 
   private final List<T> queue = new ArrayList<>();
+  private final ReentrantLock lock = new ReentrantLock();
   private final int maxCacheSize;
+  private final long maxBytes;
+  private final ToLongFunction<T> sizeOf;
+  private long bytes;
 
   public FlushingList(final int maxCacheSize) {
+    this(maxCacheSize, Long.MAX_VALUE, element -> 0);
+  }
+
+  /**
+   * @param maxBytes limit of the total size of the elements
+   * @param sizeOf returns the size of an element
+   */
+  public FlushingList(final int maxCacheSize, final long maxBytes, final ToLongFunction<T> sizeOf) {
     this.maxCacheSize = maxCacheSize;
+    this.maxBytes = maxBytes;
+    this.sizeOf = sizeOf;
   }
 
-  public synchronized void put(T element) {
-    queue.add(element);
-    if (queue.size() >= maxCacheSize) {
-      doFlush();
+  public void put(T element) {
+    var size = sizeOf.applyAsLong(element);
+    lock.lock();
+    try {
+      // Flush first if the element would push the pending elements over the size limit
+      if (!queue.isEmpty() && bytes + size > maxBytes) {
+        doFlush();
+      }
+      queue.add(element);
+      bytes += size;
+      if (queue.size() >= maxCacheSize || bytes >= maxBytes) {
+        doFlush();
+      }
+    } finally {
+      lock.unlock();
     }
   }
 
-  public synchronized void doFlush() {
-    List<T> payload = new ArrayList<>(queue);
-    flush(payload);
-    queue.clear();
+  public void doFlush() {
+    lock.lock();
+    try {
+      List<T> payload = new ArrayList<>(queue);
+      queue.clear();
+      bytes = 0;
+      flush(payload);
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public synchronized int getSize() {
-    return queue.size();
+  public int getSize() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
   }
 
   protected abstract void flush(List<T> payload);
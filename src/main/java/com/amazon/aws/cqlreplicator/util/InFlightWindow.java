@@ -0,0 +1,59 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of asynchronous writes in flight. Every write holds one permit of the process
+ * window and one permit of the window of its partition until the write is completed.
+ */
+public class InFlightWindow {
+
+  private final Semaphore processPermits;
+  private final int maxInFlightPerPartition;
+
+  public InFlightWindow(final int maxInFlightPerProcess, final int maxInFlightPerPartition) {
+    this.processPermits = new Semaphore(maxInFlightPerProcess);
+    this.maxInFlightPerPartition = maxInFlightPerPartition;
+  }
+
+  public PartitionWindow forPartition() {
+    return new PartitionWindow();
+  }
+
+  public int getAvailablePermits() {
+    return processPermits.availablePermits();
+  }
+
+  /** Tracks writes in flight for one partition */
+  public class PartitionWindow {
+    private final Semaphore partitionPermits = new Semaphore(maxInFlightPerPartition);
+
+    private PartitionWindow() {}
+
+    public void acquire() throws InterruptedException {
+      partitionPermits.acquire();
+      try {
+        processPermits.acquire();
+      } catch (InterruptedException e) {
+        partitionPermits.release();
+        throw e;
+      }
+    }
+
+    public void release() {
+      processPermits.release();
+      partitionPermits.release();
+    }
+
+    /** Blocks until every write of the partition is completed */
+    public void awaitCompletion() throws InterruptedException {
+      partitionPermits.acquire(maxInFlightPerPartition);
+      partitionPermits.release(maxInFlightPerPartition);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Diffs the writetimes of source rows against the ledger by clustering key. Keys are stored as
+ * UTF-8 bytes in an arena indexed by an open-addressing table and timestamps are kept in primitive
+ * arrays, so a diff doesn't allocate per row once it has grown to a page. Diffs are taken from a
+ * pool shared by all threads rather than kept per thread, so virtual threads reuse them too, and a
+ * diff grown by a very large page is dropped instead of being pooled.
+ */
+public final class RowDiff implements AutoCloseable {
+
+  private static final long ABSENT = Long.MIN_VALUE;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_POOLED_CAPACITY = 64 * INITIAL_CAPACITY;
+  private static final ArrayBlockingQueue<RowDiff> POOL =
+      new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+
+  private byte[] arena = new byte[INITIAL_CAPACITY * 16];
+  private int arenaSize;
+  // Slots of the table hold entry + 1, 0 is an empty slot
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+  private int[] keyOffsets = new int[INITIAL_CAPACITY];
+  private int[] keyLengths = new int[INITIAL_CAPACITY];
+  private int[] hashes = new int[INITIAL_CAPACITY];
+  private int[] rows = new int[INITIAL_CAPACITY];
+  private long[] sourceTimestamps = new long[INITIAL_CAPACITY];
+  private long[] ledgerTimestamps = new long[INITIAL_CAPACITY];
+  private int size;
+
+  /** Returns a cleared diff, to be closed when the diff is done */
+  public static RowDiff get() {
+    var diff = POOL.poll();
+    if (diff == null) {
+      return new RowDiff();
+    }
+    diff.clear();
+    return diff;
+  }
+
+  /** Returns the diff to the pool unless it grew past the pooled capacity */
+  @Override
+  public void close() {
+    if (keyOffsets.length <= MAX_POOLED_CAPACITY
+        && arena.length <= MAX_POOLED_CAPACITY * 16) {
+      POOL.offer(this);
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(table, 0);
+    arenaSize = 0;
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Adds the writetime of a source row and returns its entry, a repeated clustering key replaces
+   * the previous row
+   */
+  public int addSource(CharSequence clusteringKey, int row, long timestamp) {
+    var entry = find(clusteringKey, true);
+    rows[entry] = row;
+    sourceTimestamps[entry] = timestamp;
+    return entry;
+  }
+
+  /** Sets the ledger writetime of an entry returned by addSource */
+  public void setLedger(int entry, long timestamp) {
+    ledgerTimestamps[entry] = timestamp;
+  }
+
+  /** Sets the ledger writetime of a clustering key, keys without a source row are ignored */
+  public void addLedger(CharSequence clusteringKey, long timestamp) {
+    var entry = find(clusteringKey, false);
+    if (entry >= 0) {
+      ledgerTimestamps[entry] = timestamp;
+    }
+  }
+
+  /**
+   * Reports rows that are not in the ledger as inserts and rows newer than the ledger as updates,
+   * in the order they were added
+   */
+  public void forEachChange(Listener listener) throws IOException {
+    for (int entry = 0; entry < size; entry++) {
+      var ledgerTimestamp = ledgerTimestamps[entry];
+      if (ledgerTimestamp == ABSENT) {
+        listener.onInsert(rows[entry], sourceTimestamps[entry]);
+      } else if (sourceTimestamps[entry] > ledgerTimestamp) {
+        listener.onUpdate(rows[entry], sourceTimestamps[entry], ledgerTimestamp);
+      }
+    }
+  }
+
+  private int find(CharSequence clusteringKey, boolean add) {
+    var offset = arenaSize;
+    var length = encode(clusteringKey);
+    var hash = hash(arena, offset, length);
+    var mask = table.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      var entry = table[slot] - 1;
+      if (entry < 0) {
+        if (!add) {
+          arenaSize = offset;
+          return -1;
+        }
+        return add(slot, offset, length, hash);
+      }
+      if (hashes[entry] == hash
+          && Arrays.equals(
+              arena,
+              keyOffsets[entry],
+              keyOffsets[entry] + keyLengths[entry],
+              arena,
+              offset,
+              offset + length)) {
+        // The key is interned, drop the bytes just encoded
+        arenaSize = offset;
+        return entry;
+      }
+    }
+  }
+
+  private int add(int slot, int offset, int length, int hash) {
+    if (size == keyOffsets.length) {
+      growEntries();
+    }
+    var entry = size++;
+    keyOffsets[entry] = offset;
+    keyLengths[entry] = length;
+    hashes[entry] = hash;
+    ledgerTimestamps[entry] = ABSENT;
+    table[slot] = entry + 1;
+    // Keep the load factor of the table under a half
+    if (size * 2 > table.length) {
+      rehash();
+    }
+    return entry;
+  }
+
+  private void growEntries() {
+    var capacity = keyOffsets.length * 2;
+    keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+    keyLengths = Arrays.copyOf(keyLengths, capacity);
+    hashes = Arrays.copyOf(hashes, capacity);
+    rows = Arrays.copyOf(rows, capacity);
+    sourceTimestamps = Arrays.copyOf(sourceTimestamps, capacity);
+    ledgerTimestamps = Arrays.copyOf(ledgerTimestamps, capacity);
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    var mask = table.length - 1;
+    for (int entry = 0; entry < size; entry++) {
+      var slot = hashes[entry] & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = entry + 1;
+    }
+  }
+
+  /** Appends the UTF-8 bytes of the key to the arena and returns their length */
+  private int encode(CharSequence value) {
+    ensureArena(value.length() * 3);
+    var start = arenaSize;
+    var pos = arenaSize;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        arena[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        arena[pos++] = (byte) (0xc0 | (c >> 6));
+        arena[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        arena[pos++] = (byte) (0xf0 | (codePoint >> 18));
+        arena[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        arena[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        arena[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        arena[pos++] = (byte) (0xe0 | (c >> 12));
+        arena[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        arena[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    arenaSize = pos;
+    return pos - start;
+  }
+
+  private void ensureArena(int bytes) {
+    if (arenaSize + bytes > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + bytes));
+    }
+  }
+
+  private static int hash(byte[] bytes, int offset, int length) {
+    // FNV-1a with a final avalanche, so that linear probing spreads similar keys
+    int h = 0x811c9dc5;
+    for (int i = offset; i < offset + length; i++) {
+      h = (h ^ bytes[i]) * 0x01000193;
+    }
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  /** Receives the changed rows of a diff */
+  public interface Listener {
+    void onInsert(int row, long sourceTimestamp) throws IOException;
+
+    void onUpdate(int row, long sourceTimestamp, long ledgerTimestamp) throws IOException;
+  }
+}
@@ -15,6 +15,10 @@ public class StatsCounter {
   public StatsCounter() {}
 
   public void incrementStat(String key) {
+    incrementStat(key, 1);
+  }
+
+  public void incrementStat(String key, int delta) {
     var value = map.get(key);
     if (value == null) {
       value = new AtomicInteger(0);
@@ -23,7 +27,7 @@ public class StatsCounter {
         value = old;
       }
     }
-    value.incrementAndGet();
+    value.addAndGet(delta);
   }
 
   public Integer getStat(String key) {
@@ -31,6 +35,12 @@ public class StatsCounter {
     return (value == null) ? 0 : value.get();
   }
 
+  /** Returns the value of the stat and resets it, increments are counted in one of the two */
+  public int getAndResetStat(String key) {
+    var value = map.get(key);
+    return (value == null) ? 0 : value.getAndSet(0);
+  }
+
   public void resetStat(String key) {
     var value = map.get(key);
     if (value == null) {
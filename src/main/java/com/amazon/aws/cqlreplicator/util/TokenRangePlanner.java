@@ -0,0 +1,278 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Plans the token ranges of the tiles by the estimated number of partitions instead of the number
+ * of ranges. Ranges of the ring are weighted by the estimates of system.size_estimates, split into
+ * sub-ranges of about equal weight and handed out to the tiles in token order, so every tile gets
+ * about the same number of partitions.
+ *
+ * <p>The estimates change over time while every tile must work with the same plan, so tile 0 writes
+ * the plan to a file that the other tiles read. The plan is kept until the file is removed.
+ */
+public final class TokenRangePlanner {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TokenRangePlanner.class);
+
+  private TokenRangePlanner() {}
+
+  /**
+   * Returns the token ranges of each tile, planned by size if TILING_BY_SIZE_ESTIMATES is enabled,
+   * otherwise by the number of ranges
+   */
+  public static List<List<ImmutablePair<String, String>>> getRangesByTiles(
+      final Properties config,
+      final int tiles,
+      final List<ImmutablePair<String, String>> ranges,
+      final Supplier<List<Estimate>> estimates) {
+    if (!Boolean.parseBoolean(config.getProperty("TILING_BY_SIZE_ESTIMATES", "false"))) {
+      return Utils.getDistributedRangesByTiles(ranges, tiles);
+    }
+    if (!isMurmur3(ranges)) {
+      LOGGER.warn("Tiling by size estimates supports only Murmur3Partitioner, tiling by ranges");
+      return Utils.getDistributedRangesByTiles(ranges, tiles);
+    }
+    var planFile =
+        Path.of(
+            config.getProperty(
+                "TOKEN_RANGE_PLAN_FILE",
+                String.format(
+                    "%s/token_range_plan_%s.txt",
+                    config.getProperty("LOCAL_STORAGE_PATH"),
+                    tiles)));
+    try {
+      if (!Files.exists(planFile) && Integer.parseInt(config.getProperty("TILE", "0")) == 0) {
+        var plan =
+            plan(
+                ranges,
+                estimates.get(),
+                tiles,
+                Integer.parseInt(config.getProperty("TILING_SPLITS_PER_TILE", "16")));
+        if (write(planFile, plan)) {
+          LOGGER.info("Planned the token ranges of {} tiles in {}", tiles, planFile);
+          return plan;
+        }
+      }
+      var deadline =
+          System.currentTimeMillis()
+              + Long.parseLong(config.getProperty("TOKEN_RANGE_PLAN_WAIT_MS", "600000"));
+      while (!Files.exists(planFile)) {
+        if (System.currentTimeMillis() > deadline) {
+          throw new IllegalStateException(
+              String.format(
+                  "%s isn't written by tile 0, it must be on storage shared by the tiles",
+                  planFile));
+        }
+        LOGGER.info("Waiting for tile 0 to plan the token ranges in {}", planFile);
+        Thread.sleep(1000);
+      }
+      return read(planFile, tiles);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Splits the ranges into sub-ranges of about equal estimated partitions and assigns them to the
+   * tiles in token order. Only Murmur3 ranges are supported.
+   *
+   * @param splitsPerTile number of sub-ranges of a tile if the partitions were spread evenly
+   */
+  public static List<List<ImmutablePair<String, String>>> plan(
+      List<ImmutablePair<String, String>> ranges,
+      List<Estimate> estimates,
+      int tiles,
+      int splitsPerTile) {
+    List<long[]> ring = new ArrayList<>();
+    for (var range : ranges) {
+      ring.add(new long[] {Long.parseLong(range.left), Long.parseLong(range.right)});
+    }
+    ring.sort(Comparator.comparingLong(range -> range[0]));
+
+    List<Estimate> unwrapped = new ArrayList<>();
+    for (var estimate : estimates) {
+      unwrapped.addAll(estimate.unwrap());
+    }
+
+    // Ranges without an estimate get the average density of the estimated ones
+    var weights = new double[ring.size()];
+    var covered = new double[ring.size()];
+    double estimatedPartitions = 0;
+    double estimatedWidth = 0;
+    for (int i = 0; i < ring.size(); i++) {
+      var range = ring.get(i);
+      for (var estimate : unwrapped) {
+        var overlap = overlap(range[0], range[1], estimate.start, estimate.end);
+        if (overlap > 0) {
+          weights[i] += estimate.partitions * overlap / width(estimate.start, estimate.end);
+          covered[i] += overlap;
+        }
+      }
+      estimatedPartitions += weights[i];
+      estimatedWidth += covered[i];
+    }
+    var density = estimatedWidth > 0 ? estimatedPartitions / estimatedWidth : 0;
+    double total = 0;
+    for (int i = 0; i < ring.size(); i++) {
+      var range = ring.get(i);
+      var uncovered = Math.max(0, width(range[0], range[1]) - covered[i]);
+      weights[i] += density > 0 ? density * uncovered : uncovered;
+      total += weights[i];
+    }
+
+    List<List<ImmutablePair<String, String>>> plan = new ArrayList<>(tiles);
+    for (int tile = 0; tile < tiles; tile++) {
+      plan.add(new ArrayList<>());
+    }
+    if (total <= 0) {
+      return plan;
+    }
+    var tileWeight = total / tiles;
+    var maxSubRangeWeight = tileWeight / splitsPerTile;
+    double cumulative = 0;
+    for (int i = 0; i < ring.size(); i++) {
+      var range = ring.get(i);
+      var splits = (int) Math.max(1, Math.ceil(weights[i] / maxSubRangeWeight));
+      var subRangeWeight = weights[i] / splits;
+      for (var subRange : split(range[0], range[1], splits)) {
+        // A sub-range belongs to the tile that holds its midpoint of the cumulative weight
+        var tile = (int) Math.min(tiles - 1, (cumulative + subRangeWeight / 2) / tileWeight);
+        plan.get(tile).add(subRange);
+        cumulative += subRangeWeight;
+      }
+    }
+    return plan;
+  }
+
+  private static boolean isMurmur3(List<ImmutablePair<String, String>> ranges) {
+    try {
+      for (var range : ranges) {
+        Long.parseLong(range.left);
+        Long.parseLong(range.right);
+      }
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static double width(long start, long end) {
+    return (double) end - (double) start;
+  }
+
+  private static double overlap(long start, long end, long otherStart, long otherEnd) {
+    return Math.max(0, (double) Math.min(end, otherEnd) - (double) Math.max(start, otherStart));
+  }
+
+  /** Splits [start, end] into sub-ranges of equal width that share their boundary tokens */
+  static List<ImmutablePair<String, String>> split(long start, long end, int splits) {
+    List<ImmutablePair<String, String>> subRanges = new ArrayList<>(splits);
+    var from = BigInteger.valueOf(start);
+    var width = BigInteger.valueOf(end).subtract(from);
+    var splitsValue = BigInteger.valueOf(splits);
+    var previous = start;
+    for (int i = 1; i <= splits; i++) {
+      var boundary =
+          from.add(width.multiply(BigInteger.valueOf(i)).divide(splitsValue)).longValueExact();
+      if (boundary > previous || i == splits) {
+        subRanges.add(new ImmutablePair<>(String.valueOf(previous), String.valueOf(boundary)));
+        previous = boundary;
+      }
+    }
+    return subRanges;
+  }
+
+  /** Writes the plan unless a plan is written already, returns false in that case */
+  static boolean write(Path planFile, List<List<ImmutablePair<String, String>>> plan)
+      throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (int tile = 0; tile < plan.size(); tile++) {
+      for (var range : plan.get(tile)) {
+        lines.add(String.format("%s %s %s", tile, range.left, range.right));
+      }
+    }
+    // The link publishes a complete file and keeps a plan written by another process of tile 0
+    var tmp =
+        Files.createTempFile(
+            planFile.toAbsolutePath().getParent(), planFile.getFileName().toString(), ".tmp");
+    try {
+      Files.write(tmp, lines, StandardCharsets.UTF_8);
+      Files.createLink(planFile, tmp);
+      return true;
+    } catch (FileAlreadyExistsException e) {
+      return false;
+    } finally {
+      Files.delete(tmp);
+    }
+  }
+
+  static List<List<ImmutablePair<String, String>>> read(Path planFile, int tiles)
+      throws IOException {
+    List<List<ImmutablePair<String, String>>> plan = new ArrayList<>(tiles);
+    for (int tile = 0; tile < tiles; tile++) {
+      plan.add(new ArrayList<>());
+    }
+    for (var line : Files.readAllLines(planFile, StandardCharsets.UTF_8)) {
+      if (line.isBlank()) {
+        continue;
+      }
+      var fields = line.trim().split(" ");
+      var tile = Integer.parseInt(fields[0]);
+      if (tile >= tiles) {
+        throw new IllegalStateException(
+            String.format("%s was planned for more than %s tiles", planFile, tiles));
+      }
+      plan.get(tile).add(new ImmutablePair<>(fields[1], fields[2]));
+    }
+    return plan;
+  }
+
+  /** Estimated partitions of a token range (start, end], the range may wrap around the ring */
+  public static class Estimate {
+    private final long start;
+    private final long end;
+    private final long partitions;
+
+    public Estimate(final long start, final long end, final long partitions) {
+      this.start = start;
+      this.end = end;
+      this.partitions = partitions;
+    }
+
+    /** Splits a range that wraps around the ring at the end of the ring */
+    List<Estimate> unwrap() {
+      if (start < end) {
+        return List.of(this);
+      }
+      var head = width(start, Long.MAX_VALUE);
+      var tail = width(Long.MIN_VALUE, end);
+      var headPartitions = Math.round(partitions * head / (head + tail));
+      return List.of(
+          new Estimate(start, Long.MAX_VALUE, headPartitions),
+          new Estimate(Long.MIN_VALUE, end, partitions - headPartitions));
+    }
+  }
+}
@@ -29,6 +29,8 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -96,6 +98,22 @@ public class Utils {
     }
   }
 
+  /**
+   * Creates an executor that starts a new virtual thread for each task. The factory is looked up at
+   * runtime, so the project still builds for Java 11 and fails here on runtimes older than Java 21.
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new UnsupportedOperationException(
+          "Virtual threads require a Java 21 runtime, current runtime is "
+              + Runtime.version(),
+          e);
+    }
+  }
+
   public static String doubleQuoteResolver(String source, String input) {
     var matcher = REGEX_DQ.matcher(input);
     var action = matcher.find();
@@ -220,8 +238,8 @@ public class Utils {
     for (String writeColumn : writeTimeColumnsArray) {
       ((ObjectNode) rootNode).remove(String.format("writetime(%s)", writeColumn));
     }
-    // Single quote invalidates INSERT JSON statements
-    payload.setPayload(String.valueOf(rootNode).replace("'", "\\\\u0027"));
+    // The payload is bound to a prepared INSERT JSON statement, so no quote escaping is needed
+    payload.setPayload(String.valueOf(rootNode));
 
     return payload;
   }
@@ -0,0 +1,95 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits writes to the write capacity units of Amazon Keyspaces per second. A write of a row takes
+ * one unit per started KB of the row, a token bucket refilled every second makes the writer wait
+ * for the units of each write instead of being throttled by the table. Units beyond the capacity of
+ * a second are acquired in chunks, so a write of a large partition waits for them second by second
+ * instead of reserving them all at once and timing out.
+ */
+public class WriteCapacityLimiter {
+
+  private static final int CAPACITY_UNIT_BYTES = 1024;
+  // Keyspaces adds metadata to the size of every row
+  private static final int ROW_METADATA_BYTES = 100;
+  private final RateLimiter rateLimiter;
+  private final LongAdder consumedUnits = new LongAdder();
+
+  public WriteCapacityLimiter(final String name, final int unitsPerSecond) {
+    this(name, unitsPerSecond, Duration.ofMinutes(10));
+  }
+
+  WriteCapacityLimiter(final String name, final int unitsPerSecond, final Duration timeout) {
+    if (unitsPerSecond < 1) {
+      throw new IllegalArgumentException("The write capacity must be positive");
+    }
+    this.rateLimiter =
+        RateLimiter.of(
+            name,
+            RateLimiterConfig.custom()
+                .limitForPeriod(unitsPerSecond)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(timeout)
+                .build());
+  }
+
+  /** Returns the write capacity units of a row with the size of its values */
+  public static int getCapacityUnits(long rowBytes) {
+    return (int) ((rowBytes + ROW_METADATA_BYTES + CAPACITY_UNIT_BYTES - 1) / CAPACITY_UNIT_BYTES);
+  }
+
+  /**
+   * Returns the write capacity units per second of the tile, its own capacity if it's set or an
+   * even share of the table, or 0 if writes are not rate limited
+   */
+  public static int getTileCapacity(Properties properties) {
+    var tileCapacity =
+        properties.getProperty("TARGET_WCU_PER_SECOND_TILE_" + properties.getProperty("TILE"));
+    if (tileCapacity != null) {
+      return Integer.parseInt(tileCapacity);
+    }
+    var tableCapacity = Integer.parseInt(properties.getProperty("TARGET_WCU_PER_SECOND", "0"));
+    if (tableCapacity <= 0) {
+      return 0;
+    }
+    return Math.max(1, tableCapacity / Integer.parseInt(properties.getProperty("TILES", "1")));
+  }
+
+  /** Blocks until the units are available */
+  public void acquire(int units) {
+    var unitsPerSecond = getUnitsPerSecond();
+    for (var remaining = units; remaining > 0; remaining -= unitsPerSecond) {
+      var chunk = Math.min(remaining, unitsPerSecond);
+      RateLimiter.waitForPermission(rateLimiter, chunk);
+      consumedUnits.add(chunk);
+    }
+  }
+
+  /** Changes the capacity, from the next refresh period on */
+  public void setUnitsPerSecond(int unitsPerSecond) {
+    if (unitsPerSecond < 1) {
+      throw new IllegalArgumentException("The write capacity must be positive");
+    }
+    rateLimiter.changeLimitForPeriod(unitsPerSecond);
+  }
+
+  public int getUnitsPerSecond() {
+    return rateLimiter.getRateLimiterConfig().getLimitForPeriod();
+  }
+
+  public long getConsumedUnits() {
+    return consumedUnits.sum();
+  }
+}
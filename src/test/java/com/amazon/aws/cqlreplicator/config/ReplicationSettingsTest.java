@@ -0,0 +1,103 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReplicationSettingsTest {
+
+  private static Properties getConfig() {
+    var config = new Properties();
+    config.setProperty("TILE", "1");
+    config.setProperty("TILES", "2");
+    config.setProperty("TARGET_KEYSPACE", "ks");
+    config.setProperty("TARGET_TABLE", "tbl");
+    config.setProperty("WRITETIME_COLUMNS", "col2");
+    config.setProperty("REPLICATE_DELETES", "true");
+    config.setProperty("REPLICATE_WITH_CORE_POOL_SIZE", "8");
+    config.setProperty("REPLICATE_WITH_MAX_CORE_POOL_SIZE", "16");
+    config.setProperty("REPLICATE_WITH_CORE_POOL_TIMEOUT", "360");
+    return config;
+  }
+
+  @Test
+  void parsesTypedValues() {
+    var settings = new ReplicationSettings(getConfig());
+    assertEquals(1, settings.getTile());
+    assertEquals("ks", settings.getTargetKeyspace());
+    assert settings.isReplicateDeletes();
+    assert !settings.isEnableReplicationPoint();
+    assertEquals(0, settings.getBatchMaxRows());
+    assertEquals(32, settings.getProbeFetchConcurrency());
+  }
+
+  @Test
+  void rejectsInvalidValues() {
+    var config = getConfig();
+    config.setProperty("REPLICATE_WITH_CORE_POOL_SIZE", "32");
+    assertThrows(IllegalArgumentException.class, () -> new ReplicationSettings(config));
+    config.setProperty("REPLICATE_WITH_CORE_POOL_SIZE", "eight");
+    assertThrows(IllegalArgumentException.class, () -> new ReplicationSettings(config));
+  }
+
+  @Test
+  void rejectsWorkLeasesWithInternalPartitionKeyStorage() {
+    var config = getConfig();
+    config.setProperty("WORK_LEASES", "true");
+    config.setProperty("ENABLE_INTERNAL_PARTITION_KEY_STORAGE", "false");
+    new ReplicationSettings(config);
+    config.setProperty("ENABLE_INTERNAL_PARTITION_KEY_STORAGE", "true");
+    assertThrows(IllegalArgumentException.class, () -> new ReplicationSettings(config));
+  }
+
+  @Test
+  void rejectsDeadLetterQueueWithoutTimestamps() {
+    var config = getConfig();
+    config.setProperty("REPLICATE_DEAD_LETTER_QUEUE", "true");
+    config.setProperty("REPLICATE_WITH_TIMESTAMP", "true");
+    new ReplicationSettings(config);
+    config.setProperty("REPLICATE_WITH_TIMESTAMP", "false");
+    assertThrows(IllegalArgumentException.class, () -> new ReplicationSettings(config));
+  }
+
+  @Test
+  void reloadsTunablesOnly() {
+    ReplicationSettings.set(new ReplicationSettings(getConfig()));
+    var config = getConfig();
+    config.remove("TILE");
+    config.setProperty("REPLICATE_WITH_MAX_CORE_POOL_SIZE", "64");
+    config.setProperty("TARGET_TABLE", "other");
+    var settings = ReplicationSettings.reload(config);
+    assertEquals(64, settings.getMaxCorePoolSize());
+    assertEquals("tbl", settings.getTargetTable());
+    assertEquals(1, settings.getTile());
+    assertEquals(settings, ReplicationSettings.get());
+
+    config.setProperty("REPLICATE_WITH_MAX_CORE_POOL_SIZE", "0");
+    assertThrows(IllegalArgumentException.class, () -> ReplicationSettings.reload(config));
+    assertEquals(settings, ReplicationSettings.get());
+  }
+
+  @Test
+  void reloadsWriteCapacities() {
+    ReplicationSettings.set(new ReplicationSettings(getConfig()));
+    assertEquals(0, ReplicationSettings.get().getWriteCapacity());
+    var config = getConfig();
+    config.setProperty("TARGET_WCU_PER_SECOND", "1000");
+    assertEquals(500, ReplicationSettings.reload(config).getWriteCapacity());
+    config.setProperty("TARGET_WCU_PER_SECOND_TILE_1", "700");
+    assertEquals(700, ReplicationSettings.reload(config).getWriteCapacity());
+
+    config.setProperty("TARGET_WCU_PER_SECOND_TILE_1", "many");
+    assertThrows(IllegalArgumentException.class, () -> ReplicationSettings.reload(config));
+    assertEquals(700, ReplicationSettings.get().getWriteCapacity());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.connector;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreparedStatementRegistryTest {
+
+  private final List<String> prepared = new ArrayList<>();
+  private final PreparedStatementRegistry registry =
+      new PreparedStatementRegistry("test", this::prepare);
+
+  /** Stands in for a statement prepared by the session, it only knows its query */
+  private PreparedStatement prepare(String query) {
+    prepared.add(query);
+    return (PreparedStatement)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getQuery":
+                case "toString":
+                  return query;
+                case "hashCode":
+                  return System.identityHashCode(proxy);
+                case "equals":
+                  return proxy == args[0];
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  private static TableMetadata table(String keyspace, String table) {
+    return (TableMetadata)
+        Proxy.newProxyInstance(
+            PreparedStatementRegistryTest.class.getClassLoader(),
+            new Class<?>[] {TableMetadata.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getKeyspace":
+                  return CqlIdentifier.fromInternal(keyspace);
+                case "getName":
+                  return CqlIdentifier.fromInternal(table);
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  @Test
+  void preparesEachShapeOnce() {
+    var shape =
+        PreparedStatementRegistry.Shape.of("DELETE", "ks", "tbl", (Object) new String[] {"a", "b"});
+    var statement = registry.prepare(shape, () -> "DELETE FROM ks.tbl WHERE a=:a AND b=:b");
+    // An equal shape built from new arrays finds the statement without building the query
+    assertSame(
+        statement,
+        registry.prepare(
+            PreparedStatementRegistry.Shape.of(
+                "DELETE", "ks", "tbl", (Object) new String[] {"a", "b"}),
+            () -> fail("The query is built again")));
+    assertEquals(List.of("DELETE FROM ks.tbl WHERE a=:a AND b=:b"), prepared);
+    assertEquals(1, registry.getHits());
+    assertEquals(1, registry.getMisses());
+    assertEquals(0.5, registry.getHitRate());
+  }
+
+  @Test
+  void keysShapesByOperationTableAndColumns() {
+    String[] a = {"a"};
+    String[] b = {"b"};
+    var shapes =
+        List.of(
+            PreparedStatementRegistry.Shape.of("DELETE", "ks", "tbl", (Object) a),
+            PreparedStatementRegistry.Shape.of(
+                "DELETE", "ks", "tbl", (Object) new String[] {"a", "b"}),
+            // The partition and clustering columns of a row delete are separate arrays
+            PreparedStatementRegistry.Shape.of("DELETE", "ks", "tbl", a, b),
+            PreparedStatementRegistry.Shape.of("SELECT", "ks", "tbl", (Object) a),
+            PreparedStatementRegistry.Shape.of("DELETE", "ks", "other", (Object) a),
+            PreparedStatementRegistry.Shape.of("DELETE", "ks2", "tbl", (Object) a));
+    for (int i = 0; i < shapes.size(); i++) {
+      var query = "query " + i;
+      assertEquals(query, registry.prepare(shapes.get(i), () -> query).getQuery());
+    }
+    assertEquals(shapes.size(), prepared.size());
+    assertEquals(
+        PreparedStatementRegistry.Shape.of("DELETE", "ks", "tbl", new String[] {"a"}, b),
+        shapes.get(2));
+    assertNotEquals(shapes.get(1), shapes.get(2));
+  }
+
+  @Test
+  void preparesStatementsOfChangedTableAgain() {
+    var shape = PreparedStatementRegistry.Shape.of("INSERT_JSON", "ks", "tbl");
+    var other = PreparedStatementRegistry.Shape.of("INSERT_JSON", "ks", "other");
+    var statement = registry.prepare(shape, () -> "INSERT INTO ks.tbl JSON ?");
+    var otherStatement = registry.prepare(other, () -> "INSERT INTO ks.other JSON ?");
+
+    registry.onTableUpdated(table("ks", "tbl"), table("ks", "tbl"));
+    assertEquals(1, registry.getInvalidations());
+    assertNotSame(statement, registry.prepare(shape, () -> "INSERT INTO ks.tbl JSON ?"));
+    assertSame(otherStatement, registry.prepare(other, () -> fail("The query is built again")));
+
+    // Names of shapes and schema events are compared regardless of case
+    registry.onTableDropped(table("KS", "OTHER"));
+    registry.onTableCreated(table("ks", "unused"));
+    assertEquals(2, registry.getInvalidations());
+    assertEquals(3, prepared.size());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdcChangeSourceTest {
+
+  private static final List<ImmutablePair<String, String>> TILE =
+      List.of(new ImmutablePair<>("-100", "0"), new ImmutablePair<>("1000", "-1000"));
+
+  @TempDir Path directory;
+  // Changes of the segments by id: entry location, token and partition key
+  private final Map<Long, List<Object[]>> changesBySegment =
+      Map.of(
+          1L,
+          List.of(
+              new Object[] {50, -50L, "a"},
+              new Object[] {250, 500L, "b"},
+              new Object[] {350, -20L, "c"}),
+          2L,
+          List.of(new Object[] {80, 2000L, "d"}, new Object[] {150, -2000L, "e"}));
+  private final List<String> reads = new ArrayList<>();
+
+  /** Copies the fixture of a cdc_raw directory, the change source deletes released segments */
+  @BeforeEach
+  void copyFixture() throws IOException, URISyntaxException {
+    var fixture = Path.of(getClass().getResource("/cdc_raw").toURI());
+    try (var files = Files.list(fixture)) {
+      for (var file : (Iterable<Path>) files::iterator) {
+        Files.copy(file, directory.resolve(file.getFileName().toString()));
+      }
+    }
+  }
+
+  /** Reports the changes of a segment after the position, like the commitlog reader */
+  private void read(
+      Path segment, long segmentId, int position, CdcChangeSource.ChangeConsumer changes) {
+    reads.add(String.format("%s@%s", segment.getFileName(), position));
+    for (var change : changesBySegment.getOrDefault(segmentId, List.of())) {
+      if ((int) change[0] > position) {
+        changes.accept((int) change[0], (long) change[1], (String) change[2]);
+      }
+    }
+  }
+
+  @Test
+  void filtersTokensOfTheTile() {
+    var source = new CdcChangeSource(directory, TILE, this::read);
+    assertTrue(source.isInTile(-50));
+    assertTrue(source.isInTile(0));
+    assertFalse(source.isInTile(-100));
+    assertFalse(source.isInTile(500));
+    // The second range wraps around the ring
+    assertTrue(source.isInTile(2000));
+    assertTrue(source.isInTile(-2000));
+    assertTrue(source.isInTile(-1000));
+    assertFalse(source.isInTile(1000));
+  }
+
+  @Test
+  void parsesIndexFiles() throws IOException {
+    var completed = CdcChangeSource.readIndex(directory.resolve("CommitLog-7-1_cdc.idx"));
+    assertEquals(300, completed.offset);
+    assertTrue(completed.completed);
+    var active = CdcChangeSource.readIndex(directory.resolve("CommitLog-7-2_cdc.idx"));
+    assertEquals(100, active.offset);
+    assertFalse(active.completed);
+    assertNull(CdcChangeSource.readIndex(directory.resolve("CommitLog-7-3_cdc.idx")));
+
+    assertEquals("CommitLog-7-2.log", CdcChangeSource.getSegmentName("CommitLog-7-2_cdc.idx"));
+    assertEquals(1650000000123L, CdcChangeSource.getSegmentId("CommitLog-7-1650000000123.log"));
+    assertThrows(IllegalArgumentException.class, () -> CdcChangeSource.getSegmentId("x.log"));
+  }
+
+  @Test
+  void readsSegmentsUpToTheOffsetOfTheirIndex() throws IOException {
+    var source = new CdcChangeSource(directory, TILE, this::read);
+    List<String> keys = new ArrayList<>();
+    var completed = source.poll((segment, key) -> keys.add(segment + ":" + key));
+    // b is out of the tile, c and e are past the offsets of their indexes
+    assertEquals(List.of("CommitLog-7-1.log:a", "CommitLog-7-2.log:d"), keys);
+    assertEquals(List.of("CommitLog-7-1.log"), completed);
+    assertEquals(List.of("CommitLog-7-1.log@0", "CommitLog-7-2.log@0"), reads);
+
+    // Segments aren't read again until their index moves
+    keys.clear();
+    assertTrue(source.poll((segment, key) -> keys.add(key)).isEmpty());
+    assertTrue(keys.isEmpty());
+    assertEquals(2, reads.size());
+
+    Files.writeString(directory.resolve("CommitLog-7-2_cdc.idx"), "200\nCOMPLETED\n");
+    completed = source.poll((segment, key) -> keys.add(key));
+    assertEquals(List.of("e"), keys);
+    assertEquals(List.of("CommitLog-7-2.log"), completed);
+    assertEquals("CommitLog-7-2.log@80", reads.get(2));
+  }
+
+  @Test
+  void deletesReleasedSegments() throws IOException {
+    var source = new CdcChangeSource(directory, TILE, this::read);
+    source.release(source.poll((segment, key) -> {}));
+    assertFalse(Files.exists(directory.resolve("CommitLog-7-1.log")));
+    assertFalse(Files.exists(directory.resolve("CommitLog-7-1_cdc.idx")));
+    assertTrue(Files.exists(directory.resolve("CommitLog-7-2.log")));
+  }
+}
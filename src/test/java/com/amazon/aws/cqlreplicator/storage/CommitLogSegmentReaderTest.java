@@ -0,0 +1,140 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodecs;
+import com.datastax.oss.driver.internal.core.metadata.schema.DefaultColumnMetadata;
+import com.datastax.oss.driver.internal.core.metadata.schema.DefaultTableMetadata;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs with the cdc profile only. CommitLog-7-1700000000000.log is a segment in the format of
+ * Cassandra 4.0 with two sync sections: the partition deletes of key 42 of ks.test_cdc and of key
+ * 99 of another table, then the partition delete of key 7 of ks.test_cdc.
+ */
+class CommitLogSegmentReaderTest {
+
+  private static final String SEGMENT = "CommitLog-7-1700000000000.log";
+  private static final long SEGMENT_ID = 1700000000000L;
+  private static final UUID TABLE_ID = UUID.fromString("5a1c395e-b41f-11e5-9f22-ba0be0483c18");
+
+  @TempDir static Path storageDirectory;
+  private static CommitLogSegmentReader reader;
+  private static Path segment;
+
+  @BeforeAll
+  static void createReader() throws URISyntaxException {
+    System.setProperty("cassandra.storagedir", storageDirectory.toString());
+    var commitlog = Path.of(CommitLogSegmentReaderTest.class.getResource("/commitlog").toURI());
+    segment = commitlog.resolve(SEGMENT);
+    reader = new CommitLogSegmentReader(commitlog.resolve("cassandra.yaml"), getTable());
+  }
+
+  /** ks.test_cdc (key int, ck int, col1 text, PRIMARY KEY (key, ck)) */
+  private static DefaultTableMetadata getTable() {
+    var keyspace = CqlIdentifier.fromCql("ks");
+    var table = CqlIdentifier.fromCql("test_cdc");
+    var key = column(keyspace, table, "key", DataTypes.INT);
+    var ck = column(keyspace, table, "ck", DataTypes.INT);
+    Map<CqlIdentifier, ColumnMetadata> columns = new LinkedHashMap<>();
+    columns.put(key.getName(), key);
+    columns.put(ck.getName(), ck);
+    var col1 = column(keyspace, table, "col1", DataTypes.TEXT);
+    columns.put(col1.getName(), col1);
+    return new DefaultTableMetadata(
+        keyspace,
+        table,
+        TABLE_ID,
+        false,
+        false,
+        List.of(key),
+        Map.of(ck, ClusteringOrder.ASC),
+        columns,
+        Map.of(),
+        Map.of());
+  }
+
+  private static ColumnMetadata column(
+      CqlIdentifier keyspace, CqlIdentifier table, String name, DataType type) {
+    return new DefaultColumnMetadata(keyspace, table, CqlIdentifier.fromCql(name), type, false);
+  }
+
+  private static long getToken(int key) {
+    return (Long)
+        Murmur3Partitioner.instance.getToken(Int32Type.instance.decompose(key)).getTokenValue();
+  }
+
+  private static List<Object[]> read(int position) throws IOException {
+    List<Object[]> changes = new ArrayList<>();
+    reader.read(
+        segment,
+        SEGMENT_ID,
+        position,
+        (entryLocation, token, partitionKey) ->
+            changes.add(new Object[] {entryLocation, token, partitionKey}));
+    return changes;
+  }
+
+  @Test
+  void readsTheChangesOfTheSourceTable() throws IOException {
+    var changes = read(0);
+    // The mutation of the other table is skipped, entry locations are the ends of the entries
+    assertEquals(2, changes.size());
+    assertEquals(80, changes.get(0)[0]);
+    assertEquals(getToken(42), changes.get(0)[1]);
+    assertEquals("42", changes.get(0)[2]);
+    assertEquals(192, changes.get(1)[0]);
+    assertEquals(getToken(7), changes.get(1)[1]);
+    assertEquals("7", changes.get(1)[2]);
+  }
+
+  @Test
+  void readsFromThePosition() throws IOException {
+    var changes = read(80);
+    assertEquals(1, changes.size());
+    assertEquals("7", changes.get(0)[2]);
+    assertEquals(0, read(192).size());
+  }
+
+  @Test
+  void decodesSinglePartitionKey() {
+    assertEquals(
+        "7",
+        CommitLogSegmentReader.decode(
+            List.of(TypeCodecs.INT), Int32Type.instance, Int32Type.instance.decompose(7)));
+  }
+
+  @Test
+  void decodesCompositePartitionKey() {
+    var keyType = CompositeType.getInstance(Int32Type.instance, UTF8Type.instance);
+    assertEquals(
+        "7|a",
+        CommitLogSegmentReader.decode(
+            List.of(TypeCodecs.INT, TypeCodecs.TEXT), keyType, keyType.decompose(7, "a")));
+  }
+}
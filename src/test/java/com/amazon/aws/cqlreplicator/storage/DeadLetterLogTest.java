@@ -0,0 +1,95 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadLetterLogTest {
+
+  @TempDir Path directory;
+
+  private static DeadLetterLog.Entry entry(String query, String value) {
+    return new DeadLetterLog.Entry()
+        .add(
+            query,
+            Arrays.asList(
+                ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)),
+                null,
+                DeadLetterLog.UNSET));
+  }
+
+  private static List<DeadLetterLog.Entry> readAll(DeadLetterLog log) throws IOException {
+    List<DeadLetterLog.Entry> entries = new ArrayList<>();
+    for (var segment : log.getClosedSegments()) {
+      log.read(segment, entries::add);
+    }
+    return entries;
+  }
+
+  @Test
+  void readsEntriesOfClosedSegments() throws IOException {
+    var log = new DeadLetterLog(directory, 1 << 20);
+    log.append(entry("INSERT 1", "a"));
+    log.append(entry("INSERT 2", "b").add("INSERT 3", List.of()));
+    assertTrue(log.getClosedSegments().isEmpty());
+
+    log.roll();
+    var entries = readAll(log);
+    assertEquals(2, entries.size());
+    assertEquals("INSERT 1", entries.get(0).getQuery(0));
+    assertEquals(
+        ByteBuffer.wrap("a".getBytes(StandardCharsets.UTF_8)), entries.get(0).getValues(0).get(0));
+    assertNull(entries.get(0).getValues(0).get(1));
+    assertSame(DeadLetterLog.UNSET, entries.get(0).getValues(0).get(2));
+    assertEquals(2, entries.get(1).size());
+    assertEquals("INSERT 3", entries.get(1).getQuery(1));
+  }
+
+  @Test
+  void rollsFullSegments() throws IOException {
+    var log = new DeadLetterLog(directory, 1);
+    log.append(entry("INSERT 1", "a"));
+    log.append(entry("INSERT 2", "b"));
+    var segments = log.getClosedSegments();
+    assertEquals(2, segments.size());
+
+    log.delete(segments.get(0));
+    var entries = readAll(log);
+    assertEquals(1, entries.size());
+    assertEquals("INSERT 2", entries.get(0).getQuery(0));
+  }
+
+  @Test
+  void skipsTornRecord() throws IOException {
+    var log = new DeadLetterLog(directory, 1 << 20);
+    log.append(entry("INSERT 1", "a"));
+    log.close();
+    var segment = log.getClosedSegments().get(0);
+    Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+    // A reopened log appends to a new segment after the existing ones
+    var reopened = new DeadLetterLog(directory, 1 << 20);
+    reopened.append(entry("INSERT 2", "b"));
+    reopened.roll();
+    var entries = readAll(reopened);
+    assertEquals(2, entries.size());
+    assertEquals("INSERT 1", entries.get(0).getQuery(0));
+    assertEquals("INSERT 2", entries.get(1).getQuery(0));
+  }
+}
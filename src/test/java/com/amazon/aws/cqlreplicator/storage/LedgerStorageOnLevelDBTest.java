@@ -0,0 +1,159 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.amazon.aws.cqlreplicator.models.DiscoveryCheckpoint;
+import com.amazon.aws.cqlreplicator.models.LedgerMetaData;
+import com.amazon.aws.cqlreplicator.models.PartitionMetaData;
+import com.amazon.aws.cqlreplicator.models.PrimaryKey;
+import com.amazon.aws.cqlreplicator.util.ClusteringKeyCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerStorageOnLevelDBTest {
+
+  @TempDir Path directory;
+
+  private LedgerStorageOnLevelDB open(String processName, int pageSize) throws IOException {
+    var properties = new Properties();
+    properties.setProperty("LOCAL_STORAGE_PATH", directory.toString());
+    properties.setProperty("TILE", "0");
+    properties.setProperty("PROCESS_NAME", processName);
+    properties.setProperty("LOCAL_STORAGE_PAGE_SIZE_PK", String.valueOf(pageSize));
+    return new LedgerStorageOnLevelDB(properties);
+  }
+
+  private static List<List<String>> readPages(LedgerStorageOnLevelDB ledger) throws IOException {
+    List<List<String>> pages = new ArrayList<>();
+    var iterator = ledger.readPaginatedPartitionsMetadata();
+    while (iterator.hasNext()) {
+      List<String> page = new ArrayList<>();
+      for (var key : iterator.next()) {
+        assertTrue(key instanceof PrimaryKey);
+        page.add(((PrimaryKey) key).getPartitionKeys());
+      }
+      pages.add(page);
+    }
+    return pages;
+  }
+
+  @Test
+  void pagesOnlyPartitionsOfLedgerWithAllKeyKinds() throws IOException {
+    var ledger = open("pd", 2);
+    for (var pk : List.of("a", "b", "c")) {
+      ledger.writePartitionMetadata(new PartitionMetaData(0, "ks", "tbl", pk));
+    }
+    // Keys of the partition token index, the indexed range markers, the discovery checkpoint and
+    // the row metadata
+    ledger.writePartitionToken(0, -7L, "a");
+    ledger.writePartitionToken(0, 3L, "b");
+    ledger.writeRangeIndexed(0, "-10:10");
+    ledger.writeRangeIndexed(0, "10:20");
+    ledger.writeRangeIndexed(0, "20:30");
+    var checkpoint = new DiscoveryCheckpoint();
+    checkpoint.advance("-10:10", new byte[] {1, 2});
+    ledger.writeDiscoveryCheckpoint(0, checkpoint);
+    ledger.writeRowMetadata(new LedgerMetaData("a", "ck", "ks", "tbl", 0, 1L, 1L));
+    ledger.tearDown();
+
+    var pages = readPages(open("rd", 2));
+    assertEquals(2, pages.size());
+    assertEquals(2, pages.get(0).size());
+    assertEquals(1, pages.get(1).size());
+    var keys = new ArrayList<String>();
+    pages.forEach(keys::addAll);
+    keys.sort(null);
+    assertEquals(List.of("a", "b", "c"), keys);
+  }
+
+  @Test
+  void keepsDiscoveryCheckpointOutOfPartitions() throws IOException {
+    var ledger = open("pd", 2);
+    ledger.writePartitionMetadata(new PartitionMetaData(0, "ks", "tbl", "a"));
+    var checkpoint = new DiscoveryCheckpoint();
+    checkpoint.complete("-10:10");
+    ledger.writeDiscoveryCheckpoint(0, checkpoint);
+    assertTrue(ledger.readDiscoveryCheckpoint(0).isCompleted("-10:10"));
+    assertNull(ledger.readDiscoveryCheckpoint(1));
+
+    var partitions = ledger.readPartitionsMetadata(null);
+    assertEquals(1, partitions.size());
+    assertEquals("a", ((PrimaryKey) partitions.get(0)).getPartitionKeys());
+
+    ledger.deleteDiscoveryCheckpoint(0);
+    assertNull(ledger.readDiscoveryCheckpoint(0));
+    ledger.tearDown();
+  }
+
+  @Test
+  void pagesEmptyLedger() throws IOException {
+    var ledger = open("pd", 2);
+    ledger.writePartitionToken(0, 1L, "a");
+    ledger.writeRangeIndexed(0, "-10:10");
+    ledger.tearDown();
+
+    assertTrue(readPages(open("rd", 2)).isEmpty());
+  }
+
+  @Test
+  void readsOrderedIndexFromKey() throws IOException {
+    var ledger = open("rd", 2);
+    var codec = ClusteringKeyCodec.create(Map.of("ck", "int"), Map.of("ck", "asc"));
+    ledger.setClusteringKeyCodec(codec);
+    for (var ck : List.of(30, -5, 10, 20)) {
+      ledger.writeRowMetadata(
+          new LedgerMetaData("a", String.valueOf(ck), "ks", "tbl", 0, ck, 1L));
+    }
+    ledger.writeRowMetadata(new LedgerMetaData("b", "0", "ks", "tbl", 0, 1L, 1L));
+
+    List<String> keys = new ArrayList<>();
+    try (var rows = ledger.readOrderedRowMetaData("a", codec.encode("10"))) {
+      rows.forEachRemaining(row -> keys.add(row.getCk()));
+    }
+    assertEquals(List.of("10", "20", "30"), keys);
+    keys.clear();
+    try (var rows = ledger.readOrderedRowMetaData("a", codec.encode("31"))) {
+      rows.forEachRemaining(row -> keys.add(row.getCk()));
+    }
+    assertTrue(keys.isEmpty());
+    ledger.tearDown();
+  }
+
+  @Test
+  void deletesPartitionRowsWithTheirOrderedIndex() throws IOException {
+    var ledger = open("rd", 2);
+    var codec = ClusteringKeyCodec.create(Map.of("ck", "int"), Map.of("ck", "asc"));
+    ledger.setClusteringKeyCodec(codec);
+    for (var ck : List.of("1", "2", "3")) {
+      ledger.writeRowMetadata(new LedgerMetaData("a", ck, "ks", "tbl", 0, 1L, 1L));
+    }
+    ledger.writeRowMetadata(new LedgerMetaData("ab", "1", "ks", "tbl", 0, 1L, 1L));
+
+    assertEquals(Set.of("1", "2", "3"), ledger.deletePartitionRows("a"));
+    assertNull(ledger.readRowMetaData("a", "1"));
+    assertTrue(ledger.readClusteringKeys("a", 0).isEmpty());
+    try (var rows = ledger.readOrderedRowMetaData("a")) {
+      assertFalse(rows.hasNext());
+    }
+    // A partition whose key starts with the deleted one is kept
+    assertNotNull(ledger.readRowMetaData("ab", "1"));
+    try (var rows = ledger.readOrderedRowMetaData("ab")) {
+      assertEquals("1", rows.next().getCk());
+    }
+    assertTrue(ledger.deletePartitionRows("a").isEmpty());
+    ledger.tearDown();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.amazon.aws.cqlreplicator.util.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class MemcachedCacheStorageTest {
+
+  @Test
+  void hashesKeysOfTheOperationAndTable() {
+    var config = new Properties();
+    config.setProperty("TARGET_KEYSPACE", "ks");
+    config.setProperty("TARGET_TABLE", "tbl");
+    var storage = new MemcachedCacheStorage(config, "rd");
+    assertEquals(
+        Utils.hashIt("rd|ks|tbl|a|1".getBytes(), Utils.HashingFunctions.SHA_256),
+        storage.getKey("rd", "a|1"));
+    assertNotEquals(storage.getKey("rd", "a|1"), storage.getKey("pd", "a|1"));
+  }
+
+  @Test
+  void sendsAllDeletesBeforeWaitingAndCountsRemovedKeys() throws Exception {
+    List<String> events = new ArrayList<>();
+    var removed =
+        MemcachedCacheStorage.deleteAll(
+            List.of("a", "b", "c"),
+            key -> {
+              events.add("delete " + key);
+              // A key that isn't cached is not removed
+              return new CompletableFuture<>() {
+                @Override
+                public Boolean get(long timeout, TimeUnit unit) {
+                  events.add("get " + key);
+                  return !key.equals("b");
+                }
+              };
+            });
+    assertEquals(2, removed);
+    assertEquals(
+        List.of("delete a", "delete b", "delete c", "get a", "get b", "get c"), events);
+  }
+
+  @Test
+  void removesNothingWithoutKeys() throws Exception {
+    assertEquals(
+        0,
+        MemcachedCacheStorage.deleteAll(
+            List.of(),
+            key -> {
+              throw new AssertionError(key);
+            }));
+  }
+}
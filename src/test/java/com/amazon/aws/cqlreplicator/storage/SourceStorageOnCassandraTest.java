@@ -0,0 +1,38 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SourceStorageOnCassandraTest {
+
+  @Test
+  void appendsRestrictionToWhereClause() {
+    assertEquals(
+        "SELECT json * FROM ks.tbl WHERE key=:key AND ck>=:slice_start",
+        SourceStorageOnCassandra.restrict(
+            "SELECT json * FROM ks.tbl WHERE key=:key ", "ck>=:slice_start"));
+  }
+
+  @Test
+  void insertsRestrictionBeforeTrailingClauses() {
+    assertEquals(
+        "SELECT json * FROM ks.tbl WHERE key=:key AND ck>=:slice_start LIMIT 10 ALLOW FILTERING",
+        SourceStorageOnCassandra.restrict(
+            "SELECT json * FROM ks.tbl WHERE key=:key LIMIT 10 ALLOW FILTERING",
+            "ck>=:slice_start"));
+    assertEquals(
+        "SELECT json * FROM ks.tbl WHERE key=:key AND ck<:slice_end allow filtering",
+        SourceStorageOnCassandra.restrict(
+            "SELECT json * FROM ks.tbl WHERE key=:key allow filtering", "ck<:slice_end"));
+    assertEquals(
+        "SELECT json * FROM ks.tbl WHERE key=:key AND ck<:slice_end ORDER BY ck DESC",
+        SourceStorageOnCassandra.restrict(
+            "SELECT json * FROM ks.tbl WHERE key=:key ORDER BY ck DESC", "ck<:slice_end"));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceStoragePagingTest {
+
+  private static final int PAGES = 4;
+  private final List<String> events = new ArrayList<>();
+  // Pages requested from the driver and not handed to the consumer yet
+  private int pagesInFlight;
+  private int maxPagesInFlight;
+
+  /** A page of the result, its rows are stood in for by the number of the page */
+  private AsyncResultSet page(int number) {
+    return (AsyncResultSet)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {AsyncResultSet.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "hasMorePages":
+                  return number < PAGES;
+                case "fetchNextPage":
+                  return fetch(number + 1);
+                case "currentPage":
+                  return List.of(row(number));
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  private CompletionStage<AsyncResultSet> fetch(int number) {
+    events.add("fetch " + number);
+    pagesInFlight++;
+    maxPagesInFlight = Math.max(maxPagesInFlight, pagesInFlight);
+    return CompletableFuture.completedFuture(page(number));
+  }
+
+  private static Row row(int page) {
+    return (Row)
+        Proxy.newProxyInstance(
+            SourceStoragePagingTest.class.getClassLoader(),
+            new Class<?>[] {Row.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("toString")) {
+                return String.valueOf(page);
+              }
+              throw new UnsupportedOperationException(method.getName());
+            });
+  }
+
+  @Test
+  void handsPagesOverInOrderWhileTheNextPageIsFetched() {
+    SourceStorageOnCassandra.consumePages(
+        fetch(1),
+        rows -> {
+          pagesInFlight--;
+          for (var row : rows) {
+            events.add("consume " + row);
+          }
+        });
+    assertEquals(
+        List.of(
+            "fetch 1", "fetch 2", "consume 1", "fetch 3", "consume 2", "fetch 4", "consume 3",
+            "consume 4"),
+        events);
+    // The current page and the prefetched one, never the whole partition
+    assertEquals(2, maxPagesInFlight);
+    assertEquals(0, pagesInFlight);
+  }
+
+  @Test
+  void handsOverASinglePage() {
+    List<Iterable<Row>> pages = new ArrayList<>();
+    SourceStorageOnCassandra.consumePages(
+        CompletableFuture.completedFuture(
+            (AsyncResultSet)
+                Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] {AsyncResultSet.class},
+                    (proxy, method, args) -> {
+                      switch (method.getName()) {
+                        case "hasMorePages":
+                          return false;
+                        case "currentPage":
+                          return List.of();
+                        default:
+                          throw new UnsupportedOperationException(method.getName());
+                      }
+                    })),
+        pages::add);
+    assertEquals(1, pages.size());
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TargetStorageOnKeyspacesTest {
+
+  private static final String SOURCE_QUERY = "SELECT json * FROM ks.tbl WHERE key=:key";
+
+  @Test
+  void deletesPartitionByItsPartitionKey() {
+    assertEquals(
+        "DELETE FROM ks.tbl WHERE key=:key AND bucket=:bucket",
+        TargetStorageOnKeyspaces.getDeleteQuery(
+            "ks", "tbl", SOURCE_QUERY, new String[] {"key", "bucket"}));
+  }
+
+  @Test
+  void deletesRowByItsPrimaryKey() {
+    assertEquals(
+        "DELETE FROM ks.tbl WHERE key=:key AND ck1=:ck1 AND ck2=:ck2",
+        TargetStorageOnKeyspaces.getDeleteQuery(
+            "ks", "tbl", SOURCE_QUERY, new String[] {"key"}, new String[] {"ck1", "ck2"}));
+  }
+
+  @Test
+  void quotesNamesLikeTheSourceQuery() {
+    assertEquals(
+        "DELETE FROM \"Ks\".\"Tbl\" WHERE key=:key",
+        TargetStorageOnKeyspaces.getDeleteQuery(
+            "Ks", "Tbl", "SELECT json * FROM \"Ks\".\"Tbl\" WHERE key=:key", new String[] {"key"}));
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.storage.SourceStorageOnCassandra;
+import com.amazon.aws.cqlreplicator.util.CustomResultSetSerializer;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.cassandraunit.CQLDataLoader;
+import org.cassandraunit.dataset.cql.ClassPathCQLDataSet;
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CassandraReplicationTaskProbeTest {
+
+  private static final String[] PKS = {"col1"};
+  private static final String[] CLS = {"col2"};
+  private static final List<String> PROBE_COLUMNS = List.of("col1", "col2", "writetime(col3)");
+
+  private CqlSession session;
+  private ObjectMapper mapper;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    EmbeddedCassandraServerHelper.startEmbeddedCassandra(
+        EmbeddedCassandraServerHelper.CASSANDRA_RNDPORT_YML_FILE);
+    session = EmbeddedCassandraServerHelper.getSession();
+    new CQLDataLoader(session).load(new ClassPathCQLDataSet("source.cql", "test_table"));
+    mapper = new ObjectMapper();
+    var module = new SimpleModule();
+    module.addSerializer(Row.class, new CustomResultSetSerializer());
+    mapper.registerModule(module);
+  }
+
+  @Test
+  void probesTimestampClusteringKeysLikeTheCustomSerializedRows() throws Exception {
+    var sourceQuery = "SELECT col1, col2, col3 FROM test_probe WHERE col1='1234'";
+    var probeQuery = SourceStorageOnCassandra.getProbeQuery(sourceQuery, PROBE_COLUMNS, "");
+    assertFalse(probeQuery.toUpperCase().startsWith("SELECT JSON"));
+
+    var fullKey = getLedgerClusteringKey(session.execute(sourceQuery).one());
+    var probeKey = getLedgerClusteringKey(session.execute(probeQuery).one());
+    assertEquals(fullKey, probeKey);
+
+    // SELECT JSON writes the milliseconds of timestamps, the custom serializer doesn't
+    var jsonProbeKey =
+        CassandraReplicationTask.getLedgerClusteringKey(
+            session
+                .execute(
+                    SourceStorageOnCassandra.getProbeQuery(
+                        "SELECT JSON col1, col2, col3 FROM test_probe WHERE col1='1234'",
+                        PROBE_COLUMNS,
+                        ""))
+                .one()
+                .getString(0),
+            "col3",
+            CLS,
+            PKS);
+    assertNotEquals(fullKey, jsonProbeKey);
+  }
+
+  @Test
+  void probesJsonSourceQueriesAsJson() {
+    assertEquals(
+        "SELECT JSON col1,col2,writetime(col3) FROM test_probe WHERE col1='1234'",
+        SourceStorageOnCassandra.getProbeQuery(
+            "SELECT JSON * FROM test_probe WHERE col1='1234'", PROBE_COLUMNS, ""));
+    assertEquals(
+        "SELECT col1,col2,writetime(col3) FROM test_probe WHERE col1='1234'",
+        SourceStorageOnCassandra.getProbeQuery(
+            "SELECT * FROM test_probe WHERE col1='1234'", PROBE_COLUMNS, ""));
+  }
+
+  private String getLedgerClusteringKey(Row row) throws Exception {
+    return CassandraReplicationTask.getLedgerClusteringKey(
+        mapper.writeValueAsString(row), "col3", CLS, PKS);
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CassandraReplicationTaskTest {
+
+  private static final String[] PKS = {"key"};
+  private static final String ROW =
+      "{\"key\":1,\"ck1\":\"a\",\"ck2\":2,\"col1\":\"x\",\"writetime(col1)\":10,\"writetime(col2)\":20}";
+
+  @Test
+  void readsClusteringKeysOfSourceRowsAsInTheLedger() {
+    assertEquals(
+        "a|2",
+        CassandraReplicationTask.getLedgerClusteringKey(
+            ROW, "col1, col2", new String[] {"ck1", "ck2"}, PKS));
+    // The columns are joined in the order of the ledger key, not of the JSON row
+    assertEquals(
+        "2|a",
+        CassandraReplicationTask.getLedgerClusteringKey(
+            ROW, "col1", new String[] {"ck2", "ck1"}, PKS));
+    assertEquals(
+        CassandraReplicationTask.REPLICATION_NOT_APPLICABLE,
+        CassandraReplicationTask.getLedgerClusteringKey(
+            ROW, "col1", new String[] {CassandraReplicationTask.CLUSTERING_COLUMN_ABSENT}, PKS));
+  }
+
+  @Test
+  void deletesLedgerRowsMissingFromTheSource() {
+    assertEquals(
+        List.of("a|2", "b|1"),
+        CassandraReplicationTask.getMissingRows(
+            List.of("a|1", "a|2", "b|1"), Set.of("a|1", "c|1")));
+    assertTrue(
+        CassandraReplicationTask.getMissingRows(List.of("a|1"), Set.of("a|1", "a|2")).isEmpty());
+  }
+
+  @Test
+  void deletesPartitionMissingFromTheSourceWithOneTombstone() {
+    var cls = new String[] {"ck1", "ck2"};
+    assertTrue(CassandraReplicationTask.isMissingPartition(Set.of(), cls));
+    assertFalse(CassandraReplicationTask.isMissingPartition(Set.of("a|2"), cls));
+    // A table without clustering columns has no rows to diff
+    assertFalse(CassandraReplicationTask.isMissingPartition(Set.of(), new String[0]));
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedBacklogTest {
+
+  @Test
+  void keepsPolledPartitionsUntilTheyAreReplicated() {
+    var backlog = new ChangeFeedBacklog();
+    backlog.add("CommitLog-7-1.log", "a");
+    backlog.add("CommitLog-7-1.log", "b");
+    backlog.add("CommitLog-7-2.log", "a");
+    backlog.add("CommitLog-7-2.log", "c");
+    assertEquals(List.of("a", "b", "c"), List.copyOf(backlog.getPartitions()));
+
+    backlog.replicated(List.of("a", "c"));
+    assertEquals(Set.of("b"), backlog.getPartitions());
+  }
+
+  @Test
+  void releasesCompletedSegmentsWhosePartitionsAreReplicated() {
+    var backlog = new ChangeFeedBacklog();
+    backlog.add("CommitLog-7-1.log", "a");
+    backlog.add("CommitLog-7-2.log", "b");
+    backlog.complete(List.of("CommitLog-7-1.log", "CommitLog-7-2.log", "CommitLog-7-3.log"));
+
+    // A segment without changes of the tile is released right away
+    assertEquals(List.of("CommitLog-7-3.log"), backlog.takeReleasable());
+
+    // b is deferred, the segment of a is released anyway
+    backlog.replicated(List.of("a"));
+    assertEquals(List.of("CommitLog-7-1.log"), backlog.takeReleasable());
+    assertTrue(backlog.takeReleasable().isEmpty());
+
+    // Active segments aren't released even if their partitions are replicated
+    backlog.add("CommitLog-7-4.log", "c");
+    backlog.replicated(List.of("b", "c"));
+    assertEquals(List.of("CommitLog-7-2.log"), backlog.takeReleasable());
+    assertTrue(backlog.getPartitions().isEmpty());
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusteringRangeSlicerTest {
+
+  @Test
+  void numericValuesAreSlicedInNumericOrder() {
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      values.add(String.valueOf(i));
+    }
+    Collections.shuffle(values);
+    var boundaries = ClusteringRangeSlicer.getBoundaries(values, "int", 4);
+    assertEquals(List.of("25", "50", "75"), boundaries);
+  }
+
+  @Test
+  void repeatedValuesAreNotSplit() {
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 90; i++) {
+      values.add("a");
+    }
+    for (int i = 0; i < 10; i++) {
+      values.add("b");
+    }
+    var boundaries = ClusteringRangeSlicer.getBoundaries(values, "text", 4);
+    assertEquals(List.of("b"), boundaries);
+  }
+
+  @Test
+  void textIsSlicedInUtf8Order() {
+    // U+1F600 is encoded as a surrogate pair in UTF-16, but sorts after U+FF21 in UTF-8
+    var emoji = new String(Character.toChars(0x1F600));
+    var fullWidth = "\uFF21";
+    assertTrue(ClusteringRangeSlicer.compareUtf8(fullWidth, emoji) < 0);
+    assertTrue(ClusteringRangeSlicer.compareUtf8("a", "ab") < 0);
+    assertEquals(0, ClusteringRangeSlicer.compareUtf8(emoji, emoji));
+    var boundaries =
+        ClusteringRangeSlicer.getBoundaries(List.of(emoji, fullWidth, "a", "b"), "text", 2);
+    assertEquals(List.of(fullWidth), boundaries);
+  }
+
+  @Test
+  void nonFiniteValuesAreSlicedInCassandraOrder() {
+    var boundaries =
+        ClusteringRangeSlicer.getBoundaries(
+            List.of("NaN", "1.5", "Infinity", "-Infinity"), "double", 4);
+    assertEquals(List.of("1.5", "Infinity", "NaN"), boundaries);
+    boundaries =
+        ClusteringRangeSlicer.getBoundaries(
+            List.of("NaN", "1.5", "Infinity", "-Infinity"), "float", 2);
+    assertEquals(List.of("Infinity"), boundaries);
+  }
+
+  @Test
+  void unsupportedTypeIsNotSliced() {
+    var boundaries =
+        ClusteringRangeSlicer.getBoundaries(
+            List.of("5c9fce3e-8f2c-11ed-a1eb-0242ac120002"), "timeuuid", 4);
+    assert boundaries.isEmpty();
+  }
+}
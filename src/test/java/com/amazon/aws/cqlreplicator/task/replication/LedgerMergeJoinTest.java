@@ -0,0 +1,55 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.models.OrderedValue;
+import com.amazon.aws.cqlreplicator.util.ClusteringKeyCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LedgerMergeJoinTest {
+
+  private static final ClusteringKeyCodec CODEC =
+      ClusteringKeyCodec.create(
+          new LinkedHashMap<>(Map.of("ck", "int")), new LinkedHashMap<>(Map.of("ck", "desc")));
+
+  private static List<OrderedValue> ledger(String... clusteringKeys) {
+    List<OrderedValue> ledger = new ArrayList<>();
+    for (var ck : clusteringKeys) {
+      ledger.add(new OrderedValue(1, 1, ck, CODEC.encode(ck)));
+    }
+    return ledger;
+  }
+
+  @Test
+  void joinsRowsInClusteringOrder() {
+    var join = new LedgerMergeJoin(CODEC, ledger("9", "7", "5", "-1").iterator());
+    List<String> deletionCandidates = new ArrayList<>();
+    assert join.next("10", deletionCandidates::add) == null;
+    assertEquals("7", join.next("7", deletionCandidates::add).getCk());
+    assert join.next("6", deletionCandidates::add) == null;
+    join.finish(deletionCandidates::add);
+    assert join.isOrdered();
+    assertEquals(List.of("9", "5", "-1"), deletionCandidates);
+  }
+
+  @Test
+  void stopsOnRowsOutOfOrder() {
+    var join = new LedgerMergeJoin(CODEC, ledger("9", "7").iterator());
+    List<String> deletionCandidates = new ArrayList<>();
+    assertEquals("9", join.next("9", deletionCandidates::add).getCk());
+    assert join.next("10", deletionCandidates::add) == null;
+    assert !join.isOrdered();
+    join.finish(deletionCandidates::add);
+    assert deletionCandidates.isEmpty();
+  }
+}
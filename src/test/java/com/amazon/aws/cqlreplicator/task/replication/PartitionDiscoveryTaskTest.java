@@ -0,0 +1,126 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.storage.CacheStorage;
+import com.amazon.aws.cqlreplicator.util.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionDiscoveryTaskTest {
+
+  private static final int TILE = 0;
+
+  /** Keeps the chunks of partition keys in memory */
+  private static class ChunkCache extends CacheStorage<Object, Object> {
+    private final Map<Object, Object> values = new HashMap<>();
+
+    @Override
+    public void connect() {}
+
+    @Override
+    public void tearDown() {}
+
+    @Override
+    public Object get(Object key) {
+      return values.get(key);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+      values.put(key, value);
+    }
+
+    @Override
+    public void add(int tile, Object key, Object value) {
+      values.putIfAbsent(key, value);
+    }
+
+    @Override
+    public Map<Object, Object> getAllByTile(int tile) {
+      return values;
+    }
+
+    @Override
+    public long getSize(int tile) {
+      return values.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return values.containsKey(key);
+    }
+
+    @Override
+    public void remove(int tile, Object key) {
+      values.remove(key);
+    }
+
+    @Override
+    public void remove(int tile, String operationType, Object key) {
+      values.remove(key);
+    }
+
+    @Override
+    public Set<Object> keySet() {
+      return values.keySet();
+    }
+
+    void putChunk(int chunk, List<String> keys) throws IOException {
+      put(getChunkKey(chunk), Utils.compress(Utils.cborEncoder(keys)));
+    }
+
+    List<Object> getChunk(int chunk) throws IOException {
+      return Utils.cborDecoder(Utils.decompress((byte[]) get(getChunkKey(chunk))));
+    }
+
+    private static String getChunkKey(int chunk) {
+      return String.format("pksChunk|%s|%s", TILE, chunk);
+    }
+  }
+
+  @Test
+  void removesVanishedPartitionKeysFromTheChunks() throws Exception {
+    var cache = new ChunkCache();
+    cache.putChunk(0, List.of("a", "b"));
+    cache.putChunk(1, List.of("c"));
+    cache.putChunk(2, List.of("d", "e"));
+
+    assertEquals(2, PartitionDiscoveryTask.removeFromChunks(cache, TILE, 3, Set.of("b", "c")));
+    assertEquals(List.of("a"), cache.getChunk(0));
+    // An emptied chunk is kept, so the following chunks keep their numbers
+    assertEquals(List.of(), cache.getChunk(1));
+    assertEquals(List.of("d", "e"), cache.getChunk(2));
+  }
+
+  @Test
+  void keepsAReappearingPartitionKeyOnce() throws Exception {
+    var cache = new ChunkCache();
+    cache.putChunk(0, List.of("a", "b"));
+    PartitionDiscoveryTask.removeFromChunks(cache, TILE, 1, Set.of("b"));
+
+    // The next pass finds b again and appends it to a new chunk
+    cache.putChunk(1, List.of("b"));
+    assertEquals(0, PartitionDiscoveryTask.removeFromChunks(cache, TILE, 2, Set.of("x")));
+    List<Object> keys = new ArrayList<>();
+    for (int chunk = 0; chunk < 2; chunk++) {
+      keys.addAll(cache.getChunk(chunk));
+    }
+    assertEquals(List.of("a", "b"), keys);
+  }
+
+  @Test
+  void skipsMissingChunks() throws Exception {
+    var cache = new ChunkCache();
+    cache.putChunk(1, List.of("a"));
+    assertEquals(1, PartitionDiscoveryTask.removeFromChunks(cache, TILE, 2, Set.of("a")));
+    assertNull(cache.get("pksChunk|0|0"));
+  }
+}
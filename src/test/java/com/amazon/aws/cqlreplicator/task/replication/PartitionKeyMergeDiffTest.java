@@ -0,0 +1,85 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.models.PartitionToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PartitionKeyMergeDiffTest {
+
+  private final List<String> newKeys = new ArrayList<>();
+  private final List<String> vanishedKeys = new ArrayList<>();
+
+  private static List<PartitionToken> index(Object... tokensAndKeys) {
+    List<PartitionToken> index = new ArrayList<>();
+    for (int i = 0; i < tokensAndKeys.length; i += 2) {
+      index.add(new PartitionToken((long) tokensAndKeys[i], (String) tokensAndKeys[i + 1]));
+    }
+    return index;
+  }
+
+  private void next(PartitionKeyMergeDiff diff, long token, String key) {
+    diff.next(
+        token,
+        key,
+        partition -> newKeys.add(partition.getPartitionKey()),
+        partition -> vanishedKeys.add(partition.getPartitionKey()));
+  }
+
+  private void finish(PartitionKeyMergeDiff diff) {
+    diff.finish(
+        partition -> newKeys.add(partition.getPartitionKey()),
+        partition -> vanishedKeys.add(partition.getPartitionKey()));
+  }
+
+  @Test
+  void diffsKeysInTokenOrder() {
+    var diff =
+        new PartitionKeyMergeDiff(
+            index(-5L, "a", 1L, "b", 1L, "c", 7L, "d", 9L, "e").iterator(), false);
+    next(diff, -5, "a");
+    // Keys of a token may come in any order
+    next(diff, 1, "x");
+    next(diff, 1, "c");
+    next(diff, 8, "f");
+    finish(diff);
+    assertEquals(List.of("x", "f"), newKeys);
+    assertEquals(List.of("b", "d", "e"), vanishedKeys);
+  }
+
+  @Test
+  void skipsIndexBeforeResumedPage() {
+    var diff =
+        new PartitionKeyMergeDiff(index(-5L, "a", 1L, "b", 7L, "d").iterator(), true);
+    next(diff, 7, "d");
+    finish(diff);
+    assertEquals(List.of(), newKeys);
+    assertEquals(List.of(), vanishedKeys);
+
+    var empty = new PartitionKeyMergeDiff(index(-5L, "a").iterator(), true);
+    finish(empty);
+    assertEquals(List.of(), vanishedKeys);
+  }
+
+  @Test
+  void stopsReportingVanishedKeysOutOfOrder() {
+    var diff =
+        new PartitionKeyMergeDiff(index(1L, "a", 5L, "b", 9L, "c").iterator(), false);
+    next(diff, 5, "b");
+    next(diff, 3, "z");
+    next(diff, 9, "c");
+    finish(diff);
+    assertFalse(diff.isOrdered());
+    assertEquals(List.of("z", "c"), newKeys);
+    assertEquals(List.of(), vanishedKeys);
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.models.LedgerMetaData;
+import com.amazon.aws.cqlreplicator.util.InFlightWindow;
+import com.amazon.aws.cqlreplicator.util.StatsCounter;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionWriterTest {
+
+  private final List<Statement<?>> written = new ArrayList<>();
+  private final List<LedgerMetaData> committed = new ArrayList<>();
+  private final StatsCounter stats = new StatsCounter();
+  private final InFlightWindow window = new InFlightWindow(4, 2);
+
+  /** A bound statement with one value of the size */
+  static BoundStatement statement(int bytes) {
+    return (BoundStatement)
+        Proxy.newProxyInstance(
+            PartitionWriterTest.class.getClassLoader(),
+            new Class<?>[] {BoundStatement.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "size":
+                  return 1;
+                case "getBytesUnsafe":
+                  return ByteBuffer.allocate(bytes);
+                case "hashCode":
+                  return System.identityHashCode(proxy);
+                case "equals":
+                  return proxy == args[0];
+                default:
+                  return null;
+              }
+            });
+  }
+
+  static LedgerMetaData row(String clusteringKey) {
+    return new LedgerMetaData("pk", clusteringKey, "ks", "tbl", 0, 1, 1);
+  }
+
+  private PartitionWriter newWriter(
+      Function<Statement<?>, CompletionStage<Boolean>> writeAsync, boolean async) {
+    return newWriter(writeAsync, async, 0, 0);
+  }
+
+  private PartitionWriter newWriter(
+      Function<Statement<?>, CompletionStage<Boolean>> writeAsync,
+      boolean async,
+      int batchMaxRows,
+      long batchMaxBytes) {
+    return new PartitionWriter(
+        new PartitionWriter.Target() {
+          @Override
+          public boolean write(Statement<?> statement) {
+            return writeAsync.apply(statement).toCompletableFuture().join();
+          }
+
+          @Override
+          public CompletionStage<Boolean> writeAsync(Statement<?> statement) {
+            return writeAsync.apply(statement);
+          }
+        },
+        committed::addAll,
+        stats,
+        async ? window.forPartition() : null,
+        Runnable::run,
+        batchMaxRows,
+        batchMaxBytes);
+  }
+
+  private CompletionStage<Boolean> succeed(Statement<?> statement) {
+    written.add(statement);
+    return CompletableFuture.completedFuture(true);
+  }
+
+  @Test
+  void commitsSuccessfulWritesOnly() throws Exception {
+    var writer = newWriter(this::succeed, true);
+    writer.write(statement(10), row("a"), "INSERT");
+    writer.write(statement(10), row("b"), "UPDATE");
+    writer.flush();
+    assertEquals(2, written.size());
+    assertEquals(List.of("a", "b"), getClusteringKeys());
+    assertEquals(1, stats.getStat("INSERT"));
+    assertEquals(1, stats.getStat("UPDATE"));
+    assertEquals(4, window.getAvailablePermits());
+
+    // A write that isn't applied isn't committed
+    writer = newWriter(statement -> CompletableFuture.completedFuture(false), true);
+    writer.write(statement(10), row("c"), "INSERT");
+    writer.flush();
+    assertEquals(List.of("a", "b"), getClusteringKeys());
+    assertEquals(1, stats.getStat("INSERT"));
+  }
+
+  @Test
+  void releasesThePermitOfAFailedWrite() throws Exception {
+    var writer =
+        newWriter(
+            statement -> CompletableFuture.failedFuture(new IllegalStateException("timeout")),
+            true);
+    writer.write(statement(10), row("a"), "INSERT");
+    writer.flush();
+    assertTrue(committed.isEmpty());
+    assertEquals(0, stats.getStat("INSERT"));
+    assertEquals(4, window.getAvailablePermits());
+  }
+
+  @Test
+  void releasesThePermitOfAWriteThatFailsToStart() throws Exception {
+    var writer =
+        newWriter(
+            statement -> {
+              throw new IllegalStateException("session closed");
+            },
+            true);
+    assertThrows(
+        IllegalStateException.class, () -> writer.write(statement(10), row("a"), "INSERT"));
+    assertEquals(4, window.getAvailablePermits());
+    // The partition has no write in flight
+    writer.flush();
+    assertTrue(committed.isEmpty());
+  }
+
+  @Test
+  void flushWaitsForTheWritesOfThePartition() throws Exception {
+    List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+    var writer =
+        newWriter(
+            statement -> {
+              var write = new CompletableFuture<Boolean>();
+              pending.add(write);
+              return write;
+            },
+            true);
+    writer.write(statement(10), row("a"), "INSERT");
+    writer.write(statement(10), row("b"), "INSERT");
+    assertEquals(2, window.getAvailablePermits());
+
+    var flushed = new CountDownLatch(1);
+    var thread =
+        new Thread(
+            () -> {
+              try {
+                writer.flush();
+                flushed.countDown();
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    thread.start();
+    pending.get(0).complete(true);
+    assertFalse(flushed.await(100, TimeUnit.MILLISECONDS));
+    pending.get(1).complete(true);
+    assertTrue(flushed.await(5, TimeUnit.SECONDS));
+    thread.join();
+    assertEquals(List.of("a", "b"), getClusteringKeys());
+    assertEquals(4, window.getAvailablePermits());
+  }
+
+  @Test
+  void commitsSynchronousWritesThatAreApplied() throws Exception {
+    var writer = newWriter(this::succeed, false);
+    writer.write(statement(10), row("a"), "INSERT");
+    assertEquals(List.of("a"), getClusteringKeys());
+    assertFalse(written.get(0) instanceof BatchStatement);
+
+    writer = newWriter(statement -> CompletableFuture.completedFuture(false), false);
+    writer.write(statement(10), row("b"), "INSERT");
+    assertEquals(List.of("a"), getClusteringKeys());
+    assertEquals(1, stats.getStat("INSERT"));
+  }
+
+  @Test
+  void sendsOneUnloggedBatchPerFlush() throws Exception {
+    List<Integer> committedPerBatch = new ArrayList<>();
+    var writer =
+        newWriter(
+            statement -> {
+              written.add(statement);
+              committedPerBatch.add(committed.size());
+              return CompletableFuture.completedFuture(true);
+            },
+            true,
+            3,
+            100);
+    for (var key : List.of("a", "b", "c", "d")) {
+      writer.write(statement(10), row(key), "INSERT");
+    }
+    // The fifth row would exceed 100 bytes, the fourth is sent alone
+    writer.write(statement(95), row("e"), "INSERT");
+    writer.flush();
+
+    assertEquals(3, written.size());
+    var batch = (BatchStatement) written.get(0);
+    assertEquals(DefaultBatchType.UNLOGGED, batch.getBatchType());
+    assertEquals(3, batch.size());
+    assertFalse(written.get(1) instanceof BatchStatement);
+    assertFalse(written.get(2) instanceof BatchStatement);
+    // The ledger is committed per batch, before the next batch is sent
+    assertEquals(List.of(0, 3, 4), committedPerBatch);
+    assertEquals(List.of("a", "b", "c", "d", "e"), getClusteringKeys());
+    assertEquals(5, stats.getStat("INSERT"));
+  }
+
+  @Test
+  void doesNotCommitAFailedBatch() throws Exception {
+    var writer =
+        newWriter(
+            statement -> CompletableFuture.failedFuture(new IllegalStateException("timeout")),
+            false,
+            2,
+            1000);
+    writer.write(statement(10), row("a"), "INSERT");
+    assertThrows(
+        CompletionException.class, () -> writer.write(statement(10), row("b"), "INSERT"));
+    assertTrue(committed.isEmpty());
+  }
+
+  private List<String> getClusteringKeys() {
+    List<String> keys = new ArrayList<>();
+    for (var row : committed) {
+      keys.add(row.getClusteringColumns());
+    }
+    return keys;
+  }
+}
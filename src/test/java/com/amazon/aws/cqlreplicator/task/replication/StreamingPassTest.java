@@ -0,0 +1,277 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.util.BoundedTaskScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingPassTest {
+
+  private final ManualExecutor executor = new ManualExecutor();
+  private final BoundedTaskScheduler scheduler = new BoundedTaskScheduler(executor, 16);
+  private final Set<String> inFlightPartitions = ConcurrentHashMap.newKeySet();
+  private final AtomicLong clock = new AtomicLong();
+  private final StreamingPass pass =
+      new StreamingPass(scheduler, inFlightPartitions, 100, 10, clock::get);
+  private final List<String> replicated = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  void skipsPartitionsInFlight() throws Exception {
+    var steps = new RecordingSteps("a", "b");
+    pass.run(steps, false);
+    assertEquals(List.of("a", "b"), steps.scheduled);
+    assertEquals(Set.of("a", "b"), inFlightPartitions);
+
+    // A partition still replicating from the previous pass is left to a later one
+    steps = new RecordingSteps("a", "c");
+    pass.run(steps, false);
+    assertEquals(List.of("c"), steps.scheduled);
+    assertEquals(List.of("a"), steps.skipped);
+
+    executor.runAll();
+    assertEquals(List.of("a", "b", "c"), replicated);
+    assertTrue(inFlightPartitions.isEmpty());
+
+    steps = new RecordingSteps("a");
+    pass.run(steps, false);
+    assertEquals(List.of("a"), steps.scheduled);
+  }
+
+  @Test
+  void partitionInFlightOnAnotherSchedulerIsSkipped() {
+    // The change feed shares the partitions in flight with the passes
+    inFlightPartitions.add("a");
+    assertFalse(pass.schedule("a", () -> replicated.add("a")));
+    assertEquals(0, scheduler.getQueueDepth());
+  }
+
+  @Test
+  void failedPartitionIsScheduledAgain() throws Exception {
+    assertTrue(
+        pass.schedule(
+            "a",
+            () -> {
+              throw new IllegalStateException("Write failed");
+            }));
+    executor.runAll();
+    assertEquals(1, scheduler.getFailedTasks());
+    assertTrue(inFlightPartitions.isEmpty());
+    assertTrue(pass.schedule("a", () -> replicated.add("a")));
+  }
+
+  @Test
+  void reconcilesDeletesAndFlushesStatsOnTheirIntervals() throws Exception {
+    var steps = new RecordingSteps();
+    pass.run(steps, false);
+    assertEquals(0, steps.deletes);
+    assertEquals(0, steps.stats);
+
+    clock.set(10);
+    pass.run(steps, false);
+    assertEquals(0, steps.deletes);
+    assertEquals(1, steps.stats);
+
+    clock.set(15);
+    pass.run(steps, false);
+    assertEquals(0, steps.deletes);
+    assertEquals(1, steps.stats);
+
+    clock.set(100);
+    pass.run(steps, false);
+    assertEquals(1, steps.deletes);
+    assertEquals(2, steps.stats);
+
+    // The intervals start again from the last run of each step
+    clock.set(150);
+    pass.run(steps, false);
+    assertEquals(1, steps.deletes);
+    assertEquals(3, steps.stats);
+
+    clock.set(200);
+    pass.run(steps, false);
+    assertEquals(2, steps.deletes);
+    assertEquals(4, steps.stats);
+  }
+
+  @Test
+  void deletesWaitForTheScheduledPartitions() throws Exception {
+    clock.set(100);
+    var steps = new RecordingSteps("a", "b");
+    var passed = new CountDownLatch(1);
+    var passThread =
+        new Thread(
+            () -> {
+              try {
+                pass.run(steps, true);
+                passed.countDown();
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    passThread.start();
+    assertFalse(passed.await(100, TimeUnit.MILLISECONDS));
+    assertEquals(0, steps.deletes);
+
+    executor.runAll();
+    assertTrue(passed.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of("a", "b"), replicated);
+    assertEquals(1, steps.deletes);
+  }
+
+  @Test
+  void deletesDontWaitWithoutReplicatingDeletes() throws Exception {
+    clock.set(100);
+    var steps = new RecordingSteps("a");
+    pass.run(steps, false);
+    assertEquals(1, steps.deletes);
+    assertEquals(Set.of("a"), inFlightPartitions);
+  }
+
+  @Test
+  void shutdownWaitsForPartitionsInFlightAndStopsThePasses() throws Exception {
+    pass.run(new RecordingSteps("a"), false);
+    assertFalse(pass.shutdown(100, TimeUnit.MILLISECONDS));
+
+    executor.runAll();
+    assertTrue(pass.shutdown(5, TimeUnit.SECONDS));
+    assertEquals(List.of("a"), replicated);
+
+    clock.set(1000);
+    var steps = new RecordingSteps("b");
+    pass.run(steps, false);
+    assertTrue(steps.scheduled.isEmpty());
+    assertEquals(0, steps.deletes);
+    assertEquals(0, steps.stats);
+    assertFalse(pass.schedule("b", () -> replicated.add("b")));
+    assertTrue(inFlightPartitions.isEmpty());
+  }
+
+  @Test
+  void rejectedPartitionIsNotLeftInFlight() throws Exception {
+    executor.shutdown();
+    assertThrows(
+        RejectedExecutionException.class,
+        () ->
+            StreamingPass.schedule(
+                scheduler, inFlightPartitions, "a", () -> replicated.add("a")));
+    assertTrue(inFlightPartitions.isEmpty());
+    assertEquals(0, scheduler.getQueueDepth());
+  }
+
+  /** Schedules the given partitions and counts the other steps */
+  private class RecordingSteps implements StreamingPass.Steps {
+    private final List<String> partitionKeys;
+    private final List<String> scheduled = new ArrayList<>();
+    private final List<String> skipped = new ArrayList<>();
+    private int deletes;
+    private int stats;
+
+    RecordingSteps(String... partitionKeys) {
+      this.partitionKeys = List.of(partitionKeys);
+    }
+
+    @Override
+    public void schedulePartitions(StreamingPass pass) {
+      for (var partitionKey : partitionKeys) {
+        if (pass.schedule(partitionKey, () -> replicated.add(partitionKey))) {
+          scheduled.add(partitionKey);
+        } else {
+          skipped.add(partitionKey);
+        }
+      }
+    }
+
+    @Override
+    public void replicateDeletes() {
+      deletes++;
+    }
+
+    @Override
+    public void persistStats() {
+      stats++;
+    }
+  }
+
+  /** Holds the submitted tasks until the test runs them */
+  private static class ManualExecutor extends AbstractExecutorService {
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private boolean shutdown;
+
+    @Override
+    public synchronized void execute(Runnable command) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Executor is shut down");
+      }
+      tasks.add(command);
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = poll()) != null) {
+        task.run();
+      }
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+
+    private synchronized Runnable poll() {
+      return tasks.poll();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+      shutdown = true;
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+      shutdown = true;
+      var pending = new ArrayList<>(tasks);
+      tasks.clear();
+      return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+      return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+      var deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (!isTerminated()) {
+        var remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.task.replication;
+
+import com.amazon.aws.cqlreplicator.storage.FileLeaseStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkLeaseCoordinatorTest {
+
+  private static final List<String> UNITS = List.of("ranges|0|1|2", "ranges|0|2|3", "ranges|1|3|4");
+
+  @TempDir Path directory;
+  private final AtomicLong clock = new AtomicLong(1_000);
+
+  private WorkLeaseCoordinator coordinator(String owner) throws IOException {
+    var leaseStore = new FileLeaseStore(directory);
+    leaseStore.connect();
+    return new WorkLeaseCoordinator(leaseStore, owner, 100, clock::get);
+  }
+
+  @Test
+  void claimsEveryUnitOnce() throws IOException {
+    var first = coordinator("first");
+    var second = coordinator("second");
+    var claimed = new HashSet<>(first.claim(UNITS, 2));
+    for (var unit : second.claim(UNITS, 10)) {
+      assertTrue(claimed.add(unit));
+    }
+    assertEquals(new HashSet<>(UNITS), claimed);
+    assertTrue(first.claim(UNITS, 10).isEmpty());
+  }
+
+  @Test
+  void takesOverExpiredLeases() throws IOException {
+    var first = coordinator("first");
+    var second = coordinator("second");
+    assertEquals(3, first.claim(UNITS, 10).size());
+
+    clock.addAndGet(50);
+    first.renew();
+    clock.addAndGet(60);
+    assertTrue(second.claim(UNITS, 10).isEmpty());
+
+    // The first process stops renewing
+    clock.addAndGet(100);
+    assertEquals(3, second.claim(UNITS, 10).size());
+    first.renew();
+    assertFalse(first.isHeld(UNITS.get(0)));
+    assertFalse(first.complete(UNITS.get(0), 1_000));
+  }
+
+  @Test
+  void claimsCompletedUnitsWhenDue() throws IOException {
+    var first = coordinator("first");
+    var second = coordinator("second");
+    var unit = first.claim(UNITS, 1).get(0);
+    assertTrue(first.complete(unit, 1_000));
+    assertFalse(second.claim(UNITS, 10).contains(unit));
+
+    clock.addAndGet(1_000);
+    assertEquals(List.of(unit), first.claim(List.of(unit), 10));
+    assertTrue(first.release(unit));
+    assertEquals(List.of(unit), second.claim(List.of(unit), 10));
+  }
+
+  @Test
+  void releasesHeldUnitsOnTearDown() throws IOException {
+    var first = coordinator("first");
+    var second = coordinator("second");
+    assertEquals(3, first.claim(UNITS, 10).size());
+    first.tearDown();
+    assertFalse(first.isHeld(UNITS.get(0)));
+    assertEquals(3, second.claim(UNITS, 10).size());
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveConcurrencyLimiterTest {
+
+  private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static void runWindow(AdaptiveConcurrencyLimiter limiter, long latency, int errors)
+      throws InterruptedException {
+    var window = Math.max(limiter.getLimit(), 20);
+    for (int i = 0; i < limiter.getLimit(); i++) {
+      limiter.acquire();
+    }
+    for (int i = 0; i < window; i++) {
+      limiter.onSample(latency, i < errors);
+    }
+    while (limiter.getInFlight() > 0) {
+      limiter.release();
+    }
+  }
+
+  @Test
+  void increasesAdditivelyWhileHealthy() throws InterruptedException {
+    var limiter = new AdaptiveConcurrencyLimiter(2, 100, 10, THRESHOLD, 0.5);
+    runWindow(limiter, THRESHOLD / 2, 0);
+    assertEquals(11, limiter.getLimit());
+    runWindow(limiter, THRESHOLD / 2, 0);
+    assertEquals(12, limiter.getLimit());
+  }
+
+  @Test
+  void decreasesMultiplicativelyOnErrorsAndLatency() throws InterruptedException {
+    var limiter = new AdaptiveConcurrencyLimiter(2, 100, 40, THRESHOLD, 0.5);
+    runWindow(limiter, THRESHOLD / 2, 1);
+    assertEquals(20, limiter.getLimit());
+    runWindow(limiter, THRESHOLD * 2, 0);
+    assertEquals(10, limiter.getLimit());
+    for (int i = 0; i < 10; i++) {
+      runWindow(limiter, THRESHOLD * 2, 0);
+    }
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  void keepsTheLimitWhileUnused() {
+    var limiter = new AdaptiveConcurrencyLimiter(2, 100, 10, THRESHOLD, 0.5);
+    for (int i = 0; i < 20; i++) {
+      limiter.onSample(THRESHOLD / 2, false);
+    }
+    assertEquals(10, limiter.getLimit());
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncRetrySchedulerTest {
+
+  private static CompletableFuture<Integer> failUntil(AtomicInteger attempts, int succeedAt) {
+    var attempt = attempts.incrementAndGet();
+    if (attempt < succeedAt) {
+      return CompletableFuture.failedFuture(new IllegalStateException("throttled"));
+    }
+    return CompletableFuture.completedFuture(attempt);
+  }
+
+  @Test
+  void retriesUntilSuccess() throws Exception {
+    var executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      var scheduler =
+          new AsyncRetryScheduler(
+              executor, 10, 1, 1.1, 5, new AsyncRetryScheduler.RetryBudget(0.5, 10));
+      var attempts = new AtomicInteger();
+      var result =
+          scheduler.submit(() -> failUntil(attempts, 4), e -> e instanceof IllegalStateException);
+      assertEquals(4, (int) result.toCompletableFuture().get());
+      assertEquals(3, scheduler.getRetries());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void failsWhenBudgetIsSpent() throws Exception {
+    var executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      var scheduler =
+          new AsyncRetryScheduler(
+              executor, 10, 1, 1.1, 5, new AsyncRetryScheduler.RetryBudget(0, 2));
+      var attempts = new AtomicInteger();
+      var result =
+          scheduler.submit(() -> failUntil(attempts, 5), e -> e instanceof IllegalStateException);
+      var e =
+          assertThrows(ExecutionException.class, () -> result.toCompletableFuture().get());
+      assertTrue(e.getCause() instanceof IllegalStateException);
+      assertEquals(3, attempts.get());
+      assertEquals(1, scheduler.getExhausted());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void doesNotRetryOtherErrors() throws Exception {
+    var executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      var scheduler =
+          new AsyncRetryScheduler(
+              executor, 10, 1, 1.1, 5, new AsyncRetryScheduler.RetryBudget(0.5, 10));
+      var attempts = new AtomicInteger();
+      var result = scheduler.submit(() -> failUntil(attempts, 5), e -> false);
+      assertThrows(ExecutionException.class, () -> result.toCompletableFuture().get());
+      assertEquals(1, attempts.get());
+      assertEquals(0, scheduler.getRetries());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void backoffIsBoundedAndJittered() {
+    var scheduler =
+        new AsyncRetryScheduler(null, 10, 100, 2, 1000, new AsyncRetryScheduler.RetryBudget(0, 1));
+    for (int i = 0; i < 100; i++) {
+      var first = scheduler.getBackoffMillis(1);
+      assertTrue(first >= 50 && first <= 100);
+      var late = scheduler.getBackoffMillis(20);
+      assertTrue(late >= 500 && late <= 1000);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedTaskSchedulerTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Test
+  void parksTheProducerAtCapacity() throws Exception {
+    var scheduler = new BoundedTaskScheduler(executor, 2);
+    var release = new CountDownLatch(1);
+    scheduler.submit(() -> await(release));
+    scheduler.submit(() -> await(release));
+    assertEquals(2, scheduler.getQueueDepth());
+
+    var submitted = new CountDownLatch(1);
+    var producer =
+        new Thread(
+            () -> {
+              try {
+                scheduler.submit(() -> {});
+                submitted.countDown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    producer.start();
+    assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+    // A finished task makes room for the parked producer
+    release.countDown();
+    assertTrue(submitted.await(5, TimeUnit.SECONDS));
+    producer.join();
+    scheduler.awaitQuiescence();
+    assertEquals(0, scheduler.getQueueDepth());
+    assertEquals(3, scheduler.getCompletedTasks());
+  }
+
+  @Test
+  void runsEveryTaskOnce() throws Exception {
+    var scheduler = new BoundedTaskScheduler(executor, 3);
+    var runs = new ConcurrentHashMap<Integer, AtomicInteger>();
+    for (int i = 0; i < 100; i++) {
+      var task = i;
+      scheduler.submit(
+          () -> {
+            runs.computeIfAbsent(task, key -> new AtomicInteger()).incrementAndGet();
+            if (task % 10 == 0) {
+              throw new IllegalStateException("task " + task);
+            }
+          });
+    }
+    scheduler.awaitQuiescence();
+    assertEquals(100, runs.size());
+    for (var count : runs.values()) {
+      assertEquals(1, count.get());
+    }
+    assertEquals(90, scheduler.getCompletedTasks());
+    assertEquals(10, scheduler.getFailedTasks());
+    // Failed tasks give their slots back
+    assertEquals(0, scheduler.getQueueDepth());
+  }
+
+  @Test
+  void awaitsTheTasksInFlight() throws Exception {
+    var scheduler = new BoundedTaskScheduler(executor, 4);
+    var release = new CountDownLatch(1);
+    var finished = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      scheduler.submit(
+          () -> {
+            await(release);
+            finished.incrementAndGet();
+          });
+    }
+    assertEquals(3, scheduler.getQueueDepth());
+
+    var quiescent = new CountDownLatch(1);
+    var waiter =
+        new Thread(
+            () -> {
+              try {
+                scheduler.awaitQuiescence();
+                quiescent.countDown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    waiter.start();
+    assertFalse(quiescent.await(100, TimeUnit.MILLISECONDS));
+    release.countDown();
+    assertTrue(quiescent.await(5, TimeUnit.SECONDS));
+    waiter.join();
+    assertEquals(3, finished.get());
+
+    // The scheduler takes tasks again after a wait
+    scheduler.submit(finished::incrementAndGet);
+    scheduler.awaitQuiescence();
+    assertEquals(4, finished.get());
+  }
+
+  @Test
+  void givesTheSlotOfARejectedTaskBack() {
+    var scheduler = new BoundedTaskScheduler(executor, 1);
+    executor.shutdown();
+    assertThrows(Exception.class, () -> scheduler.submit(() -> {}));
+    assertEquals(0, scheduler.getQueueDepth());
+  }
+}
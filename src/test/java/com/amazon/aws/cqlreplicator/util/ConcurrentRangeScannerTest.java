@@ -0,0 +1,125 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentRangeScannerTest {
+
+  /** Pages of a range: its values in pages of two, completed asynchronously */
+  private static CompletionStage<ConcurrentRangeScanner.Page<Integer>> page(
+      List<Integer> values, int from, Runnable onComplete) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          if (from + 2 >= values.size()) {
+            onComplete.run();
+          }
+          return new ConcurrentRangeScanner.Page<>() {
+            @Override
+            public Iterable<Integer> getRows() {
+              return values.subList(from, Math.min(values.size(), from + 2));
+            }
+
+            @Override
+            public CompletionStage<ConcurrentRangeScanner.Page<Integer>> fetchNext() {
+              return from + 2 < values.size() ? page(values, from + 2, onComplete) : null;
+            }
+          };
+        },
+        CompletableFuture.delayedExecutor(1, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void consumesEveryPageOfEveryRange() throws InterruptedException {
+    Map<Integer, List<Integer>> ranges = new HashMap<>();
+    for (int range = 0; range < 20; range++) {
+      List<Integer> values = new ArrayList<>();
+      for (int i = 0; i < range % 7; i++) {
+        values.add(range * 100 + i);
+      }
+      ranges.put(range, values);
+    }
+    List<Integer> consumed = new ArrayList<>();
+    new ConcurrentRangeScanner<Integer, Integer>(4, 4)
+        .scan(
+            new ArrayList<>(ranges.keySet()),
+            range -> List.of(),
+            range -> page(ranges.get(range), 0, () -> {}),
+            (range, page) -> page.getRows().forEach(consumed::add));
+
+    List<Integer> expected = new ArrayList<>();
+    ranges.values().forEach(expected::addAll);
+    Collections.sort(expected);
+    Collections.sort(consumed);
+    assertEquals(expected, consumed);
+  }
+
+  @Test
+  void capsRangesPerNode() throws InterruptedException {
+    var inFlight = new AtomicInteger();
+    var maxInFlight = new AtomicInteger();
+    List<Integer> ranges = new ArrayList<>();
+    for (int range = 0; range < 30; range++) {
+      ranges.add(range);
+    }
+    new ConcurrentRangeScanner<Integer, Integer>(10, 2)
+        .scan(
+            ranges,
+            // Every range is served by the same node
+            range -> List.of("node1"),
+            range -> {
+              maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              return page(List.of(1, 2, 3, 4, 5), 0, inFlight::decrementAndGet);
+            },
+            (range, page) -> {});
+    assertTrue(maxInFlight.get() <= 2);
+  }
+
+  @Test
+  void stopsInactiveRanges() throws InterruptedException {
+    Set<Integer> inactive = new HashSet<>(List.of(3));
+    List<Integer> consumed = new ArrayList<>();
+    new ConcurrentRangeScanner<Integer, Integer>(1, 1)
+        .scan(
+            List.of(1, 2, 3),
+            range -> List.of(),
+            range -> page(List.of(range * 10, range * 10 + 1, range * 10 + 2), 0, () -> {}),
+            (range, page) -> {
+              page.getRows().forEach(consumed::add);
+              // The range loses its lease after its first page
+              inactive.add(range);
+            },
+            range -> !inactive.contains(range));
+    assertEquals(List.of(10, 11, 20, 21), consumed);
+  }
+
+  @Test
+  void failsWhenARangeFails() {
+    var e =
+        assertThrows(
+            RuntimeException.class,
+            () ->
+                new ConcurrentRangeScanner<Integer, Integer>(2, 2)
+                    .scan(
+                        List.of(1, 2, 3),
+                        range -> List.of(),
+                        range ->
+                            range == 2
+                                ? CompletableFuture.failedFuture(
+                                    new IllegalStateException("timeout"))
+                                : page(List.of(1), 0, () -> {}),
+                        (range, page) -> {}));
+    assertTrue(e.getCause() instanceof IllegalStateException);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlushingListTest {
+
+  private final List<List<String>> flushes = new ArrayList<>();
+
+  private FlushingList<String> newList(int maxElements, long maxBytes) {
+    return new FlushingList<>(maxElements, maxBytes, String::length) {
+      @Override
+      protected void flush(List<String> payload) {
+        flushes.add(payload);
+      }
+    };
+  }
+
+  @Test
+  void flushesAtTheNumberOfElements() {
+    var list =
+        new FlushingList<String>(2) {
+          @Override
+          protected void flush(List<String> payload) {
+            flushes.add(payload);
+          }
+        };
+    list.put("a");
+    assertTrue(flushes.isEmpty());
+    list.put("b");
+    list.put("c");
+    assertEquals(List.of(List.of("a", "b")), flushes);
+    assertEquals(1, list.getSize());
+    list.doFlush();
+    assertEquals(List.of(List.of("a", "b"), List.of("c")), flushes);
+    assertEquals(0, list.getSize());
+  }
+
+  @Test
+  void flushesBeforeAnElementThatWouldOverflowTheSize() {
+    var list = newList(10, 10);
+    list.put("aaaa");
+    list.put("bbbb");
+    // 12 bytes would exceed the limit, the pending elements are flushed first
+    list.put("cccc");
+    assertEquals(List.of(List.of("aaaa", "bbbb")), flushes);
+    assertEquals(1, list.getSize());
+    // Reaching the limit flushes right away
+    list.put("dddddd");
+    assertEquals(List.of(List.of("aaaa", "bbbb"), List.of("cccc", "dddddd")), flushes);
+    assertEquals(0, list.getSize());
+  }
+
+  @Test
+  void flushesAnOversizedElementAlone() {
+    var list = newList(10, 10);
+    list.put("a");
+    list.put("bbbbbbbbbbbb");
+    assertEquals(List.of(List.of("a"), List.of("bbbbbbbbbbbb")), flushes);
+    assertEquals(0, list.getSize());
+  }
+
+  @Test
+  void appliesTheNumberOfElementsWithASizeLimit() {
+    var list = newList(3, 1000);
+    for (var element : List.of("a", "b", "c", "d")) {
+      list.put(element);
+    }
+    assertEquals(List.of(List.of("a", "b", "c")), flushes);
+    assertEquals(1, list.getSize());
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InFlightWindowTest {
+
+  private static Thread start(CountDownLatch done, InterruptibleAction action) {
+    var thread =
+        new Thread(
+            () -> {
+              try {
+                action.run();
+                done.countDown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  void capsTheWritesOfSeveralPartitions() throws Exception {
+    var window = new InFlightWindow(3, 2);
+    var first = window.forPartition();
+    var second = window.forPartition();
+    first.acquire();
+    first.acquire();
+    second.acquire();
+    assertEquals(0, window.getAvailablePermits());
+
+    // The partition has a permit left, the process doesn't
+    var acquired = new CountDownLatch(1);
+    var thread = start(acquired, second::acquire);
+    assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+    first.release();
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    thread.join();
+    assertEquals(0, window.getAvailablePermits());
+
+    first.release();
+    second.release();
+    second.release();
+    assertEquals(3, window.getAvailablePermits());
+  }
+
+  @Test
+  void capsTheWritesOfAPartition() throws Exception {
+    var window = new InFlightWindow(10, 1);
+    var partition = window.forPartition();
+    partition.acquire();
+    var acquired = new CountDownLatch(1);
+    var thread = start(acquired, partition::acquire);
+    assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+    // The blocked write doesn't hold a permit of the process
+    assertEquals(9, window.getAvailablePermits());
+    partition.release();
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    thread.join();
+  }
+
+  @Test
+  void awaitsTheWritesOfThePartition() throws Exception {
+    var window = new InFlightWindow(10, 4);
+    var partition = window.forPartition();
+    var other = window.forPartition();
+    partition.acquire();
+    partition.acquire();
+    other.acquire();
+
+    var completed = new CountDownLatch(1);
+    var thread = start(completed, partition::awaitCompletion);
+    partition.release();
+    assertFalse(completed.await(100, TimeUnit.MILLISECONDS));
+    // Writes of other partitions aren't waited for
+    partition.release();
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    thread.join();
+    assertEquals(9, window.getAvailablePermits());
+
+    // The partition takes writes again after the wait
+    partition.acquire();
+    assertEquals(8, window.getAvailablePermits());
+  }
+
+  private interface InterruptibleAction {
+    void run() throws InterruptedException;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class RowDiffTest {
+
+  private static List<String> changes(RowDiff diff) throws Exception {
+    List<String> changes = new ArrayList<>();
+    diff.forEachChange(
+        new RowDiff.Listener() {
+          @Override
+          public void onInsert(int row, long sourceTimestamp) {
+            changes.add(String.format("insert %d %d", row, sourceTimestamp));
+          }
+
+          @Override
+          public void onUpdate(int row, long sourceTimestamp, long ledgerTimestamp) {
+            changes.add(String.format("update %d %d %d", row, sourceTimestamp, ledgerTimestamp));
+          }
+        });
+    return changes;
+  }
+
+  @Test
+  void reportsInsertsAndUpdates() throws Exception {
+    var diff = RowDiff.get();
+    diff.addSource("a|1", 0, 10);
+    diff.addSource("a|2", 1, 20);
+    diff.addSource("b|1", 2, 30);
+    diff.addLedger("a|2", 15);
+    diff.addLedger("b|1", 30);
+    // Ledger-only keys are ignored
+    diff.addLedger("c|1", 5);
+    assertEquals(List.of("insert 0 10", "update 1 20 15"), changes(diff));
+  }
+
+  @Test
+  void internsRepeatedKeys() throws Exception {
+    var diff = RowDiff.get();
+    var first = diff.addSource("\u00e9t\u00e9|\ud83d\ude00", 0, 10);
+    var second = diff.addSource(new StringBuilder("\u00e9t\u00e9|\ud83d\ude00"), 1, 20);
+    assertEquals(first, second);
+    assertEquals(1, diff.size());
+    assertEquals(List.of("insert 1 20"), changes(diff));
+  }
+
+  @Test
+  void growsBeyondInitialCapacity() throws Exception {
+    var diff = RowDiff.get();
+    for (int i = 0; i < 10000; i++) {
+      var entry = diff.addSource("key|" + i, i, i + 1);
+      if (i % 2 == 0) {
+        diff.setLedger(entry, i + 1);
+      }
+    }
+    assertEquals(10000, diff.size());
+    assertEquals(5000, changes(diff).size());
+    diff.close();
+    // A closed diff is reused and cleared
+    try (var reused = RowDiff.get()) {
+      assertEquals(0, reused.size());
+    }
+  }
+
+  @Test
+  void dropsDiffsGrownPastThePooledCapacity() {
+    var diff = RowDiff.get();
+    for (int i = 0; i < 100000; i++) {
+      diff.addSource("key|" + i, i, i + 1);
+    }
+    diff.close();
+    try (var next = RowDiff.get()) {
+      assertNotSame(diff, next);
+    }
+  }
+}
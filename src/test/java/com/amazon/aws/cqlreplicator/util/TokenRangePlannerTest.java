@@ -0,0 +1,116 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenRangePlannerTest {
+
+  @TempDir Path directory;
+
+  private static List<ImmutablePair<String, String>> ring(int ranges) {
+    List<ImmutablePair<String, String>> ring = new ArrayList<>();
+    var width = (Long.MAX_VALUE / ranges) * 2;
+    var start = Long.MIN_VALUE;
+    for (int i = 0; i < ranges; i++) {
+      var end = i == ranges - 1 ? Long.MAX_VALUE : start + width;
+      ring.add(new ImmutablePair<>(String.valueOf(start), String.valueOf(end)));
+      start = end;
+    }
+    return ring;
+  }
+
+  private static long estimate(
+      List<ImmutablePair<String, String>> subRanges,
+      List<ImmutablePair<String, String>> ring,
+      long[] partitionsOfRanges) {
+    // Sub-ranges of a ring range share its partitions by width
+    double partitions = 0;
+    for (var subRange : subRanges) {
+      var start = Long.parseLong(subRange.left);
+      var end = Long.parseLong(subRange.right);
+      for (int i = 0; i < ring.size(); i++) {
+        var rangeStart = Long.parseLong(ring.get(i).left);
+        var rangeEnd = Long.parseLong(ring.get(i).right);
+        if (start >= rangeStart && end <= rangeEnd) {
+          partitions +=
+              partitionsOfRanges[i]
+                  * (((double) end - start) / ((double) rangeEnd - rangeStart));
+        }
+      }
+    }
+    return Math.round(partitions);
+  }
+
+  @Test
+  void balancesSkewedRanges() {
+    var ring = ring(8);
+    // One range holds most of the partitions
+    var partitionsOfRanges = new long[] {1_000, 1_000, 1_000, 70_000, 1_000, 1_000, 1_000, 1_000};
+    List<TokenRangePlanner.Estimate> estimates = new ArrayList<>();
+    for (int i = 0; i < ring.size(); i++) {
+      estimates.add(
+          new TokenRangePlanner.Estimate(
+              Long.parseLong(ring.get(i).left),
+              Long.parseLong(ring.get(i).right),
+              partitionsOfRanges[i]));
+    }
+    var plan = TokenRangePlanner.plan(ring, estimates, 4, 16);
+    assertEquals(4, plan.size());
+    for (var tile : plan) {
+      var partitions = estimate(tile, ring, partitionsOfRanges);
+      assertTrue(Math.abs(partitions - 19_250) < 19_250 * 0.1, String.valueOf(partitions));
+    }
+  }
+
+  @Test
+  void coversTheRingInTokenOrder() {
+    var ring = ring(5);
+    var plan = TokenRangePlanner.plan(ring, List.of(), 3, 4);
+    var previous = String.valueOf(Long.MIN_VALUE);
+    for (var tile : plan) {
+      assertTrue(!tile.isEmpty());
+      for (var subRange : tile) {
+        assertEquals(previous, subRange.left);
+        previous = subRange.right;
+      }
+    }
+    assertEquals(String.valueOf(Long.MAX_VALUE), previous);
+  }
+
+  @Test
+  void splitsIntoRangesOfEqualWidth() {
+    var subRanges = TokenRangePlanner.split(0, 100, 4);
+    assertEquals(
+        List.of(
+            new ImmutablePair<>("0", "25"),
+            new ImmutablePair<>("25", "50"),
+            new ImmutablePair<>("50", "75"),
+            new ImmutablePair<>("75", "100")),
+        subRanges);
+  }
+
+  @Test
+  void keepsTheFirstWrittenPlan() throws IOException {
+    var plan = TokenRangePlanner.plan(ring(4), List.of(), 2, 2);
+    var planFile = directory.resolve("plan.txt");
+    assertTrue(TokenRangePlanner.write(planFile, plan));
+    var otherPlan = TokenRangePlanner.plan(ring(8), List.of(), 2, 2);
+    assertFalse(TokenRangePlanner.write(planFile, otherPlan));
+    assertEquals(plan, TokenRangePlanner.read(planFile, 2));
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * // SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.amazon.aws.cqlreplicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteCapacityLimiterTest {
+
+  @Test
+  void takesOneUnitPerStartedKilobyteWithRowMetadata() {
+    assertEquals(1, WriteCapacityLimiter.getCapacityUnits(0));
+    assertEquals(1, WriteCapacityLimiter.getCapacityUnits(924));
+    assertEquals(2, WriteCapacityLimiter.getCapacityUnits(925));
+    assertEquals(2, WriteCapacityLimiter.getCapacityUnits(1948));
+    assertEquals(3, WriteCapacityLimiter.getCapacityUnits(1949));
+  }
+
+  @Test
+  void sharesTheCapacityOfTheTableUnlessTheTileHasItsOwn() {
+    var properties = new Properties();
+    properties.setProperty("TILE", "1");
+    properties.setProperty("TILES", "4");
+    assertEquals(0, WriteCapacityLimiter.getTileCapacity(properties));
+
+    properties.setProperty("TARGET_WCU_PER_SECOND", "1000");
+    assertEquals(250, WriteCapacityLimiter.getTileCapacity(properties));
+    properties.setProperty("TARGET_WCU_PER_SECOND", "2");
+    assertEquals(1, WriteCapacityLimiter.getTileCapacity(properties));
+
+    properties.setProperty("TARGET_WCU_PER_SECOND_TILE_1", "700");
+    properties.setProperty("TARGET_WCU_PER_SECOND_TILE_2", "50");
+    assertEquals(700, WriteCapacityLimiter.getTileCapacity(properties));
+    // The capacity of the tile applies without a capacity of the table
+    properties.remove("TARGET_WCU_PER_SECOND");
+    properties.setProperty("TILE", "2");
+    assertEquals(50, WriteCapacityLimiter.getTileCapacity(properties));
+  }
+
+  @Test
+  void rejectsNonPositiveCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new WriteCapacityLimiter("test", 0));
+  }
+
+  @Test
+  void changesTheCapacity() {
+    var limiter = new WriteCapacityLimiter("test", 10);
+    limiter.setUnitsPerSecond(40);
+    assertEquals(40, limiter.getUnitsPerSecond());
+    assertThrows(IllegalArgumentException.class, () -> limiter.setUnitsPerSecond(0));
+    assertEquals(40, limiter.getUnitsPerSecond());
+  }
+
+  @Test
+  void acquiresMoreUnitsThanTheTimeoutAllowsInChunks() {
+    // All the units at once would wait about two seconds, longer than the timeout
+    var limiter = new WriteCapacityLimiter("test", 10, Duration.ofMillis(1500));
+    assertEquals(10, limiter.getUnitsPerSecond());
+    limiter.acquire(25);
+    assertEquals(25, limiter.getConsumedUnits());
+  }
+}